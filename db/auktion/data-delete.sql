@@ -1,4 +1,6 @@
 delete
+from Auktionsergebnis;
+delete
 from Gebot;
 delete
 from Angebot;
@@ -20,3 +20,29 @@ create table Gebot
 
 
 
+
+-- GIDs fuer AuktionsService (IdAllocator), INCREMENT BY ist die Blockgroesse
+create sequence Gebot_Seq start with 1000000 increment by 100;
+
+-- Zaehlerzeilen fuer IdAllocator.ausZaehler, je Name ein Block-Zaehler. Eine fehlende
+-- Zeile wird beim ersten Reservieren mit NaechsteId 1 angelegt.
+create table IdBlock
+(
+    Name       varchar2(30) not null,
+    NaechsteId integer      not null,
+    constraint idblock_pk primary key (Name)
+);
+
+-- Hoechstes Gebot je Auktion (AuktionsSchliesser, biete)
+create index gebot_aid_preis_idx on Gebot (AID, GebotsPreis);
+
+-- Ergebnis je geschlossener Auktion, GID und Preis sind null ohne Gebot (AuktionsSchliesser).
+-- Ohne Fremdschluessel, Angebote und Gebote bleiben loeschbar.
+create table Auktionsergebnis
+(
+    AID         integer       not null,
+    GID         integer       null,
+    Preis       decimal(9, 2) null,
+    Geschlossen date          not null,
+    constraint pk_auktionsergebnis primary key (AID)
+);
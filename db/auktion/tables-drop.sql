@@ -1,3 +1,6 @@
+drop table Auktionsergebnis;
+drop sequence Gebot_Seq;
+drop table IdBlock;
 drop table Gebot;
 drop table Angebot;
 
@@ -75,3 +75,27 @@ create table Deckungspreis
     constraint deckungspreis_pk primary key (ID),
     constraint deckungsbetrag_fk foreign key (Deckungsbetrag_FK) references Deckungsbetrag
 );
+
+-- Preisauswahl nach Deckungsbetrag und Gueltigkeitszeitraum (calcMonatsrate)
+create index deckungspreis_gueltig_idx on Deckungspreis (Deckungsbetrag_FK, Gueltig_Von, Gueltig_Bis);
+
+-- Vertrags-IDs fuer createVertrag ohne ID (IdAllocator), INCREMENT BY ist die Blockgroesse
+create sequence Vertrag_Seq start with 1000000 increment by 100;
+
+-- Zaehlerzeilen fuer IdAllocator.ausZaehler, je Name ein Block-Zaehler. Eine fehlende
+-- Zeile wird beim ersten Reservieren mit NaechsteId 1 angelegt.
+create table IdBlock
+(
+    Name       varchar2(30) not null,
+    NaechsteId integer      not null,
+    constraint idblock_pk primary key (Name)
+);
+
+-- Monatsrate je Vertrag, wird beim Einfuegen einer Deckung mitgepflegt (MonatsrateTabelle).
+-- Ohne Fremdschluessel auf Vertrag, Vertraege bleiben loeschbar; verwaiste Zeilen meldet die Pruefung.
+create table Monatsrate
+(
+    Vertrag_FK integer        not null,
+    Rate       decimal(13, 2) not null,
+    constraint monatsrate_pk primary key (Vertrag_FK)
+);
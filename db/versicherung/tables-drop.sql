@@ -1,3 +1,6 @@
+drop sequence Vertrag_Seq;
+drop table IdBlock;
+drop table Monatsrate;
 drop table Deckungspreis;
 drop table Deckungsbetrag;
 drop table Ablehnungsregel;
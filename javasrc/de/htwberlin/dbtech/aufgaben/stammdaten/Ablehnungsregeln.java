@@ -0,0 +1,194 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.exceptions.DeckungsartNichtRegelkonformException;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Die Ablehnungsregeln aus der Tabelle Ablehnungsregel. Die Ausdruecke in
+ * R_Betrag und R_Alter (z.B. '>= 300000', '< 18', '- -' fuer "immer") werden
+ * beim Laden einmal in Bedingungen uebersetzt und je Deckungsart gespeichert.
+ * Die Pruefung bei createDeckung laeuft danach ohne Datenbankzugriff.
+ * <p>
+ * Die Regeln werden beim ersten Zugriff geladen. Nach einer Aenderung der
+ * Tabelle muss neuLaden aufgerufen werden. Die Regeln eines
+ * Stammdaten-Schnappschusses sind fest und werden mit diesem erneuert.
+ */
+public class Ablehnungsregeln {
+    private static final Logger L = LoggerFactory.getLogger(Ablehnungsregeln.class);
+    private Connection connection;
+    private ConnectionProvider verbindung;
+    private volatile Map<Integer, List<Regel>> regelnJeDeckungsart;
+
+    public Ablehnungsregeln() {
+    }
+
+    Ablehnungsregeln(Map<Integer, List<Regel>> regelnJeDeckungsart) {
+        this.regelnJeDeckungsart = regelnJeDeckungsart;
+    }
+
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+        this.verbindung = null;
+    }
+
+    /**
+     * Geladen wird ueber die Connection der laufenden Operation des Dienstes bzw.
+     * eine dafuer geliehene Connection.
+     */
+    public void setConnectionProvider(ConnectionProvider verbindung) {
+        this.verbindung = verbindung;
+        this.connection = null;
+    }
+
+    private Connection useConnection() {
+        if (connection == null) {
+            throw new DataException("Connection not set");
+        }
+        return connection;
+    }
+
+    /**
+     * Liest die Tabelle Ablehnungsregel neu ein und ersetzt die bisherigen Regeln.
+     */
+    public void neuLaden() {
+        Map<Integer, List<Regel>> regeln;
+        if (verbindung != null) {
+            regeln = verbindung.mitConnection(() -> {
+                Connection c = verbindung.getConnection();
+                if (c == null) {
+                    throw new DataException("Connection not set");
+                }
+                return lese(c);
+            });
+        } else {
+            regeln = lese(useConnection());
+        }
+        regelnJeDeckungsart = regeln;
+        L.info("ablehnungsregeln geladen fuer " + regeln.size() + " deckungsarten");
+    }
+
+    static Map<Integer, List<Regel>> lese(Connection connection) {
+        String sql = "select Deckungsart_FK, LfdNr, R_Betrag, R_Alter from Ablehnungsregel order by Deckungsart_FK, LfdNr";
+        L.info(sql);
+        Map<Integer, List<Regel>> regeln = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int deckungsartId = rs.getInt("Deckungsart_FK");
+                    Regel regel = new Regel(rs.getInt("LfdNr"),
+                            Bedingung.parse(rs.getString("R_Betrag")),
+                            Bedingung.parse(rs.getString("R_Alter")));
+                    regeln.computeIfAbsent(deckungsartId, k -> new ArrayList<>()).add(regel);
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        return regeln;
+    }
+
+    /**
+     * Prueft, ob eine Ablehnungsregel der Deckungsart fuer Betrag und Alter
+     * zutrifft.
+     *
+     * @throws DeckungsartNichtRegelkonformException wenn eine Regel zutrifft.
+     */
+    public void pruefe(Integer deckungsartId, BigDecimal deckungsbetrag, int alter) {
+        Map<Integer, List<Regel>> regeln = regelnJeDeckungsart;
+        if (regeln == null) {
+            synchronized (this) {
+                if (regelnJeDeckungsart == null) {
+                    neuLaden();
+                }
+                regeln = regelnJeDeckungsart;
+            }
+        }
+        BigDecimal alterAlsZahl = BigDecimal.valueOf(alter);
+        for (Regel regel : regeln.getOrDefault(deckungsartId, Collections.emptyList())) {
+            if (regel.betrag.trifftZu(deckungsbetrag) && regel.alter.trifftZu(alterAlsZahl)) {
+                L.info("ablehnungsregel " + deckungsartId + "/" + regel.lfdNr + " trifft zu");
+                throw new DeckungsartNichtRegelkonformException(deckungsartId);
+            }
+        }
+    }
+
+    static class Regel {
+        final int lfdNr;
+        final Bedingung betrag;
+        final Bedingung alter;
+
+        Regel(int lfdNr, Bedingung betrag, Bedingung alter) {
+            this.lfdNr = lfdNr;
+            this.betrag = betrag;
+            this.alter = alter;
+        }
+    }
+
+    /**
+     * Ein Vergleich der Form "Operator Grenzwert". Der Ausdruck "- -" trifft
+     * immer zu.
+     */
+    static class Bedingung {
+        private static final Bedingung IMMER = new Bedingung(null, null);
+        private final String operator;
+        private final BigDecimal grenze;
+
+        private Bedingung(String operator, BigDecimal grenze) {
+            this.operator = operator;
+            this.grenze = grenze;
+        }
+
+        static Bedingung parse(String ausdruck) {
+            String a = ausdruck == null ? "" : ausdruck.trim();
+            if (a.equals("- -")) {
+                return IMMER;
+            }
+            for (String operator : new String[]{"<=", ">=", "<>", "!=", "<", ">", "="}) {
+                if (a.startsWith(operator)) {
+                    try {
+                        return new Bedingung(operator, new BigDecimal(a.substring(operator.length()).trim()));
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+            throw new DataException("ungueltiger Ausdruck in Ablehnungsregel: " + ausdruck);
+        }
+
+        boolean trifftZu(BigDecimal wert) {
+            if (operator == null) {
+                return true;
+            }
+            int c = wert.compareTo(grenze);
+            switch (operator) {
+                case "<":
+                    return c < 0;
+                case "<=":
+                    return c <= 0;
+                case ">":
+                    return c > 0;
+                case ">=":
+                    return c >= 0;
+                case "=":
+                    return c == 0;
+                default:
+                    return c != 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.exceptions.DeckungsartNichtRegelkonformException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prueft den Parser der Ablehnungsregeln ohne Datenbank.
+ */
+public class AblehnungsregelnTest {
+
+    /**
+     * Ausdruck, Wert, trifft zu.
+     */
+    private static final Object[][] BEDINGUNGEN = {
+            {"- -", "0", true},
+            {"- -", "-5", true},
+            {"  - -  ", "1000000", true},
+            {"< 18", "17", true},
+            {"< 18", "18", false},
+            {"<18", "17.99", true},
+            {"<= 18", "18", true},
+            {"<= 18", "19", false},
+            {"> 90", "91", true},
+            {"> 90", "90", false},
+            {">= 300000", "300000", true},
+            {">= 300000", "299999.99", false},
+            {">=300000", "300000.00", true},
+            {"= 60", "60.0", true},
+            {"= 60", "61", false},
+            {"<> 60", "61", true},
+            {"<> 60", "60", false},
+            {"!= 60", "60", false},
+            {"!= 60", "59", true},
+    };
+
+    private static final String[] UNGUELTIG = {
+            null, "", "   ", "-", "- - -", "18", "abc", "<", ">=", ">= x", "=> 5", "<< 5", "< 18 Jahre", "--",
+    };
+
+    /**
+     * Deckungsart, Betrag, Alter, abgelehnt; Regeln wie in data-insert.sql.
+     */
+    private static final Object[][] REGELN_DA = {
+            {1, "100000", 17, true},
+            {1, "100000", 18, false},
+            {2, "100000", 0, true},
+            {2, "100000", 99, false},
+            {3, "100000", 90, false},
+            {3, "100000", 91, true},
+            {3, "300000", 60, false},
+            {3, "300000", 61, true},
+            {3, "299999", 61, false},
+            {3, "200000", 70, false},
+            {3, "200000", 71, true},
+            {3, "199999", 71, false},
+            {4, "300000", 99, false},
+    };
+
+    @Test
+    public void bedingungen() {
+        for (Object[] fall : BEDINGUNGEN) {
+            Ablehnungsregeln.Bedingung b = Ablehnungsregeln.Bedingung.parse((String) fall[0]);
+            Assert.assertEquals(fall[0] + " mit " + fall[1], fall[2], b.trifftZu(new BigDecimal((String) fall[1])));
+        }
+    }
+
+    @Test
+    public void ungueltigeAusdruecke() {
+        for (String ausdruck : UNGUELTIG) {
+            try {
+                Ablehnungsregeln.Bedingung.parse(ausdruck);
+                Assert.fail("kein Fehler fuer <" + ausdruck + ">");
+            } catch (DataException e) {
+                // erwartet
+            }
+        }
+    }
+
+    @Test
+    public void kombinierteBedingungen() {
+        Ablehnungsregeln regeln = regeln(regel(1, ">= 300000", "> 60"));
+        Assert.assertTrue(abgelehnt(regeln, 1, "300000", 61));
+        Assert.assertFalse(abgelehnt(regeln, 1, "300000", 60));
+        Assert.assertFalse(abgelehnt(regeln, 1, "200000", 61));
+    }
+
+    @Test
+    public void regelnDerDeckungsarten() {
+        Ablehnungsregeln regeln = regeln(
+                regel(1, "- -", "< 18"),
+                regel(2, "- -", "< 18"),
+                regel(3, "- -", "> 90"),
+                regel(3, ">= 300000", "> 60"),
+                regel(3, ">= 200000", "> 70"));
+        for (Object[] fall : REGELN_DA) {
+            Assert.assertEquals("DA" + fall[0] + " " + fall[1] + " alter " + fall[2], fall[3],
+                    abgelehnt(regeln, (Integer) fall[0], (String) fall[1], (Integer) fall[2]));
+        }
+    }
+
+    @Test
+    public void deckungsartOhneRegeln() {
+        Ablehnungsregeln regeln = regeln(regel(1, "- -", "- -"));
+        Assert.assertTrue(abgelehnt(regeln, 1, "1", 50));
+        Assert.assertFalse(abgelehnt(regeln, 2, "1", 50));
+    }
+
+    private static boolean abgelehnt(Ablehnungsregeln regeln, Integer deckungsartId, String betrag, int alter) {
+        try {
+            regeln.pruefe(deckungsartId, new BigDecimal(betrag), alter);
+            return false;
+        } catch (DeckungsartNichtRegelkonformException e) {
+            return true;
+        }
+    }
+
+    private static Object[] regel(Integer deckungsartId, String betrag, String alter) {
+        return new Object[]{deckungsartId, betrag, alter};
+    }
+
+    private static Ablehnungsregeln regeln(Object[]... zeilen) {
+        Map<Integer, List<Ablehnungsregeln.Regel>> regeln = new HashMap<>();
+        for (Object[] z : zeilen) {
+            List<Ablehnungsregeln.Regel> liste = regeln.computeIfAbsent((Integer) z[0], k -> new ArrayList<>());
+            liste.add(new Ablehnungsregeln.Regel(liste.size() + 1,
+                    Ablehnungsregeln.Bedingung.parse((String) z[1]),
+                    Ablehnungsregeln.Bedingung.parse((String) z[2])));
+        }
+        return new Ablehnungsregeln(regeln);
+    }
+}
@@ -0,0 +1,229 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pflegt die Tabelle Monatsrate, in der die Monatsrate jedes Vertrags
+ * gespeichert ist. Beim Einfuegen einer Deckung wird die Rate des Vertrags in
+ * derselben Transaktion um die Preise der Deckungsart erhoeht; calcMonatsrate
+ * kann die Rate dann ueber den Primaerschluessel lesen.
+ * <p>
+ * Es gilt dieselbe Jahresregel wie in calcMonatsrate. Vertraege ohne Zeile
+ * haben die Rate 0. Nach einer Aenderung der Deckungspreise muss die Tabelle
+ * mit {@link #neuAufbauen} neu berechnet werden; {@link #pruefe} vergleicht sie
+ * mit der Berechnung aus den Deckungen.
+ */
+public class MonatsrateTabelle {
+    private static final Logger L = LoggerFactory.getLogger(MonatsrateTabelle.class);
+    /**
+     * Die Jahresregel als Datumsbereich, siehe deckungspreis_gueltig_idx.
+     */
+    private static final String PREISFILTER = String.join(" ",
+            "dp.Gueltig_Von < add_months(trunc(v.Versicherungsbeginn, 'YYYY'), 12)",
+            "and dp.Gueltig_Bis >= trunc(v.Versicherungsbeginn, 'YYYY')");
+    private static final String BERECHNUNG_SQL = String.join(" ",
+            "select v.ID, coalesce(sum(dp.Preis), 0) as Preis",
+            "from Vertrag v",
+            "left join Deckung d on d.Vertrag_FK = v.ID",
+            "left join Deckungsbetrag db on db.Deckungsart_FK = d.Deckungsart_FK",
+            "left join Deckungspreis dp on dp.Deckungsbetrag_FK = db.ID and", PREISFILTER,
+            "group by v.ID");
+    private static final String ADDIEREN_SQL = String.join(" ",
+            "merge into Monatsrate m",
+            "using (select v.ID, coalesce(sum(dp.Preis), 0) as Preis",
+            "       from Vertrag v",
+            "       left join Deckungsbetrag db on db.Deckungsart_FK = ?",
+            "       left join Deckungspreis dp on dp.Deckungsbetrag_FK = db.ID and", PREISFILTER,
+            "       where v.ID = ?",
+            "       group by v.ID) x",
+            "on (m.Vertrag_FK = x.ID)",
+            "when matched then update set m.Rate = m.Rate + x.Preis",
+            "when not matched then insert (Vertrag_FK, Rate) values (x.ID, x.Preis)");
+    private static final String PRUEFEN_SQL = String.join(" ",
+            "select coalesce(x.ID, m.Vertrag_FK) as ID, m.Rate, x.Preis",
+            "from (" + BERECHNUNG_SQL + ") x",
+            "full outer join Monatsrate m on m.Vertrag_FK = x.ID",
+            "where x.ID is null",
+            "or (m.Vertrag_FK is null and x.Preis <> 0)",
+            "or m.Rate <> x.Preis",
+            "order by 1");
+
+    /**
+     * Erhoeht die Rate des Vertrags um die Preise einer neu eingefuegten Deckung.
+     * Muss in der Transaktion des Inserts aufgerufen werden.
+     */
+    public void addiereDeckung(Connection connection, Integer vertragsId, Integer deckungsartId) {
+        try (PreparedStatement ps = connection.prepareStatement(ADDIEREN_SQL)) {
+            addiere(ps, vertragsId, deckungsartId);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Wie addiereDeckung fuer mehrere Deckungen in einem Batch; vertragsIds und
+     * deckungsartIds gehoeren paarweise zusammen.
+     * <p>
+     * Schlaegt das Batch fehl, wird bis zu einem Savepoint davor zurueckgerollt
+     * und jede Deckung einzeln addiert. Die Update-Zaehler helfen nicht: Oracle
+     * meldet auch fuer angewendete Zeilen EXECUTE_FAILED, eine Wiederholung nur
+     * dieser Zeilen wuerde ihre Preise doppelt addieren.
+     */
+    public void addiereDeckungen(Connection connection, List<Integer> vertragsIds, List<Integer> deckungsartIds) {
+        if (vertragsIds.size() != deckungsartIds.size()) {
+            throw new IllegalArgumentException("vertragsIds: " + vertragsIds.size()
+                    + ", deckungsartIds: " + deckungsartIds.size());
+        }
+        if (vertragsIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(ADDIEREN_SQL)) {
+            try {
+                JdbcUtils.inTransaktion(connection, () -> {
+                    for (int i = 0; i < vertragsIds.size(); i++) {
+                        ps.setInt(1, deckungsartIds.get(i));
+                        ps.setInt(2, vertragsIds.get(i));
+                        ps.addBatch();
+                    }
+                    return ps.executeBatch();
+                });
+            } catch (BatchUpdateException e) {
+                // z.B. legen zwei Transaktionen gleichzeitig die Zeile eines Vertrags an
+                L.warn("batch fehlgeschlagen, einzeln: " + vertragsIds.size(), e);
+                ps.clearBatch();
+                for (int i = 0; i < vertragsIds.size(); i++) {
+                    addiere(ps, vertragsIds.get(i), deckungsartIds.get(i));
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static void addiere(PreparedStatement ps, Integer vertragsId, Integer deckungsartId) throws SQLException {
+        ps.setInt(1, deckungsartId);
+        ps.setInt(2, vertragsId);
+        try {
+            ps.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Zeile wurde gleichzeitig angelegt, jetzt greift der update-Zweig
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Berechnet die Tabelle in einer eigenen Transaktion vollstaendig neu, z.B.
+     * nach einer Aenderung der Deckungspreise.
+     *
+     * @return die Anzahl der Vertraege.
+     */
+    public int neuAufbauen(Connection connection) {
+        L.info("start");
+        boolean autoCommit = true;
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            int anzahl;
+            try (PreparedStatement loeschen = connection.prepareStatement("delete from Monatsrate");
+                 PreparedStatement einfuegen = connection.prepareStatement(
+                         "insert into Monatsrate (Vertrag_FK, Rate) " + BERECHNUNG_SQL)) {
+                loeschen.executeUpdate();
+                anzahl = einfuegen.executeUpdate();
+            }
+            connection.commit();
+            L.info("ende, vertraege: " + anzahl);
+            return anzahl;
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+            L.error("", e);
+            throw new DataException(e);
+        } finally {
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                L.error("", e);
+            }
+        }
+    }
+
+    /**
+     * Vergleicht die gespeicherten Raten mit der Berechnung aus den Deckungen.
+     *
+     * @return die abweichenden Vertraege; leer, wenn die Tabelle stimmt.
+     */
+    public List<Abweichung> pruefe(Connection connection) {
+        L.info("start");
+        List<Abweichung> abweichungen = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(PRUEFEN_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Abweichung a = new Abweichung(rs.getInt("ID"), rs.getBigDecimal("Rate"), rs.getBigDecimal("Preis"));
+                L.warn(a.toString());
+                abweichungen.add(a);
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        L.info("ende, abweichungen: " + abweichungen.size());
+        return abweichungen;
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            L.error("", e);
+        }
+    }
+
+    /**
+     * Ein Vertrag, dessen gespeicherte Rate nicht zur Berechnung passt. Fehlt die
+     * Zeile, ist gespeichert null; gibt es den Vertrag nicht mehr, ist berechnet
+     * null.
+     */
+    public static class Abweichung {
+        private final Integer vertragsId;
+        private final BigDecimal gespeichert;
+        private final BigDecimal berechnet;
+
+        Abweichung(Integer vertragsId, BigDecimal gespeichert, BigDecimal berechnet) {
+            this.vertragsId = vertragsId;
+            this.gespeichert = gespeichert;
+            this.berechnet = berechnet;
+        }
+
+        public Integer getVertragsId() {
+            return vertragsId;
+        }
+
+        public BigDecimal getGespeichert() {
+            return gespeichert;
+        }
+
+        public BigDecimal getBerechnet() {
+            return berechnet;
+        }
+
+        @Override
+        public String toString() {
+            return "Abweichung [vertragsId=" + vertragsId + ", gespeichert=" + gespeichert + ", berechnet="
+                    + berechnet + "]";
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bestimmt Deckungspreise ohne Datenbankzugriff. Je Deckungsbetrag liegen die
+ * Gueltigkeitszeitraeume als aufsteigend sortierte Arrays von Epochentagen vor,
+ * ein Preis wird per binaerer Suche gefunden. Ueberlappende Zeitraeume eines
+ * Deckungsbetrags sind ein Datenfehler und werden beim Aufbau abgewiesen.
+ * <p>
+ * Es gibt zwei Regeln fuer die Gueltigkeit: {@link #findPreis} prueft das Datum
+ * genau (wie createDeckung), {@link #summePreiseImJahr} vergleicht nur die Jahre
+ * (wie calcMonatsrate).
+ */
+public class PriceResolver {
+    private final Map<Integer, Zeitraeume> zeitraeumeJeDeckungsbetrag;
+
+    private PriceResolver(Map<Integer, Zeitraeume> zeitraeumeJeDeckungsbetrag) {
+        this.zeitraeumeJeDeckungsbetrag = zeitraeumeJeDeckungsbetrag;
+    }
+
+    /**
+     * @return den am Stichtag gueltigen Preis des Deckungsbetrags oder null.
+     */
+    public BigDecimal findPreis(Integer deckungsbetragId, LocalDate stichtag) {
+        Zeitraeume z = zeitraeumeJeDeckungsbetrag.get(deckungsbetragId);
+        if (z == null) {
+            return null;
+        }
+        long tag = stichtag.toEpochDay();
+        int i = z.letzterBeginnBis(tag);
+        if (i >= 0 && z.bis[i] >= tag) {
+            return z.preis[i];
+        }
+        return null;
+    }
+
+    /**
+     * Summe der Preise des Deckungsbetrags, deren Gueltigkeitsjahre das Jahr des
+     * Stichtags einschliessen.
+     */
+    public BigDecimal summePreiseImJahr(Integer deckungsbetragId, LocalDate stichtag) {
+        Zeitraeume z = zeitraeumeJeDeckungsbetrag.get(deckungsbetragId);
+        BigDecimal summe = BigDecimal.ZERO;
+        if (z == null) {
+            return summe;
+        }
+        long jahresanfang = LocalDate.of(stichtag.getYear(), 1, 1).toEpochDay();
+        long jahresende = LocalDate.of(stichtag.getYear(), 12, 31).toEpochDay();
+        // Die Zeitraeume ueberlappen nicht, also sind auch die Enden aufsteigend.
+        int i = Math.max(z.letzterBeginnBis(jahresanfang), 0);
+        for (; i < z.von.length && z.von[i] <= jahresende; i++) {
+            if (z.bis[i] >= jahresanfang) {
+                summe = summe.add(z.preis[i]);
+            }
+        }
+        return summe;
+    }
+
+    /**
+     * Sammelt die Zeilen der Tabelle Deckungspreis und baut daraus einen
+     * PriceResolver.
+     */
+    public static class Builder {
+        private final Map<Integer, List<Zeitraum>> zeilen = new HashMap<>();
+
+        public Builder add(int deckungsbetragId, LocalDate gueltigVon, LocalDate gueltigBis, BigDecimal preis) {
+            zeilen.computeIfAbsent(deckungsbetragId, k -> new ArrayList<>())
+                    .add(new Zeitraum(gueltigVon.toEpochDay(), gueltigBis.toEpochDay(), preis));
+            return this;
+        }
+
+        /**
+         * @throws DataException wenn sich zwei Zeitraeume eines Deckungsbetrags
+         *                       ueberschneiden oder ein Zeitraum vor seinem Beginn
+         *                       endet.
+         */
+        public PriceResolver build() {
+            Map<Integer, Zeitraeume> zeitraeume = new HashMap<>();
+            for (Map.Entry<Integer, List<Zeitraum>> e : zeilen.entrySet()) {
+                List<Zeitraum> liste = e.getValue();
+                liste.sort((a, b) -> Long.compare(a.von, b.von));
+                Zeitraeume z = new Zeitraeume(liste.size());
+                for (int i = 0; i < liste.size(); i++) {
+                    Zeitraum zr = liste.get(i);
+                    if (zr.bis < zr.von) {
+                        throw new DataException("deckungspreis endet vor beginn, deckungsbetrag: " + e.getKey()
+                                + ", gueltig ab " + LocalDate.ofEpochDay(zr.von));
+                    }
+                    if (i > 0 && zr.von <= z.bis[i - 1]) {
+                        throw new DataException("ueberlappende deckungspreise, deckungsbetrag: " + e.getKey()
+                                + ", gueltig ab " + LocalDate.ofEpochDay(zr.von));
+                    }
+                    z.von[i] = zr.von;
+                    z.bis[i] = zr.bis;
+                    z.preis[i] = zr.preis;
+                }
+                zeitraeume.put(e.getKey(), z);
+            }
+            return new PriceResolver(zeitraeume);
+        }
+    }
+
+    private static class Zeitraum {
+        final long von;
+        final long bis;
+        final BigDecimal preis;
+
+        Zeitraum(long von, long bis, BigDecimal preis) {
+            this.von = von;
+            this.bis = bis;
+            this.preis = preis;
+        }
+    }
+
+    private static class Zeitraeume {
+        final long[] von;
+        final long[] bis;
+        final BigDecimal[] preis;
+
+        Zeitraeume(int n) {
+            von = new long[n];
+            bis = new long[n];
+            preis = new BigDecimal[n];
+        }
+
+        /**
+         * @return den Index des letzten Zeitraums mit Beginn <= tag oder -1.
+         */
+        int letzterBeginnBis(long tag) {
+            int lo = 0;
+            int hi = von.length - 1;
+            int treffer = -1;
+            while (lo <= hi) {
+                int mitte = (lo + hi) >>> 1;
+                if (von[mitte] <= tag) {
+                    treffer = mitte;
+                    lo = mitte + 1;
+                } else {
+                    hi = mitte - 1;
+                }
+            }
+            return treffer;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Prueft PriceResolver ohne Datenbank.
+ */
+public class PriceResolverTest {
+
+    /**
+     * Deckungsbetrag 1: zwei Zeitraeume mit Luecke im Maerz 2018, dazu ein
+     * Zeitraum ueber mehrere Jahre. Deckungsbetrag 2: mehrere Zeitraeume in einem
+     * Jahr. Absichtlich nicht sortiert hinzugefuegt.
+     */
+    private static PriceResolver preise() {
+        return new PriceResolver.Builder()
+                .add(1, d("2018-04-01"), d("2020-06-30"), BigDecimal.valueOf(12))
+                .add(1, d("2017-04-01"), d("2018-02-28"), BigDecimal.valueOf(10))
+                .add(2, d("2021-07-01"), d("2022-12-31"), BigDecimal.valueOf(3))
+                .add(2, d("2021-01-01"), d("2021-06-30"), BigDecimal.valueOf(2))
+                .add(2, d("2019-01-01"), d("2019-12-31"), BigDecimal.valueOf(1))
+                .build();
+    }
+
+    /**
+     * Deckungsbetrag, Stichtag, erwarteter Preis oder null.
+     */
+    private static final Object[][] FIND_PREIS = {
+            {1, "2017-03-31", null},
+            {1, "2017-04-01", 10},
+            {1, "2018-02-28", 10},
+            {1, "2018-03-01", null},
+            {1, "2018-03-31", null},
+            {1, "2018-04-01", 12},
+            {1, "2020-06-30", 12},
+            {1, "2020-07-01", null},
+            {2, "2020-06-15", null},
+            {2, "2021-06-30", 2},
+            {2, "2021-07-01", 3},
+            {3, "2019-01-01", null},
+    };
+
+    /**
+     * Deckungsbetrag, Stichtag, erwartete Summe.
+     */
+    private static final Object[][] SUMME_IM_JAHR = {
+            {1, "2016-12-31", 0},
+            {1, "2017-01-01", 10},
+            {1, "2017-12-31", 10},
+            // Luecke im Maerz, beide Zeitraeume beruehren das Jahr
+            {1, "2018-03-15", 22},
+            {1, "2019-05-05", 12},
+            {1, "2020-12-31", 12},
+            {1, "2021-01-01", 0},
+            {2, "2018-06-01", 0},
+            {2, "2019-06-01", 1},
+            {2, "2020-06-01", 0},
+            {2, "2021-02-01", 5},
+            {2, "2022-02-01", 3},
+            {3, "2021-02-01", 0},
+    };
+
+    @Test
+    public void findPreis() {
+        PriceResolver preise = preise();
+        for (Object[] fall : FIND_PREIS) {
+            BigDecimal erwartet = fall[2] == null ? null : BigDecimal.valueOf((Integer) fall[2]);
+            Assert.assertEquals(fall[0] + " am " + fall[1], erwartet, preise.findPreis((Integer) fall[0], d((String) fall[1])));
+        }
+    }
+
+    @Test
+    public void summePreiseImJahr() {
+        PriceResolver preise = preise();
+        for (Object[] fall : SUMME_IM_JAHR) {
+            BigDecimal summe = preise.summePreiseImJahr((Integer) fall[0], d((String) fall[1]));
+            Assert.assertEquals(fall[0] + " im Jahr von " + fall[1], 0,
+                    BigDecimal.valueOf((Integer) fall[2]).compareTo(summe));
+        }
+    }
+
+    @Test
+    public void angrenzendeZeitraeume() {
+        PriceResolver preise = new PriceResolver.Builder()
+                .add(1, d("2017-01-01"), d("2017-12-31"), BigDecimal.ONE)
+                .add(1, d("2018-01-01"), d("2018-01-01"), BigDecimal.TEN)
+                .build();
+        Assert.assertEquals(BigDecimal.ONE, preise.findPreis(1, d("2017-12-31")));
+        Assert.assertEquals(BigDecimal.TEN, preise.findPreis(1, d("2018-01-01")));
+        Assert.assertNull(preise.findPreis(1, d("2018-01-02")));
+    }
+
+    @Test(expected = DataException.class)
+    public void ueberlappung() {
+        new PriceResolver.Builder()
+                .add(1, d("2017-01-01"), d("2018-12-31"), BigDecimal.ONE)
+                .add(1, d("2018-06-01"), d("2019-12-31"), BigDecimal.TEN)
+                .build();
+    }
+
+    @Test(expected = DataException.class)
+    public void ueberlappungAmGleichenTag() {
+        new PriceResolver.Builder()
+                .add(1, d("2018-01-01"), d("2018-12-31"), BigDecimal.TEN)
+                .add(1, d("2017-01-01"), d("2018-01-01"), BigDecimal.ONE)
+                .build();
+    }
+
+    @Test(expected = DataException.class)
+    public void endeVorBeginn() {
+        new PriceResolver.Builder()
+                .add(1, d("2018-01-02"), d("2018-01-01"), BigDecimal.ONE)
+                .build();
+    }
+
+    @Test
+    public void ueberlappungVerschiedenerDeckungsbetraege() {
+        PriceResolver preise = new PriceResolver.Builder()
+                .add(1, d("2017-01-01"), d("2018-12-31"), BigDecimal.ONE)
+                .add(2, d("2017-01-01"), d("2018-12-31"), BigDecimal.TEN)
+                .build();
+        Assert.assertEquals(BigDecimal.TEN, preise.findPreis(2, d("2018-12-31")));
+    }
+
+    private static LocalDate d(String datum) {
+        return LocalDate.parse(datum);
+    }
+}
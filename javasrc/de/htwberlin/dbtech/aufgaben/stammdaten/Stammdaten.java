@@ -0,0 +1,169 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unveraenderlicher Schnappschuss der Stammdaten Produkt, Deckungsart,
+ * Deckungsbetrag, Deckungspreis und Ablehnungsregel. Die Tabellen sind klein
+ * und aendern sich selten; Dienste koennen mit dem Schnappschuss Produkt,
+ * zulaessige Betraege und Preise ohne Datenbankzugriff bestimmen.
+ * <p>
+ * Schnappschuesse werden von {@link StammdatenCache} erzeugt und ausgetauscht.
+ */
+public class Stammdaten {
+    private static final Logger L = LoggerFactory.getLogger(Stammdaten.class);
+
+    private final long version;
+    private final List<String> kurzBezProdukte;
+    private final Map<Integer, Integer> produktIdJeDeckungsart;
+    private final Map<Integer, List<Deckungsbetrag>> deckungsbetraegeJeDeckungsart;
+    private final PriceResolver preise;
+    private final Ablehnungsregeln ablehnungsregeln;
+
+    private Stammdaten(long version, List<String> kurzBezProdukte, Map<Integer, Integer> produktIdJeDeckungsart,
+                       Map<Integer, List<Deckungsbetrag>> deckungsbetraegeJeDeckungsart,
+                       PriceResolver preise, Ablehnungsregeln ablehnungsregeln) {
+        this.version = version;
+        this.kurzBezProdukte = Collections.unmodifiableList(kurzBezProdukte);
+        this.produktIdJeDeckungsart = produktIdJeDeckungsart;
+        this.deckungsbetraegeJeDeckungsart = deckungsbetraegeJeDeckungsart;
+        this.preise = preise;
+        this.ablehnungsregeln = ablehnungsregeln;
+    }
+
+    /**
+     * Liest alle fuenf Tabellen ueber die uebergebene Connection.
+     */
+    static Stammdaten laden(Connection connection, long version) {
+        L.info("lade stammdaten version " + version);
+        List<String> kurzBezProdukte = new ArrayList<>();
+        Map<Integer, Integer> produktIdJeDeckungsart = new HashMap<>();
+        Map<Integer, List<Deckungsbetrag>> deckungsbetraege = new HashMap<>();
+        PriceResolver.Builder preise = new PriceResolver.Builder();
+        try {
+            try (PreparedStatement ps = connection.prepareStatement("select KurzBez from Produkt order by ID");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    kurzBezProdukte.add(rs.getString("KurzBez"));
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement("select ID, Produkt_FK from Deckungsart");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    produktIdJeDeckungsart.put(rs.getInt("ID"), rs.getInt("Produkt_FK"));
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "select ID, Deckungsart_FK, Deckungsbetrag from Deckungsbetrag order by ID");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    deckungsbetraege.computeIfAbsent(rs.getInt("Deckungsart_FK"), k -> new ArrayList<>())
+                            .add(new Deckungsbetrag(rs.getInt("ID"), rs.getBigDecimal("Deckungsbetrag")));
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "select Deckungsbetrag_FK, Gueltig_Von, Gueltig_Bis, Preis from Deckungspreis");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    preise.add(rs.getInt("Deckungsbetrag_FK"), rs.getDate("Gueltig_Von").toLocalDate(),
+                            rs.getDate("Gueltig_Bis").toLocalDate(), rs.getBigDecimal("Preis"));
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        Ablehnungsregeln ablehnungsregeln = new Ablehnungsregeln(Ablehnungsregeln.lese(connection));
+        return new Stammdaten(version, kurzBezProdukte, produktIdJeDeckungsart, deckungsbetraege, preise.build(),
+                ablehnungsregeln);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getKurzBezProdukte() {
+        return kurzBezProdukte;
+    }
+
+    /**
+     * @return das Produkt der Deckungsart oder null, wenn es die Deckungsart nicht
+     * gibt.
+     */
+    public Integer getProduktId(Integer deckungsartId) {
+        return produktIdJeDeckungsart.get(deckungsartId);
+    }
+
+    /**
+     * @return die ID des Deckungsbetrags oder null, wenn der Betrag fuer die
+     * Deckungsart nicht angeboten wird.
+     */
+    public Integer findDeckungsbetragId(Integer deckungsartId, BigDecimal deckungsbetrag) {
+        for (Deckungsbetrag db : deckungsbetraegeJeDeckungsart.getOrDefault(deckungsartId, Collections.emptyList())) {
+            if (db.betrag.compareTo(deckungsbetrag) == 0) {
+                return db.id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return den am Stichtag gueltigen Preis des Deckungsbetrags oder null.
+     */
+    public BigDecimal findPreis(Integer deckungsbetragId, LocalDate stichtag) {
+        return preise.findPreis(deckungsbetragId, stichtag);
+    }
+
+    /**
+     * Summe der Preise des Deckungsbetrags, deren Gueltigkeitsjahre das Jahr des
+     * Stichtags einschliessen. Das entspricht der Jahresregel von calcMonatsrate.
+     */
+    public BigDecimal summePreiseImJahr(Integer deckungsbetragId, LocalDate stichtag) {
+        return preise.summePreiseImJahr(deckungsbetragId, stichtag);
+    }
+
+    /**
+     * Summe der Preise aller Deckungsbetraege der Deckungsart nach der
+     * Jahresregel. So rechnet calcMonatsrate eine Deckung ab: der Betrag der
+     * Deckung selbst waehlt dabei keinen Preis aus.
+     */
+    public BigDecimal summePreiseDerDeckungsartImJahr(Integer deckungsartId, LocalDate stichtag) {
+        BigDecimal summe = BigDecimal.ZERO;
+        for (Deckungsbetrag db : deckungsbetraegeJeDeckungsart.getOrDefault(deckungsartId, Collections.emptyList())) {
+            summe = summe.add(preise.summePreiseImJahr(db.id, stichtag));
+        }
+        return summe;
+    }
+
+    public PriceResolver getPreise() {
+        return preise;
+    }
+
+    public Ablehnungsregeln getAblehnungsregeln() {
+        return ablehnungsregeln;
+    }
+
+    private static class Deckungsbetrag {
+        final int id;
+        final BigDecimal betrag;
+
+        Deckungsbetrag(int id, BigDecimal betrag) {
+            this.id = id;
+            this.betrag = betrag;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.htwberlin.dbtech.aufgaben.stammdaten;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Haelt den aktuellen {@link Stammdaten}-Schnappschuss. Beim Aktualisieren wird
+ * ein neuer Schnappschuss mit hoeherer Versionsnummer geladen und atomar gegen
+ * den alten getauscht; Leser sehen immer einen vollstaendigen Stand.
+ * <p>
+ * Die Connection wird nur zum Laden benutzt. Bei automatischer Aktualisierung
+ * laedt ein eigener Thread, dann sollte der Cache eine eigene Connection haben.
+ */
+public class StammdatenCache implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(StammdatenCache.class);
+    private final AtomicReference<Stammdaten> aktuell = new AtomicReference<>();
+    private Connection connection;
+    private ScheduledExecutorService zeitgeber;
+
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    private Connection useConnection() {
+        if (connection == null) {
+            throw new DataException("Connection not set");
+        }
+        return connection;
+    }
+
+    /**
+     * Liefert den aktuellen Schnappschuss. Beim ersten Aufruf wird er geladen.
+     */
+    public Stammdaten get() {
+        Stammdaten stammdaten = aktuell.get();
+        if (stammdaten == null) {
+            stammdaten = aktualisieren();
+        }
+        return stammdaten;
+    }
+
+    /**
+     * Laedt einen neuen Schnappschuss und macht ihn zum aktuellen.
+     */
+    public synchronized Stammdaten aktualisieren() {
+        Stammdaten alt = aktuell.get();
+        long version = alt == null ? 1 : alt.getVersion() + 1;
+        Stammdaten neu = Stammdaten.laden(useConnection(), version);
+        aktuell.set(neu);
+        L.info("stammdaten version " + version + " aktiv");
+        return neu;
+    }
+
+    /**
+     * Aktualisiert den Schnappschuss im angegebenen Abstand in einem eigenen
+     * Thread. Fehler beim Laden werden protokolliert, der alte Stand bleibt dann
+     * gueltig.
+     */
+    public synchronized void starteAktualisierung(long intervall, TimeUnit einheit) {
+        stoppeAktualisierung();
+        zeitgeber = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stammdaten-aktualisierung");
+            t.setDaemon(true);
+            return t;
+        });
+        zeitgeber.scheduleWithFixedDelay(() -> {
+            try {
+                aktualisieren();
+            } catch (RuntimeException e) {
+                L.error("aktualisierung der stammdaten gescheitert", e);
+            }
+        }, intervall, intervall, einheit);
+    }
+
+    public synchronized void stoppeAktualisierung() {
+        if (zeitgeber != null) {
+            zeitgeber.shutdownNow();
+            zeitgeber = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stoppeAktualisierung();
+    }
+
+}
@@ -9,7 +9,10 @@ import de.htwberlin.dbtech.exceptions.*;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface IVersicherungJdbc {
 
@@ -32,6 +35,14 @@ public interface IVersicherungJdbc {
      */
     Kunde findKundeById(Integer id);
 
+    /**
+     * Liefert die Kunden zu vielen IDs mit wenigen Abfragen.
+     *
+     * @param ids Primaerschluessel der Kunden.
+     * @return Kunden nach ID; IDs ohne Kunden fehlen in der Map.
+     */
+    Map<Integer, Kunde> findKundenByIds(int[] ids);
+
     /**
      * Fuegt einen neuen Vertragsdatensatz in die Datenbank ein. Das
      * Versicherungsende soll 1 Jahr minus 1 Tag nach dem Versicherungsbeginn
@@ -64,4 +75,21 @@ public interface IVersicherungJdbc {
      */
     BigDecimal calcMonatsrate(Integer vertragsId);
 
+    /**
+     * Berechnet die Monatsraten vieler Vertraege mit wenigen Abfragen. Es gilt
+     * dieselbe Regel wie bei calcMonatsrate.
+     *
+     * @param vertragsIds Primaerschluessel der Vertraege.
+     * @return die Raten der gefundenen Vertraege; IDs ohne Vertrag werden in
+     * {@link Monatsraten#getFehlende()} gemeldet statt die Berechnung abzubrechen.
+     */
+    Monatsraten calcMonatsraten(Collection<Integer> vertragsIds);
+
+    /**
+     * Berechnet die Monatsraten aller Vertraege in einer Abfrage und uebergibt sie
+     * nach Vertrags-ID sortiert an den Verarbeiter, waehrend das Ergebnis gelesen
+     * wird.
+     */
+    void calcAlleMonatsraten(BiConsumer<Integer, BigDecimal> verarbeiter);
+
 }
@@ -0,0 +1,31 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import de.htwberlin.dbtech.utils.Tage;
+import de.htwberlin.dbtech.utils.ZeilenMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Liest Kunden aus einer Abfrage mit {@link #SPALTEN}. Das Geburtsdatum kommt
+ * als Tagnummer und wird ueber {@link Tage} ohne java.sql.Date gelesen.
+ */
+public class KundeMapper extends ZeilenMapper<Kunde> {
+    public static final String SPALTEN = "ID, Name, " + Tage.epochTag("Geburtsdatum") + " as Geburtstag";
+
+    public KundeMapper() {
+        super("ID", "Name", "Geburtstag");
+    }
+
+    @Override
+    protected Kunde neu() {
+        return new Kunde();
+    }
+
+    @Override
+    protected void fuelle(ResultSet rs, int[] indizes, Kunde ziel) throws SQLException {
+        ziel.setId(rs.getInt(indizes[0]));
+        ziel.setName(rs.getString(indizes[1]));
+        ziel.setGeburtsdatum(Tage.lese(rs, indizes[2]));
+    }
+}
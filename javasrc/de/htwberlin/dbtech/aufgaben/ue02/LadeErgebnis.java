@@ -0,0 +1,73 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import de.htwberlin.dbtech.exceptions.VersicherungException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ergebnis eines Laufs von {@link VertragLader}: Anzahl der geladenen Vertraege,
+ * die abgelehnten Zeilen mit der Ausnahme, die createVertrag fuer sie geworfen
+ * haette, und die Laderate.
+ */
+public class LadeErgebnis {
+    private long geladen = 0;
+    private final List<Ablehnung> abgelehnt = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private long dauerNanos = 0;
+
+    void geladen(int anzahl) {
+        geladen += anzahl;
+    }
+
+    void abgelehnt(VertragSpec spec, VersicherungException fehler) {
+        abgelehnt.add(new Ablehnung(spec, fehler));
+    }
+
+    void beenden() {
+        dauerNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getGeladen() {
+        return geladen;
+    }
+
+    public List<Ablehnung> getAbgelehnt() {
+        return Collections.unmodifiableList(abgelehnt);
+    }
+
+    public double getZeilenProSekunde() {
+        long dauer = dauerNanos > 0 ? dauerNanos : System.nanoTime() - startNanos;
+        return dauer == 0 ? 0.0 : (geladen + abgelehnt.size()) * 1e9 / dauer;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LadeErgebnis [geladen=%d, abgelehnt=%d, zeilenProSekunde=%.1f]", geladen,
+                abgelehnt.size(), getZeilenProSekunde());
+    }
+
+    public static class Ablehnung {
+        private final VertragSpec spec;
+        private final VersicherungException fehler;
+
+        Ablehnung(VertragSpec spec, VersicherungException fehler) {
+            this.spec = spec;
+            this.fehler = fehler;
+        }
+
+        public VertragSpec getSpec() {
+            return spec;
+        }
+
+        public VersicherungException getFehler() {
+            return fehler;
+        }
+
+        @Override
+        public String toString() {
+            return "Ablehnung [spec=" + spec + ", fehler=" + fehler + "]";
+        }
+    }
+}
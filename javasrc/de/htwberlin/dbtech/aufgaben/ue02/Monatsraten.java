@@ -0,0 +1,52 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ergebnis von calcMonatsraten: die Monatsraten der gefundenen Vertraege und die
+ * IDs, zu denen es keinen Vertrag gibt. Vertraege ohne Deckung haben die Rate 0.
+ */
+public class Monatsraten {
+    private final Map<Integer, BigDecimal> raten = new LinkedHashMap<>();
+    private final List<Integer> fehlende = new ArrayList<>();
+
+    void add(Integer vertragsId, BigDecimal monatsrate) {
+        raten.put(vertragsId, monatsrate);
+    }
+
+    void addFehlend(Integer vertragsId) {
+        fehlende.add(vertragsId);
+    }
+
+    /**
+     * @return Vertrags-ID und Monatsrate, in der Reihenfolge der Anfrage.
+     */
+    public Map<Integer, BigDecimal> getRaten() {
+        return Collections.unmodifiableMap(raten);
+    }
+
+    public BigDecimal getRate(Integer vertragsId) {
+        return raten.get(vertragsId);
+    }
+
+    /**
+     * @return die angefragten IDs, zu denen es keinen Vertrag gibt.
+     */
+    public List<Integer> getFehlende() {
+        return Collections.unmodifiableList(fehlende);
+    }
+
+    public boolean istVollstaendig() {
+        return fehlende.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Monatsraten [raten=" + raten.size() + ", fehlende=" + fehlende + "]";
+    }
+}
@@ -5,30 +5,163 @@ package de.htwberlin.dbtech.aufgaben.ue02;
   @author Ingo Classen
  */
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.Stammdaten;
+import de.htwberlin.dbtech.aufgaben.stammdaten.StammdatenCache;
 import de.htwberlin.dbtech.exceptions.*;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.QueryStream;
+import de.htwberlin.dbtech.utils.StatementCache;
+import de.htwberlin.dbtech.utils.TinyLfuCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * VersicherungJdbc
  */
 public class VersicherungJdbc implements IVersicherungJdbc {
     private static final Logger L = LoggerFactory.getLogger(VersicherungJdbc.class);
-    private Connection connection;
+    private static final int FETCH_GROESSE = 1000;
+    /**
+     * Jahresregel: die Jahre des Gueltigkeitszeitraums schliessen das Jahr des
+     * Versicherungsbeginns ein.
+     */
+    private static final String JAHRESREGEL = String.join(" ",
+            "extract(year from v.Versicherungsbeginn) >= extract(year from dp.Gueltig_Von)",
+            "and extract(year from v.Versicherungsbeginn) <= extract(year from dp.Gueltig_Bis)");
+    /**
+     * Dieselbe Regel als Datumsbereich: der Zeitraum beginnt vor dem 1.1. des
+     * Folgejahres und endet nicht vor dem 1.1. des Beginnjahres. Gueltig_Von und
+     * Gueltig_Bis stehen unveraendert im Vergleich, so kann der Index
+     * deckungspreis_gueltig_idx benutzt werden.
+     */
+    private static final String DATUMSBEREICH = String.join(" ",
+            "dp.Gueltig_Von < add_months(trunc(v.Versicherungsbeginn, 'YYYY'), 12)",
+            "and dp.Gueltig_Bis >= trunc(v.Versicherungsbeginn, 'YYYY')");
+    private static final String MONATSRATEN_SQL = String.join(" ",
+            "select v.ID, coalesce(sum(dp.Preis), 0) as Preis",
+            "from Vertrag v",
+            "left join Deckung d on d.Vertrag_FK = v.ID",
+            "left join Deckungsbetrag db on db.Deckungsart_FK = d.Deckungsart_FK",
+            "left join Deckungspreis dp on dp.Deckungsbetrag_FK = db.ID and ");
+    private static final String DECKUNGEN_SQL = String.join(" ",
+            "select v.ID, v.Versicherungsbeginn, d.Deckungsart_FK",
+            "from Vertrag v left join Deckung d on d.Vertrag_FK = v.ID");
+    // je Abfrage ein Mapper, die Spaltenindizes werden nur einmal aufgeloest
+    private static final KundeMapper KUNDE_EINZELN = new KundeMapper();
+    private static final KundeMapper KUNDE_IN_LISTE = new KundeMapper();
+    private static final KundeMapper KUNDE_ALLE = new KundeMapper();
+    private final ConnectionProvider verbindung = new ConnectionProvider();
+    private StammdatenCache stammdatenCache;
+    private TinyLfuCache<Kunde> kundenCache;
+    private IdAllocator vertragsIds;
+    private volatile boolean preisfilterAlsDatumsbereich = false;
+    private volatile boolean monatsrateAusTabelle = false;
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        verbindung.setConnection(connection);
+    }
+
+    /**
+     * Statt einer festen Connection leiht sich jede Operation eine Connection aus
+     * der DataSource. Der Dienst kann dann von mehreren Threads benutzt werden.
+     */
+    public void setDataSource(DataSource dataSource) {
+        verbindung.setDataSource(dataSource);
+    }
+
+    public StatementCache getStatementCache() {
+        return verbindung.getStatementCache();
+    }
+
+    private StatementCache statements() {
+        if (verbindung.getConnection() == null) {
+            throw new DataException("Connection not set");
+        }
+        return verbindung.getStatementCache();
+    }
+
+    /**
+     * Ist ein Stammdaten-Cache gesetzt, kommen Produkte und Deckungspreise aus dem
+     * aktuellen Schnappschuss statt aus der Datenbank.
+     */
+    public void setStammdatenCache(StammdatenCache stammdatenCache) {
+        this.stammdatenCache = stammdatenCache;
+    }
+
+    /**
+     * Setzt die Quelle fuer Vertrags-IDs von createVertrag ohne ID, z.B. ueber
+     * Vertrag_Seq.
+     */
+    public void setVertragsIdAllocator(IdAllocator vertragsIds) {
+        this.vertragsIds = vertragsIds;
+    }
+
+    /**
+     * Legt einen Vertrag mit einer ID aus dem IdAllocator an.
+     *
+     * @return die ID des neuen Vertrags.
+     */
+    public Integer createVertrag(Integer produktId, Integer kundenId, LocalDate versicherungsbeginn) {
+        if (vertragsIds == null) {
+            throw new DataException("IdAllocator not set");
+        }
+        Integer id = vertragsIds.nextInt();
+        createVertrag(id, produktId, kundenId, versicherungsbeginn);
+        return id;
+    }
+
+    /**
+     * Schaltet fuer calcMonatsrate und calcMonatsraten die Preisauswahl als
+     * Datumsbereich ein bzw. aus. Das Ergebnis ist dasselbe wie mit der
+     * Jahresregel, die Datenbank kann aber den Index auf Deckungspreis nutzen.
+     */
+    public void setPreisfilterAlsDatumsbereich(boolean preisfilterAlsDatumsbereich) {
+        this.preisfilterAlsDatumsbereich = preisfilterAlsDatumsbereich;
+    }
+
+    /**
+     * Liest calcMonatsrate die gespeicherte Rate aus der Tabelle Monatsrate ueber
+     * den Primaerschluessel. Die Tabelle muss von den Diensten, die Deckungen
+     * einfuegen, mitgepflegt werden (MonatsrateTabelle).
+     */
+    public void setMonatsrateAusTabelle(boolean monatsrateAusTabelle) {
+        this.monatsrateAusTabelle = monatsrateAusTabelle;
+    }
+
+    private String preisfilter() {
+        return preisfilterAlsDatumsbereich ? DATUMSBEREICH : JAHRESREGEL;
+    }
+
+    /**
+     * Ist ein Kunden-Cache gesetzt, beantwortet findKundeById wiederholte
+     * Anfragen aus dem Cache. Mit negativem Caching gilt das auch fuer
+     * unbekannte IDs. Der Cache liefert Kopien, die Eintraege bleiben unveraendert.
+     */
+    public void setKundenCache(TinyLfuCache<Kunde> kundenCache) {
+        this.kundenCache = kundenCache;
     }
 
-   @SuppressWarnings("unused")
     private Connection useConnection() {
+        Connection connection = verbindung.getConnection();
         if (connection == null) {
             throw new DataException("Connection not set");
         }
@@ -37,117 +170,385 @@ public class VersicherungJdbc implements IVersicherungJdbc {
 
     @Override
     public List<String> kurzBezProdukte() {
-        L.info("start");
-        String sql = "select KurzBez from Produkt order by id ";
-        L.info(sql);
-        List<String> result = new ArrayList<>();
-        try (Statement stmt = connection.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) {
-                    String kurzBez = rs.getString("KurzBez");
-                    result.add(kurzBez);
-                }
+        return verbindung.mitConnection(() -> {
+            L.info("start");
+            if (stammdatenCache != null) {
+                return new ArrayList<>(stammdatenCache.get().getKurzBezProdukte());
             }
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
-        }
-        L.info("ende");
-        return result;
+            String sql = "select KurzBez from Produkt order by id ";
+            L.info(sql);
+            List<String> result;
+            try (Stream<String> kurzBezes = QueryStream.of(statements().prepare(sql), false,
+                    QueryStream.DEFAULT_FETCH_SIZE, rs -> rs.getString("KurzBez"))) {
+                result = kurzBezes.collect(Collectors.toList());
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            L.info("ende");
+            return result;
+        });
     }
 
     @Override
     public Kunde findKundeById(Integer id) {
-        L.info("id: " + id);
-        String sql = "select * from Kunde where id= " + id;
-        L.info(sql);
-        Kunde kunde = null;
-        try (Statement stmt = connection.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                if (rs.next()) {
-                    String name = rs.getString("Name");
-                    LocalDate geburtsdatum = rs.getDate("Geburtsdatum").toLocalDate();
-                    kunde = new Kunde(id, name, geburtsdatum);
-                } else {
+        return verbindung.mitConnection(() -> {
+            L.info("id: " + id);
+            if (kundenCache != null) {
+                Kunde gecacht = kundenCache.get(id);
+                if (gecacht != null) {
+                    return new Kunde(gecacht.getId(), gecacht.getName(), gecacht.getGeburtsdatum());
+                }
+                if (kundenCache.istAbwesend(id)) {
                     throw new KundeExistiertNichtException(id);
                 }
             }
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
-        }
-        L.info("ende");
-        return kunde;
+            String sql = "select " + KundeMapper.SPALTEN + " from Kunde where ID = ?";
+            L.info(sql);
+            Kunde kunde = null;
+            try {
+                PreparedStatement stmt = statements().prepare(sql);
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        kunde = KUNDE_EINZELN.map(rs);
+                    } else {
+                        if (kundenCache != null) {
+                            kundenCache.putAbwesend(id);
+                        }
+                        throw new KundeExistiertNichtException(id);
+                    }
+                }
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            if (kundenCache != null) {
+                kundenCache.put(id, new Kunde(id, kunde.getName(), kunde.getGeburtsdatum()));
+            }
+            L.info("ende");
+            return kunde;
+        });
+    }
+
+    @Override
+    public Map<Integer, Kunde> findKundenByIds(int[] ids) {
+        return verbindung.mitConnection(() -> {
+            L.info("ids: " + ids.length);
+            Map<Integer, Kunde> kunden = new HashMap<>();
+            List<Integer> offen = new ArrayList<>();
+            for (int id : new LinkedHashSet<>(Arrays.stream(ids).boxed().collect(Collectors.toList()))) {
+                Kunde gecacht = kundenCache == null ? null : kundenCache.get(id);
+                if (gecacht != null) {
+                    kunden.put(id, new Kunde(gecacht.getId(), gecacht.getName(), gecacht.getGeburtsdatum()));
+                } else if (kundenCache == null || !kundenCache.istAbwesend(id)) {
+                    offen.add(id);
+                }
+            }
+            for (List<Integer> chunk : JdbcUtils.chunks(offen, JdbcUtils.MAX_IN_LIST)) {
+                int plaetze = plaetze(chunk.size());
+                String sql = "select " + KundeMapper.SPALTEN + " from Kunde where ID in ("
+                        + JdbcUtils.placeholders(plaetze) + ")";
+                try {
+                    PreparedStatement stmt = statements().prepare(sql);
+                    stmt.setFetchSize(FETCH_GROESSE);
+                    for (int i = 0; i < plaetze; i++) {
+                        stmt.setInt(i + 1, chunk.get(i < chunk.size() ? i : 0));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Kunde kunde = KUNDE_IN_LISTE.map(rs);
+                            kunden.put(kunde.getId(), kunde);
+                            if (kundenCache != null) {
+                                kundenCache.put(kunde.getId(),
+                                        new Kunde(kunde.getId(), kunde.getName(), kunde.getGeburtsdatum()));
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    L.error("", e);
+                    throw new DataException(e);
+                }
+                if (kundenCache != null) {
+                    for (Integer id : chunk) {
+                        if (!kunden.containsKey(id)) {
+                            kundenCache.putAbwesend(id);
+                        }
+                    }
+                }
+            }
+            L.info("ende, gefunden: " + kunden.size());
+            return kunden;
+        });
+    }
+
+    /**
+     * Liest alle Kunden, ohne je Zeile einen Kunden zu erzeugen: jede Zeile wird
+     * in flyweight uebertragen und dieses an den Verarbeiter gegeben. Der
+     * Verarbeiter muss sich die Werte kopieren, die er behalten will.
+     *
+     * @return die Anzahl der Kunden.
+     */
+    public long alleKunden(Kunde flyweight, Consumer<? super Kunde> verarbeiter) {
+        return verbindung.mitConnection(() -> {
+            String sql = "select " + KundeMapper.SPALTEN + " from Kunde";
+            L.info(sql);
+            long anzahl;
+            try {
+                PreparedStatement stmt = statements().prepare(sql);
+                stmt.setFetchSize(FETCH_GROESSE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    anzahl = KUNDE_ALLE.jedeZeile(rs, flyweight, verarbeiter);
+                }
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            L.info("ende, kunden: " + anzahl);
+            return anzahl;
+        });
     }
 
     @Override
     public void createVertrag(Integer id, Integer produktId, Integer kundenId, LocalDate versicherungsbeginn) {
-        L.info("id: " + id);
-        L.info("produktId: " + produktId);
-        L.info("kundenId: " + kundenId);
-        L.info("versicherungsbeginn: " + versicherungsbeginn);
-        L.info("Start insert");
+        verbindung.mitConnectionAusfuehren(() -> {
+            L.info("id: " + id);
+            L.info("produktId: " + produktId);
+            L.info("kundenId: " + kundenId);
+            L.info("versicherungsbeginn: " + versicherungsbeginn);
+            L.info("Start insert");
 
-        String sql = "insert into Vertrag(id, produkt_fk, kunde_fk, versicherungsbeginn, versicherungsende) values (?, ?, ?, ?, ?)";
-        L.info(sql);
+            String sql = "insert into Vertrag(id, produkt_fk, kunde_fk, versicherungsbeginn, versicherungsende) values (?, ?, ?, ?, ?)";
+            L.info(sql);
 
-        if (versicherungsbeginn.isBefore(LocalDate.now())) {
-            throw new DatumInVergangenheitException(versicherungsbeginn);
-        }
+            if (versicherungsbeginn.isBefore(LocalDate.now())) {
+                throw new DatumInVergangenheitException(versicherungsbeginn);
+            }
+
+            try {
+                PreparedStatement pstmt = statements().prepare(sql);
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, produktId);
+                pstmt.setInt(3, kundenId);
+                pstmt.setDate(4, java.sql.Date.valueOf(versicherungsbeginn));
+                pstmt.setDate(5, java.sql.Date.valueOf(versicherungsbeginn.plusYears(1).minusDays(1)));
+                pstmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                throw vertragsfehler(e, id, produktId, kundenId);
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            L.info("ende");
+        });
+    }
+
+    @Override
+    public BigDecimal calcMonatsrate(Integer vertragsId) {
+        return verbindung.mitConnection(() -> {
+            L.info("vertragsId: " + vertragsId);
+            if (monatsrateAusTabelle) {
+                return calcMonatsrateAusTabelle(vertragsId);
+            }
+            if (stammdatenCache != null) {
+                return calcMonatsrateMitStammdaten(stammdatenCache.get(), vertragsId);
+            }
+            String sql =
+                    "select sum(dp.preis) as preis "+
+                            "from Deckungspreis dp " +
+                            "join Deckungsbetrag db on db.id = dp.deckungsbetrag_fk "  +
+                            "join Deckungsart da on da.id = db.deckungsart_fk " +
+                            "join Deckung d on d.deckungsart_fk = da.id " +
+                            "join Vertrag v on d.vertrag_fk = v.id " +
+                            "where v.id = ? and " +
+                            preisfilter() + " " +
+                            "group by v.id, v.versicherungsbeginn";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-
-            pstmt.setInt(1, id);
-            pstmt.setInt(2, produktId);
-            pstmt.setInt(3, kundenId);
-            pstmt.setDate(4, java.sql.Date.valueOf(versicherungsbeginn));
-            pstmt.setDate(5, java.sql.Date.valueOf(versicherungsbeginn.plusYears(1).minusDays(1)));
-            pstmt.executeUpdate();
-        } catch (SQLIntegrityConstraintViolationException e) {
-            if (e.getMessage().contains("KUNDE_FK")) {
-                throw new KundeExistiertNichtException(kundenId);
-            } else if (e.getMessage().contains("PRODUKT_FK")) {
-                throw new ProduktExistiertNichtException(produktId);
-            } else if (e.getMessage().contains("ID")) {
-                throw new VertragExistiertBereitsException(id);
-            } else {
+            try {
+                PreparedStatement stmt = statements().prepare(sql);
+                stmt.setInt(1, vertragsId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        BigDecimal deckungspreis = rs.getBigDecimal("Preis");
+                        L.info("Deckungspreis: " + deckungspreis);
+                        return deckungspreis;
+                    }
+                }
+            } catch (SQLException e) {
                 L.error("", e);
                 throw new DataException(e);
             }
+            L.info("ende");
+            return BigDecimal.ZERO;
+        });
+    }
+
+    private BigDecimal calcMonatsrateAusTabelle(Integer vertragsId) {
+        try {
+            PreparedStatement stmt = statements().prepare("select Rate from Monatsrate where Vertrag_FK = ?");
+            stmt.setInt(1, vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                BigDecimal rate = rs.next() ? rs.getBigDecimal(1) : BigDecimal.ZERO;
+                L.info("Deckungspreis: " + rate);
+                return rate;
+            }
         } catch (SQLException e) {
             L.error("", e);
             throw new DataException(e);
         }
-        L.info("ende");
     }
 
-    @Override
-    public BigDecimal calcMonatsrate(Integer vertragsId) {
-        L.info("vertragsId: " + vertragsId);
-        String sql =
-                "select sum(dp.preis) as preis "+
-                        "from Deckungspreis dp " +
-                        "join Deckungsbetrag db on db.id = dp.deckungsbetrag_fk "  +
-                        "join Deckungsart da on da.id = db.deckungsart_fk " +
-                        "join Deckung d on d.deckungsart_fk = da.id " +
-                        "join Vertrag v on d.vertrag_fk = v.id " +
-                        "where v.id = " +  vertragsId + " and " +
-                        "EXTRACT(YEAR From v.versicherungsbeginn) >= EXTRACT(YEAR From dp.gueltig_von) and EXTRACT(YEAR From v.versicherungsbeginn) <= EXTRACT(YEAR From dp.gueltig_bis) " +
-                        "group by v.id, v.versicherungsbeginn";
-
-        try (Statement stmt = connection.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                if (rs.next()) {
-                    BigDecimal deckungspreis = rs.getBigDecimal("Preis");
-                    L.info("Deckungspreis: " + deckungspreis);
-                    return deckungspreis;
+    /**
+     * Liest nur Versicherungsbeginn und Deckungen des Vertrags; die Preise kommen
+     * aus dem Schnappschuss. Es gelten dieselbe Jahresregel und dieselbe Auswahl
+     * der Preise (alle Deckungsbetraege der Deckungsart) wie in der Abfrage.
+     */
+    private BigDecimal calcMonatsrateMitStammdaten(Stammdaten stammdaten, Integer vertragsId) {
+        String sql = String.join(" ",
+                "select v.Versicherungsbeginn, d.Deckungsart_FK",
+                "from Vertrag v join Deckung d on d.Vertrag_FK = v.ID",
+                "where v.ID = ?");
+        L.info(sql);
+        BigDecimal summe = BigDecimal.ZERO;
+        try {
+            PreparedStatement stmt = statements().prepare(sql);
+            stmt.setInt(1, vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate versicherungsbeginn = rs.getDate("Versicherungsbeginn").toLocalDate();
+                    summe = summe.add(stammdaten.summePreiseDerDeckungsartImJahr(rs.getInt("Deckungsart_FK"),
+                            versicherungsbeginn));
                 }
             }
         } catch (SQLException e) {
             L.error("", e);
             throw new DataException(e);
         }
-        L.info("ende");
-        return BigDecimal.ZERO;
+        L.info("Deckungspreis: " + summe);
+        return summe;
+    }
+
+    @Override
+    public Monatsraten calcMonatsraten(Collection<Integer> vertragsIds) {
+        return verbindung.mitConnection(() -> {
+            L.info("vertragsIds: " + vertragsIds.size());
+            List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(vertragsIds));
+            Stammdaten stammdaten = stammdatenCache == null ? null : stammdatenCache.get();
+            Map<Integer, BigDecimal> gefunden = new HashMap<>();
+            for (List<Integer> chunk : JdbcUtils.chunks(ids, JdbcUtils.MAX_IN_LIST)) {
+                int plaetze = plaetze(chunk.size());
+                String in = " where v.ID in (" + JdbcUtils.placeholders(plaetze) + ")";
+                String sql = stammdaten == null
+                        ? MONATSRATEN_SQL + preisfilter() + in + " group by v.ID"
+                        : DECKUNGEN_SQL + in + " order by v.ID";
+                try {
+                    PreparedStatement stmt = statements().prepare(sql);
+                    stmt.setFetchSize(FETCH_GROESSE);
+                    // mit der ersten ID auffuellen, damit es nur wenige verschiedene Statements gibt
+                    for (int i = 0; i < plaetze; i++) {
+                        stmt.setInt(i + 1, chunk.get(i < chunk.size() ? i : 0));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        lese(rs, stammdaten, gefunden::put);
+                    }
+                } catch (SQLException e) {
+                    L.error("", e);
+                    throw new DataException(e);
+                }
+            }
+            Monatsraten monatsraten = new Monatsraten();
+            for (Integer id : ids) {
+                BigDecimal rate = gefunden.get(id);
+                if (rate != null) {
+                    monatsraten.add(id, rate);
+                } else {
+                    monatsraten.addFehlend(id);
+                }
+            }
+            L.info("ende, " + monatsraten);
+            return monatsraten;
+        });
+    }
+
+    @Override
+    public void calcAlleMonatsraten(BiConsumer<Integer, BigDecimal> verarbeiter) {
+        verbindung.mitConnectionAusfuehren(() -> {
+            L.info("start");
+            Stammdaten stammdaten = stammdatenCache == null ? null : stammdatenCache.get();
+            String sql = stammdaten == null
+                    ? MONATSRATEN_SQL + preisfilter() + " group by v.ID order by v.ID"
+                    : DECKUNGEN_SQL + " order by v.ID";
+            L.info(sql);
+            try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
+                stmt.setFetchSize(FETCH_GROESSE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    lese(rs, stammdaten, verarbeiter);
+                }
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            L.info("ende");
+        });
+    }
+
+    /**
+     * Liest die Monatsraten aus dem Ergebnis von MONATSRATEN_SQL oder, mit
+     * Stammdaten, aus den nach Vertrag sortierten Zeilen von DECKUNGEN_SQL.
+     */
+    private static void lese(ResultSet rs, Stammdaten stammdaten, BiConsumer<Integer, BigDecimal> verarbeiter)
+            throws SQLException {
+        if (stammdaten == null) {
+            while (rs.next()) {
+                verarbeiter.accept(rs.getInt("ID"), rs.getBigDecimal("Preis"));
+            }
+            return;
+        }
+        Integer vertragsId = null;
+        BigDecimal summe = BigDecimal.ZERO;
+        while (rs.next()) {
+            int id = rs.getInt("ID");
+            if (vertragsId != null && vertragsId != id) {
+                verarbeiter.accept(vertragsId, summe);
+                summe = BigDecimal.ZERO;
+            }
+            vertragsId = id;
+            int deckungsartId = rs.getInt("Deckungsart_FK");
+            if (!rs.wasNull()) {
+                summe = summe.add(stammdaten.summePreiseDerDeckungsartImJahr(deckungsartId,
+                        rs.getDate("Versicherungsbeginn").toLocalDate()));
+            }
+        }
+        if (vertragsId != null) {
+            verarbeiter.accept(vertragsId, summe);
+        }
+    }
+
+    /**
+     * Anzahl der Platzhalter fuer n IDs: die naechste Zweierpotenz, mindestens 16.
+     */
+    private static int plaetze(int n) {
+        int plaetze = 16;
+        while (plaetze < n) {
+            plaetze *= 2;
+        }
+        return Math.min(plaetze, JdbcUtils.MAX_IN_LIST);
+    }
+
+    /**
+     * Uebersetzt die Verletzung einer Integritaetsbedingung beim Einfuegen eines
+     * Vertrags in die passende Ausnahme.
+     */
+    static RuntimeException vertragsfehler(SQLException e, Integer id, Integer produktId, Integer kundenId) {
+        if (e.getMessage().contains("KUNDE_FK")) {
+            return new KundeExistiertNichtException(kundenId);
+        } else if (e.getMessage().contains("PRODUKT_FK")) {
+            return new ProduktExistiertNichtException(produktId);
+        } else if (e.getMessage().contains("ID")) {
+            return new VertragExistiertBereitsException(id);
+        } else {
+            L.error("", e);
+            return new DataException(e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,63 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Die Methoden von {@link IVersicherungJdbc} als CompletableFuture. Die Aufrufe
+ * laufen ueber einen {@link AsyncAusfuehrer}, der die Anzahl gleichzeitiger
+ * Datenbankoperationen begrenzt; Ausnahmen wie KundeExistiertNichtException
+ * schliessen das Future unveraendert ab.
+ * <p>
+ * Bei mehr als einem gleichzeitigen Aufruf muss der Dienst ueber setDataSource
+ * konfiguriert sein, eine einzelne Connection darf nicht von mehreren Threads
+ * benutzt werden.
+ */
+public class VersicherungJdbcAsync {
+    private final IVersicherungJdbc dienst;
+    private final AsyncAusfuehrer ausfuehrer;
+
+    public VersicherungJdbcAsync(IVersicherungJdbc dienst, AsyncAusfuehrer ausfuehrer) {
+        this.dienst = dienst;
+        this.ausfuehrer = ausfuehrer;
+    }
+
+    public CompletableFuture<List<String>> kurzBezProdukte() {
+        return ausfuehrer.ausfuehren(dienst::kurzBezProdukte);
+    }
+
+    public CompletableFuture<Kunde> findKundeById(Integer id) {
+        return ausfuehrer.ausfuehren(() -> dienst.findKundeById(id));
+    }
+
+    public CompletableFuture<Map<Integer, Kunde>> findKundenByIds(int[] ids) {
+        return ausfuehrer.ausfuehren(() -> dienst.findKundenByIds(ids));
+    }
+
+    public CompletableFuture<Void> createVertrag(Integer id, Integer produktId, Integer kundenId,
+                                                 LocalDate versicherungsbeginn) {
+        return ausfuehrer.ausfuehren(() -> dienst.createVertrag(id, produktId, kundenId, versicherungsbeginn));
+    }
+
+    public CompletableFuture<BigDecimal> calcMonatsrate(Integer vertragsId) {
+        return ausfuehrer.ausfuehren(() -> dienst.calcMonatsrate(vertragsId));
+    }
+
+    public CompletableFuture<Monatsraten> calcMonatsraten(Collection<Integer> vertragsIds) {
+        return ausfuehrer.ausfuehren(() -> dienst.calcMonatsraten(vertragsIds));
+    }
+
+    /**
+     * Der Verarbeiter wird im Thread des Ausfuehrers aufgerufen.
+     */
+    public CompletableFuture<Void> calcAlleMonatsraten(BiConsumer<Integer, BigDecimal> verarbeiter) {
+        return ausfuehrer.ausfuehren(() -> dienst.calcAlleMonatsraten(verarbeiter));
+    }
+}
@@ -1,9 +1,12 @@
 package de.htwberlin.dbtech.aufgaben.ue02;
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.MonatsrateTabelle;
+import de.htwberlin.dbtech.aufgaben.stammdaten.StammdatenCache;
 import de.htwberlin.dbtech.exceptions.DatumInVergangenheitException;
 import de.htwberlin.dbtech.exceptions.KundeExistiertNichtException;
 import de.htwberlin.dbtech.exceptions.ProduktExistiertNichtException;
 import de.htwberlin.dbtech.exceptions.VertragExistiertBereitsException;
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
 import de.htwberlin.dbtech.utils.DbCred;
 import de.htwberlin.dbtech.utils.DbUnitUtils;
 import org.dbunit.IDatabaseTester;
@@ -23,9 +26,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class VersicherungJdbcTest {
@@ -80,6 +94,32 @@ public class VersicherungJdbcTest {
         vj.findKundeById(999);
     }
 
+    /**
+     * Werden mehrere Kunden auf einmal gefunden, unbekannte IDs ausgelassen?
+     */
+    @org.junit.Test
+    public void bbbfindKundenByIds() {
+        Map<Integer, Kunde> kunden = vj.findKundenByIds(new int[]{1, 2, 999, 1});
+        Assert.assertEquals("Anzahl falsch:", 2, kunden.size());
+        Assert.assertEquals("Name falsch:", "Gaul", kunden.get(1).getName());
+        Assert.assertEquals("Name falsch:", "Krumm", kunden.get(2).getName());
+    }
+
+    /**
+     * Alle Kunden werden in denselben Kunden gelesen.
+     */
+    @org.junit.Test
+    public void bbballeKunden() {
+        Kunde flyweight = new Kunde();
+        List<String> namen = new java.util.ArrayList<>();
+        long anzahl = ((VersicherungJdbc) vj).alleKunden(flyweight, k -> {
+            Assert.assertSame("kein Flyweight", flyweight, k);
+            namen.add(k.getName());
+        });
+        Assert.assertEquals("Anzahl falsch:", namen.size(), anzahl);
+        Assert.assertTrue("Gaul fehlt", namen.contains("Gaul"));
+    }
+
     /**
      * Wird richtiger Kunde zurueckgeliefert?
      */
@@ -195,4 +235,203 @@ public class VersicherungJdbcTest {
 
     }
 
+    /**
+     * Monatsraten mehrerer Vertraege, unbekannte IDs werden gemeldet.
+     */
+    @org.junit.Test
+    public void eeecalcMonatsraten() {
+        Monatsraten monatsraten = vj.calcMonatsraten(List.of(1, 2, 3, 4, 999));
+        Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(19), monatsraten.getRate(1));
+        Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(20), monatsraten.getRate(2));
+        Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(22), monatsraten.getRate(3));
+        Assert.assertEquals("Falsche Monatsrate", BigDecimal.ZERO, monatsraten.getRate(4));
+        Assert.assertEquals("Fehlende Vertraege falsch", List.of(999), monatsraten.getFehlende());
+    }
+
+    /**
+     * Preisauswahl als Datumsbereich liefert dieselben Monatsraten.
+     */
+    @org.junit.Test
+    public void fffcalcMonatsrateDatumsbereich() {
+        VersicherungJdbc v = (VersicherungJdbc) vj;
+        v.setPreisfilterAlsDatumsbereich(true);
+        try {
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(19), v.calcMonatsrate(1));
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(20), v.calcMonatsrate(2));
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(22), v.calcMonatsrate(3));
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.ZERO, v.calcMonatsrate(4));
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(22), v.calcMonatsraten(List.of(3)).getRate(3));
+        } finally {
+            v.setPreisfilterAlsDatumsbereich(false);
+        }
+    }
+
+    /**
+     * Bulk-Laden: gueltige Vertraege werden eingefuegt, fehlerhafte Zeilen mit
+     * ihrer Ausnahme gemeldet.
+     */
+    @org.junit.Test
+    public void gggVertragLader() throws Exception {
+        LocalDate beginn = LocalDate.now().plusDays(1);
+        VertragLader lader = new VertragLader(dbTesterCon.getConnection());
+        lader.setBatchGroesse(2);
+        LadeErgebnis ergebnis = lader.lade(List.of(
+                new VertragSpec(801, 1, 1, beginn),
+                new VertragSpec(1, 1, 1, beginn),
+                new VertragSpec(802, 1, 999, beginn),
+                new VertragSpec(803, 1, 1, LocalDate.now().minusDays(1)),
+                new VertragSpec(804, 2, 2, beginn)).iterator());
+        Assert.assertEquals("Anzahl geladen falsch", 2, ergebnis.getGeladen());
+        Assert.assertEquals("Anzahl abgelehnt falsch", 3, ergebnis.getAbgelehnt().size());
+        for (LadeErgebnis.Ablehnung a : ergebnis.getAbgelehnt()) {
+            switch (a.getSpec().getId()) {
+                case 1:
+                    Assert.assertTrue(a.getFehler() instanceof VertragExistiertBereitsException);
+                    break;
+                case 802:
+                    Assert.assertTrue(a.getFehler() instanceof KundeExistiertNichtException);
+                    break;
+                default:
+                    Assert.assertTrue(a.getFehler() instanceof DatumInVergangenheitException);
+            }
+        }
+    }
+
+    /**
+     * Die neu aufgebaute Tabelle Monatsrate stimmt mit der Berechnung ueberein,
+     * calcMonatsrate liest daraus dieselben Raten.
+     */
+    @org.junit.Test
+    public void hhhMonatsrateTabelle() throws Exception {
+        MonatsrateTabelle tabelle = new MonatsrateTabelle();
+        tabelle.neuAufbauen(dbTesterCon.getConnection());
+        Assert.assertTrue("Abweichungen", tabelle.pruefe(dbTesterCon.getConnection()).isEmpty());
+        VersicherungJdbc v = (VersicherungJdbc) vj;
+        v.setMonatsrateAusTabelle(true);
+        try {
+            Assert.assertEquals("Falsche Monatsrate", 0, BigDecimal.valueOf(19).compareTo(v.calcMonatsrate(1)));
+            Assert.assertEquals("Falsche Monatsrate", 0, BigDecimal.valueOf(22).compareTo(v.calcMonatsrate(3)));
+            Assert.assertEquals("Falsche Monatsrate", 0, BigDecimal.ZERO.compareTo(v.calcMonatsrate(4)));
+            Assert.assertEquals("Falsche Monatsrate", 0, BigDecimal.ZERO.compareTo(v.calcMonatsrate(999)));
+        } finally {
+            v.setMonatsrateAusTabelle(false);
+        }
+    }
+
+    /**
+     * Asynchrone Aufrufe liefern dieselben Ergebnisse, Ausnahmen kommen
+     * unveraendert an. Mit einer Connection laeuft nur ein Aufruf gleichzeitig.
+     */
+    @org.junit.Test
+    public void iiiAsync() {
+        try (AsyncAusfuehrer ausfuehrer = new AsyncAusfuehrer(1)) {
+            VersicherungJdbcAsync async = new VersicherungJdbcAsync(vj, ausfuehrer);
+            CompletableFuture<BigDecimal> rate1 = async.calcMonatsrate(1);
+            CompletableFuture<BigDecimal> rate3 = async.calcMonatsrate(3);
+            CompletableFuture<Kunde> unbekannt = async.findKundeById(999);
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(19), AsyncAusfuehrer.warte(rate1));
+            Assert.assertEquals("Falsche Monatsrate", BigDecimal.valueOf(22), AsyncAusfuehrer.warte(rate3));
+            try {
+                AsyncAusfuehrer.warte(unbekannt);
+                Assert.fail("keine Ausnahme");
+            } catch (KundeExistiertNichtException e) {
+                // erwartet
+            }
+        }
+    }
+
+    /**
+     * Mit Stammdaten-Schnappschuss rechnen calcMonatsrate, calcMonatsraten und
+     * calcAlleMonatsraten dasselbe wie die Abfrage, auch fuer eine Deckungsart
+     * mit mehreren Deckungsbetraegen (Deckungsart 3).
+     */
+    @org.junit.Test
+    public void jjjMonatsrateStammdatenWieAbfrage() throws Exception {
+        Connection c = dbTesterCon.getConnection();
+        List<Integer> ids = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9);
+        VersicherungJdbc v = (VersicherungJdbc) vj;
+        try (Statement stmt = c.createStatement();
+             StammdatenCache cache = new StammdatenCache()) {
+            stmt.executeUpdate("insert into Deckung (Vertrag_FK, Deckungsart_FK, Deckungsbetrag) values (4, 3, 100000)");
+            Map<Integer, BigDecimal> abfrage = new HashMap<>();
+            v.calcAlleMonatsraten(abfrage::put);
+            Monatsraten abfrageListe = v.calcMonatsraten(ids);
+            cache.setConnection(c);
+            v.setStammdatenCache(cache);
+            Map<Integer, BigDecimal> stammdaten = new HashMap<>();
+            v.calcAlleMonatsraten(stammdaten::put);
+            Monatsraten stammdatenListe = v.calcMonatsraten(ids);
+            for (Integer id : ids) {
+                BigDecimal erwartet = v.calcMonatsrate(id);
+                v.setStammdatenCache(null);
+                Assert.assertEquals("Vertrag " + id, 0, v.calcMonatsrate(id).compareTo(erwartet));
+                v.setStammdatenCache(cache);
+                Assert.assertEquals("Vertrag " + id, 0, abfrage.get(id).compareTo(stammdaten.get(id)));
+                Assert.assertEquals("Vertrag " + id, 0,
+                        abfrageListe.getRate(id).compareTo(stammdatenListe.getRate(id)));
+            }
+            Assert.assertEquals("Falsche Monatsrate", 0, BigDecimal.valueOf(180).compareTo(v.calcMonatsrate(4)));
+        } finally {
+            v.setStammdatenCache(null);
+            try (Statement stmt = c.createStatement()) {
+                stmt.executeUpdate("delete from Deckung where Vertrag_FK = 4");
+            }
+        }
+    }
+
+    /**
+     * Meldet das Batch der Monatsrate nach dem Ausfuehren EXECUTE_FAILED fuer
+     * alle Zeilen, wie Oracle es auch fuer angewendete Zeilen tun kann, wird
+     * trotzdem jede Deckung genau einmal addiert.
+     */
+    @org.junit.Test
+    public void kkkMonatsrateNachFehlgeschlagenemBatch() throws Exception {
+        Connection c = dbTesterCon.getConnection();
+        MonatsrateTabelle tabelle = new MonatsrateTabelle();
+        tabelle.neuAufbauen(c);
+        try (Statement stmt = c.createStatement()) {
+            stmt.executeUpdate("insert into Deckung (Vertrag_FK, Deckungsart_FK, Deckungsbetrag) values (7, 3, 100000)");
+            stmt.executeUpdate("insert into Deckung (Vertrag_FK, Deckungsart_FK, Deckungsbetrag) values (8, 3, 100000)");
+            tabelle.addiereDeckungen(batchFehlerNachAusfuehren(c), List.of(7, 8), List.of(3, 3));
+            Assert.assertTrue("Abweichungen", tabelle.pruefe(c).isEmpty());
+        } finally {
+            try (Statement stmt = c.createStatement()) {
+                stmt.executeUpdate("delete from Deckung where Vertrag_FK in (7, 8) and Deckungsart_FK = 3");
+            }
+            tabelle.neuAufbauen(c);
+        }
+    }
+
+    /**
+     * Connection, deren Statements executeBatch ausfuehren und danach eine
+     * BatchUpdateException mit EXECUTE_FAILED fuer jede Zeile werfen.
+     */
+    private static Connection batchFehlerNachAusfuehren(Connection c) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object ergebnis = aufrufen(c, method, args);
+                    if (!method.getName().equals("prepareStatement")) {
+                        return ergebnis;
+                    }
+                    PreparedStatement ps = (PreparedStatement) ergebnis;
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                                Object e = aufrufen(ps, m, a);
+                                if (m.getName().equals("executeBatch")) {
+                                    int[] zaehler = new int[((int[]) e).length];
+                                    Arrays.fill(zaehler, Statement.EXECUTE_FAILED);
+                                    throw new BatchUpdateException("simuliert", zaehler);
+                                }
+                                return e;
+                            });
+                });
+    }
+
+    private static Object aufrufen(Object ziel, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(ziel, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.exceptions.DatumInVergangenheitException;
+import de.htwberlin.dbtech.exceptions.VersicherungException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Laedt viele Vertraege in Batches. Es gelten dieselben Regeln wie bei
+ * createVertrag; eine abgelehnte Zeile bricht den Lauf nicht ab, sondern wird
+ * mit ihrer Ausnahme im {@link LadeErgebnis} vermerkt.
+ * <p>
+ * Schlaegt ein Batch fehl, wird es bis zu einem Savepoint vor dem Batch
+ * zurueckgerollt und Zeile fuer Zeile wiederholt, um die betroffenen Zeilen und
+ * ihre Ausnahmen zu bestimmen. Die Update-Zaehler der BatchUpdateException
+ * werden dafuer nicht ausgewertet: Oracle meldet je nach Treiber auch fuer
+ * eingefuegte Zeilen EXECUTE_FAILED.
+ * <p>
+ * Committet wird nach jeweils commitIntervall Zeilen; nach einem Abbruch durch
+ * einen anderen Datenbankfehler bleiben die bis dahin committeten Zeilen
+ * erhalten.
+ * <p>
+ * Direct-Path (Hint APPEND_VALUES) wird nicht angeboten: Vertrag hat
+ * Fremdschluessel, damit ignoriert Oracle den Hint und fuegt konventionell ein.
+ */
+public class VertragLader {
+    private static final Logger L = LoggerFactory.getLogger(VertragLader.class);
+    private static final String INSERT_SQL = String.join(" ",
+            "insert into Vertrag (ID, Produkt_FK, Kunde_FK, Versicherungsbeginn, Versicherungsende)",
+            "values (?, ?, ?, ?, ?)");
+    private final Connection connection;
+    private int batchGroesse = 1000;
+    private int commitIntervall = 10000;
+    private long fortschrittIntervall = 100000;
+
+    public VertragLader(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void setBatchGroesse(int batchGroesse) {
+        this.batchGroesse = batchGroesse;
+    }
+
+    /**
+     * Anzahl Zeilen je Transaktion; wird auf ein Vielfaches der Batchgroesse
+     * aufgerundet.
+     */
+    public void setCommitIntervall(int commitIntervall) {
+        this.commitIntervall = commitIntervall;
+    }
+
+    /**
+     * Nach jeweils so vielen Zeilen wird die Laderate protokolliert.
+     */
+    public void setFortschrittIntervall(long fortschrittIntervall) {
+        this.fortschrittIntervall = fortschrittIntervall;
+    }
+
+    public LadeErgebnis lade(Stream<VertragSpec> specs) {
+        try (Stream<VertragSpec> s = specs) {
+            return lade(s.iterator());
+        }
+    }
+
+    public LadeErgebnis lade(Iterator<VertragSpec> specs) {
+        L.info(INSERT_SQL);
+        LadeErgebnis ergebnis = new LadeErgebnis();
+        LocalDate heute = LocalDate.now();
+        boolean autoCommit = true;
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                List<VertragSpec> batch = new ArrayList<>(batchGroesse);
+                long seitCommit = 0;
+                long naechsterFortschritt = fortschrittIntervall;
+                while (specs.hasNext()) {
+                    VertragSpec spec = specs.next();
+                    if (spec.getVersicherungsbeginn().isBefore(heute)) {
+                        ergebnis.abgelehnt(spec, new DatumInVergangenheitException(spec.getVersicherungsbeginn()));
+                        continue;
+                    }
+                    binde(ps, spec);
+                    ps.addBatch();
+                    batch.add(spec);
+                    if (batch.size() == batchGroesse) {
+                        ausfuehren(ps, batch, ergebnis);
+                        seitCommit += batch.size();
+                        batch.clear();
+                        if (seitCommit >= commitIntervall) {
+                            connection.commit();
+                            seitCommit = 0;
+                        }
+                        if (ergebnis.getGeladen() >= naechsterFortschritt) {
+                            L.info("fortschritt: " + ergebnis);
+                            naechsterFortschritt += fortschrittIntervall;
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    ausfuehren(ps, batch, ergebnis);
+                }
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            rollbackQuietly();
+            L.error("", e);
+            throw new DataException(e);
+        } catch (RuntimeException e) {
+            rollbackQuietly();
+            throw e;
+        } finally {
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                L.error("", e);
+            }
+        }
+        ergebnis.beenden();
+        L.info("ende: " + ergebnis);
+        return ergebnis;
+    }
+
+    private void ausfuehren(PreparedStatement ps, List<VertragSpec> batch, LadeErgebnis ergebnis) throws SQLException {
+        Savepoint vorBatch = connection.setSavepoint();
+        try {
+            ps.executeBatch();
+            ergebnis.geladen(batch.size());
+        } catch (BatchUpdateException e) {
+            ps.clearBatch();
+            connection.rollback(vorBatch);
+            L.info("batch fehlgeschlagen, wiederhole einzeln: " + batch.size());
+            try (PreparedStatement einzeln = connection.prepareStatement(INSERT_SQL)) {
+                for (VertragSpec spec : batch) {
+                    einzeln(einzeln, spec, ergebnis);
+                }
+            }
+        }
+    }
+
+    private void einzeln(PreparedStatement ps, VertragSpec spec, LadeErgebnis ergebnis) throws SQLException {
+        binde(ps, spec);
+        try {
+            ps.executeUpdate();
+            ergebnis.geladen(1);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            RuntimeException fehler = VersicherungJdbc.vertragsfehler(e, spec.getId(), spec.getProduktId(),
+                    spec.getKundenId());
+            if (!(fehler instanceof VersicherungException)) {
+                throw fehler;
+            }
+            ergebnis.abgelehnt(spec, (VersicherungException) fehler);
+        }
+    }
+
+    private static void binde(PreparedStatement ps, VertragSpec spec) throws SQLException {
+        ps.setInt(1, spec.getId());
+        ps.setInt(2, spec.getProduktId());
+        ps.setInt(3, spec.getKundenId());
+        ps.setDate(4, Date.valueOf(spec.getVersicherungsbeginn()));
+        ps.setDate(5, Date.valueOf(spec.getVersicherungsende()));
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            L.error("", e);
+        }
+    }
+}
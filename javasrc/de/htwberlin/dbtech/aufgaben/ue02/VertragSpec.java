@@ -0,0 +1,47 @@
+package de.htwberlin.dbtech.aufgaben.ue02;
+
+import java.time.LocalDate;
+
+/**
+ * Ein zu ladender Vertrag, wie er an {@link VertragLader} uebergeben wird. Das
+ * Versicherungsende wird wie bei createVertrag berechnet.
+ */
+public class VertragSpec {
+    private final Integer id;
+    private final Integer produktId;
+    private final Integer kundenId;
+    private final LocalDate versicherungsbeginn;
+
+    public VertragSpec(Integer id, Integer produktId, Integer kundenId, LocalDate versicherungsbeginn) {
+        this.id = id;
+        this.produktId = produktId;
+        this.kundenId = kundenId;
+        this.versicherungsbeginn = versicherungsbeginn;
+    }
+
+    @Override
+    public String toString() {
+        return "VertragSpec [id=" + id + ", produktId=" + produktId + ", kundenId=" + kundenId
+                + ", versicherungsbeginn=" + versicherungsbeginn + "]";
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Integer getProduktId() {
+        return produktId;
+    }
+
+    public Integer getKundenId() {
+        return kundenId;
+    }
+
+    public LocalDate getVersicherungsbeginn() {
+        return versicherungsbeginn;
+    }
+
+    public LocalDate getVersicherungsende() {
+        return versicherungsbeginn.plusYears(1).minusDays(1);
+    }
+}
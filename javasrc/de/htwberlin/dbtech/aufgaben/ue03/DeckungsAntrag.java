@@ -0,0 +1,36 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import java.math.BigDecimal;
+
+/**
+ * Eine beantragte Deckung, wie sie an createDeckungen uebergeben wird.
+ */
+public class DeckungsAntrag {
+    private final Integer vertragsId;
+    private final Integer deckungsartId;
+    private final BigDecimal deckungsbetrag;
+
+    public DeckungsAntrag(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
+        this.vertragsId = vertragsId;
+        this.deckungsartId = deckungsartId;
+        this.deckungsbetrag = deckungsbetrag;
+    }
+
+    @Override
+    public String toString() {
+        return "DeckungsAntrag [vertragsId=" + vertragsId + ", deckungsartId=" + deckungsartId + ", deckungsbetrag="
+                + deckungsbetrag + "]";
+    }
+
+    public Integer getVertragsId() {
+        return vertragsId;
+    }
+
+    public Integer getDeckungsartId() {
+        return deckungsartId;
+    }
+
+    public BigDecimal getDeckungsbetrag() {
+        return deckungsbetrag;
+    }
+}
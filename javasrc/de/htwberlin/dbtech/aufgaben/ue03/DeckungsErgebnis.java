@@ -0,0 +1,43 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import de.htwberlin.dbtech.exceptions.VersicherungException;
+
+/**
+ * Ergebnis eines einzelnen Antrags aus createDeckungen. Entweder wurde die
+ * Deckung angenommen, oder es ist die Ausnahme vermerkt, die createDeckung fuer
+ * diesen Antrag geworfen haette.
+ */
+public class DeckungsErgebnis {
+    private final DeckungsAntrag antrag;
+    private final VersicherungException ablehnung;
+
+    private DeckungsErgebnis(DeckungsAntrag antrag, VersicherungException ablehnung) {
+        this.antrag = antrag;
+        this.ablehnung = ablehnung;
+    }
+
+    public static DeckungsErgebnis angenommen(DeckungsAntrag antrag) {
+        return new DeckungsErgebnis(antrag, null);
+    }
+
+    public static DeckungsErgebnis abgelehnt(DeckungsAntrag antrag, VersicherungException ablehnung) {
+        return new DeckungsErgebnis(antrag, ablehnung);
+    }
+
+    @Override
+    public String toString() {
+        return "DeckungsErgebnis [antrag=" + antrag + ", ablehnung=" + ablehnung + "]";
+    }
+
+    public DeckungsAntrag getAntrag() {
+        return antrag;
+    }
+
+    public boolean isAngenommen() {
+        return ablehnung == null;
+    }
+
+    public VersicherungException getAblehnung() {
+        return ablehnung;
+    }
+}
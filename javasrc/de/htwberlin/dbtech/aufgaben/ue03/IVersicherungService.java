@@ -8,6 +8,7 @@ import de.htwberlin.dbtech.exceptions.*;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
+import java.util.List;
 
 public interface IVersicherungService {
 
@@ -42,4 +43,17 @@ public interface IVersicherungService {
      */
     void createDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag);
 
+    /**
+     * Fuegt mehrere Deckungen in einem Durchgang hinzu. Die Antraege werden mit
+     * mengenorientierten Abfragen geprueft, die angenommenen Deckungen werden per
+     * JDBC-Batch eingefuegt. Anders als createDeckung bricht die Methode beim
+     * ersten abgelehnten Antrag nicht ab.
+     *
+     * @param antraege die zu pruefenden Deckungen.
+     * @return je Antrag ein Ergebnis, in derselben Reihenfolge wie antraege. Ein
+     * abgelehntes Ergebnis enthaelt die Ausnahme, die createDeckung fuer diesen
+     * Antrag geworfen haette.
+     */
+    List<DeckungsErgebnis> createDeckungen(List<DeckungsAntrag> antraege);
+
 }
@@ -1,12 +1,17 @@
 package de.htwberlin.dbtech.aufgaben.ue03;
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.MonatsrateTabelle;
+
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.time.LocalDate;
+import java.util.List;
 
 public interface IVersicherungsServiceDao {
     void setConnection(Connection connection);
+    void setMonatsrateTabelle(MonatsrateTabelle monatsrateTabelle);
     Integer getProduktIdFromVertrag(Integer vertragsId);
+    VertragKontext loadVertragKontext(Integer vertragsId);
     Integer getProduktIdFromDeckungsart(Integer deckungsartId);
     void checkDeckungsbetragExistiert(Integer deckungsartId, BigDecimal deckungsbetrag);
     LocalDate getVersicherungsbeginn(Integer vertragsId);
@@ -14,4 +19,9 @@ public interface IVersicherungsServiceDao {
     Integer getKundenIdFromVertrag(Integer vertragsId);
     LocalDate getGeburtsdatumFromKunde(Integer kundenId);
     void insertDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag);
+    /**
+     * @return je Antrag, in derselben Reihenfolge, ob die Deckung geschrieben
+     * wurde oder mit welcher Ausnahme der Insert fehlschlug.
+     */
+    List<DeckungsErgebnis> insertDeckungen(List<DeckungsAntrag> antraege);
 }
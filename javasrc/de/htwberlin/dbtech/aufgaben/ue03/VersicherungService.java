@@ -4,86 +4,518 @@ package de.htwberlin.dbtech.aufgaben.ue03;
   @author Ingo Classen
  */
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.Ablehnungsregeln;
+import de.htwberlin.dbtech.aufgaben.stammdaten.MonatsrateTabelle;
+import de.htwberlin.dbtech.aufgaben.stammdaten.PriceResolver;
+import de.htwberlin.dbtech.aufgaben.stammdaten.Stammdaten;
+import de.htwberlin.dbtech.aufgaben.stammdaten.StammdatenCache;
 import de.htwberlin.dbtech.exceptions.*;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
+import de.htwberlin.dbtech.utils.JdbcUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * VersicherungJdbc
  */
 public class VersicherungService implements IVersicherungService {
     private static final Logger L = LoggerFactory.getLogger(VersicherungService.class);
-    private Connection connection;
+    private static final int BATCH_GROESSE = 1000;
+    private final ConnectionProvider verbindung = new ConnectionProvider();
+    private boolean validierungInEinerAbfrage = false;
+    private Ablehnungsregeln ablehnungsregeln = new Ablehnungsregeln();
+    private StammdatenCache stammdatenCache;
+    private MonatsrateTabelle monatsrateTabelle;
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        verbindung.setConnection(connection);
+        ablehnungsregeln.setConnection(connection);
+    }
+
+    /**
+     * Statt einer festen Connection leiht sich jede Operation eine Connection aus
+     * der DataSource. Der Dienst kann dann von mehreren Threads benutzt werden.
+     */
+    public void setDataSource(DataSource dataSource) {
+        verbindung.setDataSource(dataSource);
+        ablehnungsregeln.setConnectionProvider(verbindung);
+    }
+
+    /**
+     * @return die mit setDataSource gesetzte DataSource oder null bei fester
+     *         Connection.
+     */
+    public DataSource getDataSource() {
+        return verbindung.getDataSource();
+    }
+
+    /**
+     * Ersetzt die eigenen Ablehnungsregeln, z.B. durch eine mit anderen Diensten
+     * geteilte Instanz. Die Connection des Dienstes wird dabei nicht uebertragen.
+     */
+    public void setAblehnungsregeln(Ablehnungsregeln ablehnungsregeln) {
+        this.ablehnungsregeln = ablehnungsregeln;
+    }
+
+    public Ablehnungsregeln getAblehnungsregeln() {
+        return ablehnungsregeln;
     }
 
-    @SuppressWarnings("unused")
     private Connection useConnection() {
+        Connection connection = verbindung.getConnection();
         if (connection == null) {
             throw new DataException("Connection not set");
         }
         return connection;
     }
 
+    /**
+     * Schaltet die Validierung in einer einzigen Abfrage ein bzw. aus. Ist sie
+     * eingeschaltet, werden Vertrag, Kunde, Deckungsart, Deckungsbetrag und
+     * Deckungspreis in einem Roundtrip gelesen, statt in bis zu sieben
+     * Einzelabfragen. Die Ausnahmen und ihre Reihenfolge bleiben gleich.
+     */
+    public void setValidierungInEinerAbfrage(boolean validierungInEinerAbfrage) {
+        this.validierungInEinerAbfrage = validierungInEinerAbfrage;
+    }
+
+    /**
+     * Ist ein Stammdaten-Cache gesetzt, werden Deckungsart, Deckungsbetrag,
+     * Deckungspreis und Ablehnungsregeln aus dem aktuellen Schnappschuss geprueft;
+     * aus der Datenbank wird nur noch der Vertrag mit Kunde gelesen.
+     */
+    public void setStammdatenCache(StammdatenCache stammdatenCache) {
+        this.stammdatenCache = stammdatenCache;
+    }
+
+    /**
+     * Ist eine MonatsrateTabelle gesetzt, wird die gespeicherte Monatsrate des
+     * Vertrags in derselben Transaktion wie die neue Deckung erhoeht.
+     */
+    public void setMonatsrateTabelle(MonatsrateTabelle monatsrateTabelle) {
+        this.monatsrateTabelle = monatsrateTabelle;
+    }
+
     @Override
     public void createDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
-        L.info("vertragsId: " + vertragsId);
-        L.info("deckungsartId: " + deckungsartId);
-        L.info("deckungsbetrag: " + deckungsbetrag);
+        verbindung.mitConnectionAusfuehren(() -> {
+            L.info("vertragsId: " + vertragsId);
+            L.info("deckungsartId: " + deckungsartId);
+            L.info("deckungsbetrag: " + deckungsbetrag);
+
+            if (stammdatenCache != null) {
+                validiereMitStammdaten(stammdatenCache.get(), vertragsId, deckungsartId, deckungsbetrag);
+            } else if (validierungInEinerAbfrage) {
+                validiereInEinerAbfrage(vertragsId, deckungsartId, deckungsbetrag);
+            } else {
+                validiereEinzeln(vertragsId, deckungsartId, deckungsbetrag);
+            }
+
+            // 6. Insert, mit der Monatsrate in einer Transaktion
+            String sql = "insert into Deckung (VERTRAG_FK, DECKUNGSART_FK, DECKUNGSBETRAG) values (?, ?, ?)";
+            Connection connection = useConnection();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                JdbcUtils.inTransaktion(connection, () -> {
+                    statement.setInt(1, vertragsId);
+                    statement.setInt(2, deckungsartId);
+                    statement.setBigDecimal(3, deckungsbetrag);
+                    statement.executeUpdate();
+                    if (monatsrateTabelle != null) {
+                        monatsrateTabelle.addiereDeckung(connection, vertragsId, deckungsartId);
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                if (e.getMessage().contains("VERTRAG_FK")) {
+                    throw new VertragExistiertNichtException(vertragsId);
+                } else if (e.getMessage().contains("DECKUNGSART_FK")) {
+                    throw new DeckungsartExistiertNichtException(deckungsartId);
+                }
+                throw new DataException(e.getMessage());
+            }
+            L.info("ende");
+        });
+    }
+
+    @Override
+    public List<DeckungsErgebnis> createDeckungen(List<DeckungsAntrag> antraege) {
+        return verbindung.mitConnection(() -> {
+            L.info("antraege: " + antraege.size());
+            Set<Integer> vertragsIds = new LinkedHashSet<>();
+            Set<Integer> deckungsartIds = new LinkedHashSet<>();
+            for (DeckungsAntrag antrag : antraege) {
+                vertragsIds.add(antrag.getVertragsId());
+                deckungsartIds.add(antrag.getDeckungsartId());
+            }
+            Map<Integer, VertragKontext> vertraege = ladeVertraege(new ArrayList<>(vertragsIds));
+            Map<Integer, Integer> produktIdsDeckungsart = ladeProduktIdsDeckungsart(new ArrayList<>(deckungsartIds));
+            PriceResolver.Builder preise = new PriceResolver.Builder();
+            Map<Integer, List<DeckungsbetragDaten>> deckungsbetraege = ladeDeckungsbetraege(new ArrayList<>(deckungsartIds), preise);
+            PriceResolver priceResolver = preise.build();
+
+            DeckungsErgebnis[] ergebnisse = new DeckungsErgebnis[antraege.size()];
+            List<Integer> geprueft = new ArrayList<>();
+            for (int i = 0; i < antraege.size(); i++) {
+                try {
+                    pruefeAntrag(antraege.get(i), vertraege, produktIdsDeckungsart, deckungsbetraege, priceResolver);
+                    geprueft.add(i);
+                } catch (VersicherungException e) {
+                    ergebnisse[i] = DeckungsErgebnis.abgelehnt(antraege.get(i), e);
+                }
+            }
+            String sql = "insert into Deckung (VERTRAG_FK, DECKUNGSART_FK, DECKUNGSBETRAG) values (?, ?, ?)";
+            try (PreparedStatement statement = useConnection().prepareStatement(sql)) {
+                for (List<Integer> teil : JdbcUtils.chunks(geprueft, BATCH_GROESSE)) {
+                    schreibeDeckungen(statement, antraege, teil, ergebnisse);
+                }
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+            L.info("ende");
+            return Arrays.asList(ergebnisse);
+        });
+    }
+
+    /**
+     * Schreibt die Antraege eines Teils als ein Batch in einer Transaktion,
+     * zusammen mit der Erhoehung ihrer Monatsraten. Angenommen ist ein Antrag
+     * erst, wenn sein Batch durchgelaufen ist. Schlaegt
+     * das Batch fehl, ist es zurueckgerollt (Oracle meldet dann u.U. alle Zeilen
+     * als fehlgeschlagen) und wird Zeile fuer Zeile wiederholt; eine Zeile, die
+     * einen Fremdschluessel verletzt, wird als Ablehnung vermerkt, statt die
+     * uebrigen abzubrechen.
+     */
+    private void schreibeDeckungen(PreparedStatement statement, List<DeckungsAntrag> antraege, List<Integer> teil,
+                                   DeckungsErgebnis[] ergebnisse) throws SQLException {
+        Connection connection = useConnection();
+        try {
+            JdbcUtils.inTransaktion(connection, () -> {
+                List<Integer> vertragsIds = new ArrayList<>(teil.size());
+                List<Integer> deckungsartIds = new ArrayList<>(teil.size());
+                for (Integer i : teil) {
+                    setzeDeckung(statement, antraege.get(i));
+                    statement.addBatch();
+                    vertragsIds.add(antraege.get(i).getVertragsId());
+                    deckungsartIds.add(antraege.get(i).getDeckungsartId());
+                }
+                statement.executeBatch();
+                if (monatsrateTabelle != null) {
+                    monatsrateTabelle.addiereDeckungen(connection, vertragsIds, deckungsartIds);
+                }
+                return null;
+            });
+            for (Integer i : teil) {
+                ergebnisse[i] = DeckungsErgebnis.angenommen(antraege.get(i));
+            }
+        } catch (BatchUpdateException e) {
+            L.warn("batch fehlgeschlagen, einzeln: " + teil.size(), e);
+            statement.clearBatch();
+            for (Integer i : teil) {
+                DeckungsAntrag antrag = antraege.get(i);
+                try {
+                    JdbcUtils.inTransaktion(connection, () -> {
+                        setzeDeckung(statement, antrag);
+                        statement.executeUpdate();
+                        if (monatsrateTabelle != null) {
+                            monatsrateTabelle.addiereDeckung(connection, antrag.getVertragsId(),
+                                    antrag.getDeckungsartId());
+                        }
+                        return null;
+                    });
+                    ergebnisse[i] = DeckungsErgebnis.angenommen(antrag);
+                } catch (SQLException ex) {
+                    ergebnisse[i] = DeckungsErgebnis.abgelehnt(antrag,
+                            insertFehler(ex, antrag.getVertragsId(), antrag.getDeckungsartId()));
+                }
+            }
+        }
+    }
+
+    private static void setzeDeckung(PreparedStatement statement, DeckungsAntrag antrag) throws SQLException {
+        statement.setInt(1, antrag.getVertragsId());
+        statement.setInt(2, antrag.getDeckungsartId());
+        statement.setBigDecimal(3, antrag.getDeckungsbetrag());
+    }
+
+    /**
+     * Uebersetzt den Fehler eines Deckung-Inserts in die Ausnahme, die
+     * createDeckung fuer den Antrag wirft. Nur die Verletzung eines der beiden
+     * Fremdschluessel ist eine Ablehnung des Antrags; jeder andere Fehler wird
+     * wie in createDeckung als DataException geworfen.
+     */
+    private static VersicherungException insertFehler(SQLException e, Integer vertragsId, Integer deckungsartId) {
+        if (e.getMessage().contains("VERTRAG_FK")) {
+            return new VertragExistiertNichtException(vertragsId);
+        } else if (e.getMessage().contains("DECKUNGSART_FK")) {
+            return new DeckungsartExistiertNichtException(deckungsartId);
+        }
+        L.error("", e);
+        throw new DataException(e.getMessage());
+    }
+
+    /**
+     * Prueft einen Antrag gegen die vorab geladenen Daten, in derselben
+     * Reihenfolge wie createDeckung.
+     */
+    private void pruefeAntrag(DeckungsAntrag antrag, Map<Integer, VertragKontext> vertraege,
+                              Map<Integer, Integer> produktIdsDeckungsart,
+                              Map<Integer, List<DeckungsbetragDaten>> deckungsbetraege,
+                              PriceResolver priceResolver) {
+        Integer vertragsId = antrag.getVertragsId();
+        Integer deckungsartId = antrag.getDeckungsartId();
+        BigDecimal deckungsbetrag = antrag.getDeckungsbetrag();
+
+        VertragKontext vertrag = vertraege.get(vertragsId);
+        if (vertrag == null) {
+            throw new VertragExistiertNichtException(vertragsId);
+        }
+        Integer produktIdDeckungsart = produktIdsDeckungsart.get(deckungsartId);
+        if (produktIdDeckungsart == null) {
+            throw new DeckungsartExistiertNichtException(deckungsartId);
+        }
+        if (!vertrag.getProduktId().equals(produktIdDeckungsart)) {
+            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, vertrag.getProduktId());
+        }
+        List<DeckungsbetragDaten> passendeBetraege = new ArrayList<>();
+        for (DeckungsbetragDaten db : deckungsbetraege.getOrDefault(deckungsartId, Collections.emptyList())) {
+            if (db.deckungsbetrag.compareTo(deckungsbetrag) == 0) {
+                passendeBetraege.add(db);
+            }
+        }
+        if (passendeBetraege.isEmpty()) {
+            throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+        }
+        boolean preisVorhanden = false;
+        for (DeckungsbetragDaten db : passendeBetraege) {
+            preisVorhanden = preisVorhanden || priceResolver.findPreis(db.id, vertrag.getVersicherungsbeginn()) != null;
+        }
+        if (!preisVorhanden) {
+            throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+        }
+        if (!vertrag.isKundeGefunden()) {
+            throw new KundeExistiertNichtException(vertrag.getKundenId());
+        }
+        checkRegeln(deckungsartId, deckungsbetrag, vertrag.getVersicherungsbeginn(), vertrag.getGeburtsdatum());
+    }
+
+    private void validiereMitStammdaten(Stammdaten stammdaten, Integer vertragsId, Integer deckungsartId,
+                                        BigDecimal deckungsbetrag) {
+        VertragKontext vertrag = loadVertragKontext(vertragsId);
+        Integer produktIdDeckungsart = stammdaten.getProduktId(deckungsartId);
+        if (produktIdDeckungsart == null) {
+            throw new DeckungsartExistiertNichtException(deckungsartId);
+        }
+        if (!vertrag.getProduktId().equals(produktIdDeckungsart)) {
+            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, vertrag.getProduktId());
+        }
+        Integer deckungsbetragId = stammdaten.findDeckungsbetragId(deckungsartId, deckungsbetrag);
+        if (deckungsbetragId == null) {
+            throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+        }
+        if (stammdaten.findPreis(deckungsbetragId, vertrag.getVersicherungsbeginn()) == null) {
+            throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+        }
+        if (!vertrag.isKundeGefunden()) {
+            throw new KundeExistiertNichtException(vertrag.getKundenId());
+        }
+        checkRegeln(stammdaten.getAblehnungsregeln(), deckungsartId, deckungsbetrag, vertrag.getVersicherungsbeginn(),
+                vertrag.getGeburtsdatum());
+    }
+
+    /**
+     * Liest Vertrag und Kunde mit einer Abfrage.
+     *
+     * @throws VertragExistiertNichtException wenn es den Vertrag nicht gibt.
+     */
+    private VertragKontext loadVertragKontext(Integer vertragsId) {
+        VertragKontext vertrag = ladeVertraege(List.of(vertragsId)).get(vertragsId);
+        if (vertrag == null) {
+            throw new VertragExistiertNichtException(vertragsId);
+        }
+        return vertrag;
+    }
 
-        // 1. Produkt-IDs prüfen (existiert Vertrag/Deckungsart? passt Deckungsart zum Produkt?)
-        Integer produktIdVertrag = getProduktIdFromVertrag(vertragsId);
+    private Map<Integer, VertragKontext> ladeVertraege(List<Integer> vertragsIds) {
+        Map<Integer, VertragKontext> vertraege = new HashMap<>();
+        for (List<Integer> chunk : JdbcUtils.chunks(vertragsIds, JdbcUtils.MAX_IN_LIST)) {
+            String sql = String.join(" ",
+                    "select v.ID, v.Produkt_FK, v.Kunde_FK, v.Versicherungsbeginn, v.Versicherungsende,",
+                    "  k.ID as KundeGefunden, k.Geburtsdatum",
+                    "from Vertrag v left join Kunde k on k.ID = v.Kunde_FK",
+                    "where v.ID in (" + JdbcUtils.placeholders(chunk.size()) + ")");
+            try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getInt("KundeGefunden");
+                        boolean kundeGefunden = !rs.wasNull();
+                        Date geburtsdatum = rs.getDate("Geburtsdatum");
+                        int id = rs.getInt("ID");
+                        VertragKontext v = new VertragKontext(id, rs.getInt("Produkt_FK"), rs.getInt("Kunde_FK"),
+                                rs.getDate("Versicherungsbeginn").toLocalDate(),
+                                rs.getDate("Versicherungsende").toLocalDate(), kundeGefunden,
+                                geburtsdatum == null ? null : geburtsdatum.toLocalDate());
+                        vertraege.put(id, v);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DataException(e.getMessage());
+            }
+        }
+        return vertraege;
+    }
+
+    private Map<Integer, Integer> ladeProduktIdsDeckungsart(List<Integer> deckungsartIds) {
+        Map<Integer, Integer> produktIds = new HashMap<>();
+        for (List<Integer> chunk : JdbcUtils.chunks(deckungsartIds, JdbcUtils.MAX_IN_LIST)) {
+            String sql = "SELECT ID, PRODUKT_FK FROM DECKUNGSART WHERE ID in (" + JdbcUtils.placeholders(chunk.size()) + ")";
+            try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        produktIds.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DataException(e.getMessage());
+            }
+        }
+        return produktIds;
+    }
+
+    private Map<Integer, List<DeckungsbetragDaten>> ladeDeckungsbetraege(List<Integer> deckungsartIds,
+                                                                         PriceResolver.Builder preise) {
+        Map<Integer, List<DeckungsbetragDaten>> deckungsbetraege = new HashMap<>();
+        for (List<Integer> chunk : JdbcUtils.chunks(deckungsartIds, JdbcUtils.MAX_IN_LIST)) {
+            String sql = String.join(" ",
+                    "select db.ID, db.Deckungsart_FK, db.Deckungsbetrag, dp.Gueltig_Von, dp.Gueltig_Bis, dp.Preis",
+                    "from Deckungsbetrag db left join Deckungspreis dp on dp.Deckungsbetrag_FK = db.ID",
+                    "where db.Deckungsart_FK in (" + JdbcUtils.placeholders(chunk.size()) + ")",
+                    "order by db.ID");
+            try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    DeckungsbetragDaten db = null;
+                    while (rs.next()) {
+                        int id = rs.getInt("ID");
+                        if (db == null || db.id != id) {
+                            db = new DeckungsbetragDaten();
+                            db.id = id;
+                            db.deckungsbetrag = rs.getBigDecimal("Deckungsbetrag");
+                            deckungsbetraege.computeIfAbsent(rs.getInt("Deckungsart_FK"), k -> new ArrayList<>()).add(db);
+                        }
+                        Date gueltigVon = rs.getDate("Gueltig_Von");
+                        if (gueltigVon != null) {
+                            preise.add(id, gueltigVon.toLocalDate(), rs.getDate("Gueltig_Bis").toLocalDate(),
+                                    rs.getBigDecimal("Preis"));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DataException(e.getMessage());
+            }
+        }
+        return deckungsbetraege;
+    }
+
+    private void validiereEinzeln(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
+        // 1. Vertrag und Kunde mit einer Abfrage holen (existiert Vertrag?)
+        VertragKontext vertrag = loadVertragKontext(vertragsId);
+
+        // 2. Produkt-IDs prüfen (existiert Deckungsart? passt Deckungsart zum Produkt?)
         Integer produktIdDeckungsart = getProduktIdFromDeckungsart(deckungsartId);
-        if (!produktIdVertrag.equals(produktIdDeckungsart)) {
-            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, produktIdVertrag);
+        if (!vertrag.getProduktId().equals(produktIdDeckungsart)) {
+            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, vertrag.getProduktId());
         }
 
-        // 2. Deckungsbetrag gültig?
+        // 3. Deckungsbetrag gültig?
         checkDeckungsbetragExistiert(deckungsartId, deckungsbetrag);
 
-        // 3. Versicherungsbeginn holen (für weitere Prüfungen)
-        LocalDate versicherungsbeginn = getVersicherungsbeginn(vertragsId);
-
         // 4. Deckungspreis vorhanden?
-        checkDeckungspreisExistiert(deckungsartId, deckungsbetrag, versicherungsbeginn);
-
-        // 5. Regelkonformität prüfen (z.B. Alter)
-        checkRegelkonform(vertragsId, deckungsartId, deckungsbetrag, versicherungsbeginn);
-
-        // 6. Insert
-        String sql = "insert into Deckung (VERTRAG_FK, DECKUNGSART_FK, DECKUNGSBETRAG) values (?, ?, ?)";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, vertragsId);
-            statement.setInt(2, deckungsartId);
-            statement.setBigDecimal(3, deckungsbetrag);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            if (e.getMessage().contains("VERTRAG_FK")) {
-                throw new VertragExistiertNichtException(vertragsId);
-            } else if (e.getMessage().contains("DECKUNGSART_FK")) {
-                throw new DeckungsartExistiertNichtException(deckungsartId);
-            }
-            throw new DataException(e.getMessage());
+        checkDeckungspreisExistiert(deckungsartId, deckungsbetrag, vertrag.getVersicherungsbeginn());
+
+        // 5. Regelkonformität prüfen (Alter des Kunden zum Versicherungsbeginn)
+        if (!vertrag.isKundeGefunden()) {
+            throw new KundeExistiertNichtException(vertrag.getKundenId());
         }
-        L.info("ende");
+        checkRegeln(deckungsartId, deckungsbetrag, vertrag.getVersicherungsbeginn(), vertrag.getGeburtsdatum());
     }
 
-    private Integer getProduktIdFromVertrag(Integer vertragsId) {
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT PRODUKT_FK FROM VERTRAG WHERE ID = ?")) {
+    /**
+     * Liest alle fuer die Pruefungen benoetigten Daten mit einer Abfrage. Vertrag
+     * und Deckungsart werden unabhaengig voneinander an dual gejoint, damit immer
+     * genau eine Zeile zurueckkommt und fehlende Datensaetze als null erscheinen.
+     */
+    private void validiereInEinerAbfrage(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
+        String sql = String.join(" ",
+                "select v.ID as VertragsId, v.Produkt_FK as ProduktIdVertrag, v.Versicherungsbeginn,",
+                "  v.Kunde_FK as KundenId, k.ID as KundeGefunden, k.Geburtsdatum,",
+                "  da.ID as DeckungsartGefunden, da.Produkt_FK as ProduktIdDeckungsart,",
+                "  db.ID as DeckungsbetragId,",
+                "  case when exists (select 1 from Deckungspreis dp",
+                "    where dp.Deckungsbetrag_FK = db.ID",
+                "    and v.Versicherungsbeginn between dp.Gueltig_Von and dp.Gueltig_Bis)",
+                "  then 1 else 0 end as PreisVorhanden",
+                "from dual",
+                "left join Vertrag v on v.ID = ?",
+                "left join Kunde k on k.ID = v.Kunde_FK",
+                "left join Deckungsart da on da.ID = ?",
+                "left join Deckungsbetrag db on db.Deckungsart_FK = da.ID and db.Deckungsbetrag = ?");
+        L.info(sql);
+        try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
             stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
+            stmt.setInt(2, deckungsartId);
+            stmt.setBigDecimal(3, deckungsbetrag);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                rs.getInt("VertragsId");
+                if (rs.wasNull()) {
+                    throw new VertragExistiertNichtException(vertragsId);
+                }
+                rs.getInt("DeckungsartGefunden");
+                if (rs.wasNull()) {
+                    throw new DeckungsartExistiertNichtException(deckungsartId);
+                }
+                Integer produktIdVertrag = rs.getInt("ProduktIdVertrag");
+                Integer produktIdDeckungsart = rs.getInt("ProduktIdDeckungsart");
+                if (!produktIdVertrag.equals(produktIdDeckungsart)) {
+                    throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, produktIdVertrag);
+                }
+                rs.getInt("DeckungsbetragId");
+                if (rs.wasNull()) {
+                    throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+                }
+                if (rs.getInt("PreisVorhanden") == 0) {
+                    throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+                }
+                rs.getInt("KundeGefunden");
+                if (rs.wasNull()) {
+                    throw new KundeExistiertNichtException(rs.getInt("KundenId"));
+                }
+                LocalDate versicherungsbeginn = rs.getDate("Versicherungsbeginn").toLocalDate();
+                LocalDate geburtsdatum = rs.getDate("Geburtsdatum").toLocalDate();
+                checkRegeln(deckungsartId, deckungsbetrag, versicherungsbeginn, geburtsdatum);
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -91,7 +523,7 @@ public class VersicherungService implements IVersicherungService {
     }
 
     private Integer getProduktIdFromDeckungsart(Integer deckungsartId) {
-        try (PreparedStatement stmt = connection.prepareStatement(
+        try (PreparedStatement stmt = useConnection().prepareStatement(
                 "SELECT PRODUKT_FK FROM DECKUNGSART WHERE ID = ?")) {
             stmt.setInt(1, deckungsartId);
             var rs = stmt.executeQuery();
@@ -107,7 +539,7 @@ public class VersicherungService implements IVersicherungService {
 
     private void checkDeckungsbetragExistiert(Integer deckungsartId, BigDecimal deckungsbetrag) {
         String sql = "SELECT 1 FROM DECKUNGSBETRAG WHERE DECKUNGSART_FK = ? AND DECKUNGSBETRAG = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
             stmt.setInt(1, deckungsartId);
             stmt.setBigDecimal(2, deckungsbetrag);
             var rs = stmt.executeQuery();
@@ -119,28 +551,12 @@ public class VersicherungService implements IVersicherungService {
         }
     }
 
-    private LocalDate getVersicherungsbeginn(Integer vertragsId) {
-        String sql = "SELECT VERSICHERUNGSBEGINN FROM VERTRAG WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                Date date = rs.getDate(1);
-                return date.toLocalDate();
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
-            }
-        } catch (SQLException e) {
-            throw new DataException(e.getMessage());
-        }
-    }
-
     private void checkDeckungspreisExistiert(Integer deckungsartId, BigDecimal deckungsbetrag, LocalDate versicherungsbeginn) {
         String sql = "SELECT 1 FROM DECKUNGSPREIS dp " +
                 "JOIN DECKUNGSBETRAG db ON dp.DECKUNGSBETRAG_FK = db.ID " +
                 "WHERE db.DECKUNGSART_FK = ? AND db.DECKUNGSBETRAG = ? " +
                 "AND ? BETWEEN dp.GUELTIG_VON AND dp.GUELTIG_BIS";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = useConnection().prepareStatement(sql)) {
             stmt.setInt(1, deckungsartId);
             stmt.setBigDecimal(2, deckungsbetrag);
             stmt.setDate(3, Date.valueOf(versicherungsbeginn));
@@ -153,69 +569,21 @@ public class VersicherungService implements IVersicherungService {
         }
     }
 
-    private void checkRegelkonform(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag, LocalDate versicherungsbeginn) {
-        // Beispielhafte Regelprüfung: Alter des Kunden
-        // Hier muss die Logik ggf. an die konkreten Anforderungen angepasst werden.
-        // Für die Tests reicht meist:
-        // - Hole KundenID aus Vertrag
-        // - Hole Geburtsdatum aus Kunde
-        // - Berechne Alter zum Versicherungsbeginn
-        // - Prüfe, ob für die Deckungsart und Betrag das Alter zulässig ist
+    private void checkRegeln(Integer deckungsartId, BigDecimal deckungsbetrag, LocalDate versicherungsbeginn, LocalDate geburtsdatum) {
+        checkRegeln(ablehnungsregeln, deckungsartId, deckungsbetrag, versicherungsbeginn, geburtsdatum);
+    }
 
-        Integer kundenId = getKundenIdFromVertrag(vertragsId);
-        LocalDate geburtsdatum = getGeburtsdatumFromKunde(kundenId);
+    private void checkRegeln(Ablehnungsregeln regeln, Integer deckungsartId, BigDecimal deckungsbetrag,
+                             LocalDate versicherungsbeginn, LocalDate geburtsdatum) {
         int alter = versicherungsbeginn.getYear() - geburtsdatum.getYear();
         if (versicherungsbeginn.getDayOfYear() < geburtsdatum.getDayOfYear()) {
             alter--;
         }
-
-        // Beispielhafte Regeln (anpassen je nach Testdaten!):
-        // Deckungsart 1 (Haftung) nur ab 18
-        if (deckungsartId == 1 && alter < 18) {
-            throw new DeckungsartNichtRegelkonformException(deckungsartId);
-        }
-        // Deckungsart 3 (Tod) für LBV: max 100k bis 90, max 200k bis 70, max 300k bis 60
-        if (deckungsartId == 3) {
-            if (deckungsbetrag.intValue() == 100_000 && alter > 90) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-            if (deckungsbetrag.intValue() == 200_000 && alter > 70) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-            if (deckungsbetrag.intValue() == 300_000 && alter > 60) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-        }
+        regeln.pruefe(deckungsartId, deckungsbetrag, alter);
     }
 
-    private Integer getKundenIdFromVertrag(Integer vertragsId) {
-        String sql = "SELECT KUNDE_FK FROM VERTRAG WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
-            }
-        } catch (SQLException e) {
-            throw new DataException(e.getMessage());
-        }
-    }
-
-    private LocalDate getGeburtsdatumFromKunde(Integer kundenId) {
-        String sql = "SELECT GEBURTSDATUM FROM KUNDE WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, kundenId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                Date date = rs.getDate(1);
-                return date.toLocalDate();
-            } else {
-                throw new KundeExistiertNichtException(kundenId);
-            }
-        } catch (SQLException e) {
-            throw new DataException(e.getMessage());
-        }
+    private static class DeckungsbetragDaten {
+        int id;
+        BigDecimal deckungsbetrag;
     }
-}
\ No newline at end of file
+}
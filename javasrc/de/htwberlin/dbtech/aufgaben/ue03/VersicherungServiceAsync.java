@@ -0,0 +1,44 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Die Methoden von {@link IVersicherungService} als CompletableFuture, begrenzt
+ * durch einen {@link AsyncAusfuehrer}. Eine VersicherungException aus
+ * createDeckung schliesst das Future unveraendert ab.
+ * <p>
+ * Bei mehr als einem gleichzeitigen Aufruf muss der Dienst ueber setDataSource
+ * konfiguriert sein, vor dem Erzeugen des Wrappers; eine feste Connection darf
+ * nicht von mehreren Threads benutzt werden.
+ */
+public class VersicherungServiceAsync {
+    private final VersicherungService dienst;
+    private final AsyncAusfuehrer ausfuehrer;
+
+    /**
+     * @throws IllegalArgumentException wenn der ausfuehrer mehr als einen Aufruf
+     *                                  gleichzeitig zulaesst und der Dienst
+     *                                  keine DataSource hat.
+     */
+    public VersicherungServiceAsync(VersicherungService dienst, AsyncAusfuehrer ausfuehrer) {
+        if (ausfuehrer.getMaxGleichzeitig() > 1 && dienst.getDataSource() == null) {
+            throw new IllegalArgumentException("maxGleichzeitig: " + ausfuehrer.getMaxGleichzeitig()
+                    + ", dienst ohne DataSource");
+        }
+        this.dienst = dienst;
+        this.ausfuehrer = ausfuehrer;
+    }
+
+    public CompletableFuture<Void> createDeckung(Integer vertragsId, Integer deckungsartId,
+                                                 BigDecimal deckungsbetrag) {
+        return ausfuehrer.ausfuehren(() -> dienst.createDeckung(vertragsId, deckungsartId, deckungsbetrag));
+    }
+
+    public CompletableFuture<List<DeckungsErgebnis>> createDeckungen(List<DeckungsAntrag> antraege) {
+        return ausfuehrer.ausfuehren(() -> dienst.createDeckungen(antraege));
+    }
+}
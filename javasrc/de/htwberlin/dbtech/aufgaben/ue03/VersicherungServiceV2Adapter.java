@@ -1,58 +1,84 @@
 // Datei: javasrc/de/htwberlin/dbtech/aufgaben/ue03/VersicherungServiceV2Adapter.java
 package de.htwberlin.dbtech.aufgaben.ue03;
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.Ablehnungsregeln;
+import de.htwberlin.dbtech.aufgaben.stammdaten.MonatsrateTabelle;
 import de.htwberlin.dbtech.exceptions.*;
 import java.math.BigDecimal;
 import java.sql.Connection;
+import java.util.List;
 
 public class VersicherungServiceV2Adapter implements IVersicherungService {
     private final IVersicherungsServiceDao dao = new VersicherungServiceV2();
+    private final VersicherungService mengen = new VersicherungService();
+    private Ablehnungsregeln ablehnungsregeln = new Ablehnungsregeln();
+
+    public VersicherungServiceV2Adapter() {
+        mengen.setAblehnungsregeln(ablehnungsregeln);
+    }
 
     @Override
     public void setConnection(Connection connection) {
         dao.setConnection(connection);
+        mengen.setConnection(connection);
+        ablehnungsregeln.setConnection(connection);
+    }
+
+    public void setAblehnungsregeln(Ablehnungsregeln ablehnungsregeln) {
+        this.ablehnungsregeln = ablehnungsregeln;
+        mengen.setAblehnungsregeln(ablehnungsregeln);
+    }
+
+    public Ablehnungsregeln getAblehnungsregeln() {
+        return ablehnungsregeln;
+    }
+
+    public void setMonatsrateTabelle(MonatsrateTabelle monatsrateTabelle) {
+        dao.setMonatsrateTabelle(monatsrateTabelle);
+        mengen.setMonatsrateTabelle(monatsrateTabelle);
     }
 
     @Override
     public void createDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
-        // Die Logik aus VersicherungService übernehmen:
-        Integer produktIdVertrag = dao.getProduktIdFromVertrag(vertragsId);
+        pruefe(vertragsId, deckungsartId, deckungsbetrag);
+        dao.insertDeckung(vertragsId, deckungsartId, deckungsbetrag);
+    }
+
+    /**
+     * Die Antraege werden wie in VersicherungService mit mengenorientierten
+     * Abfragen geprueft und in Teilen per Batch geschrieben, statt je Antrag die
+     * Einzelabfragen des DAO zu stellen.
+     */
+    @Override
+    public List<DeckungsErgebnis> createDeckungen(List<DeckungsAntrag> antraege) {
+        return mengen.createDeckungen(antraege);
+    }
+
+    private void pruefe(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
+        // Vertrag und Kunde werden mit einer Abfrage gelesen
+        VertragKontext vertrag = dao.loadVertragKontext(vertragsId);
         Integer produktIdDeckungsart = dao.getProduktIdFromDeckungsart(deckungsartId);
-        if (!produktIdVertrag.equals(produktIdDeckungsart)) {
-            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, produktIdVertrag);
+        if (!vertrag.getProduktId().equals(produktIdDeckungsart)) {
+            throw new DeckungsartPasstNichtZuProduktException(produktIdDeckungsart, vertrag.getProduktId());
         }
 
         dao.checkDeckungsbetragExistiert(deckungsartId, deckungsbetrag);
 
-        var versicherungsbeginn = dao.getVersicherungsbeginn(vertragsId);
-
-        dao.checkDeckungspreisExistiert(deckungsartId, deckungsbetrag, versicherungsbeginn);
+        dao.checkDeckungspreisExistiert(deckungsartId, deckungsbetrag, vertrag.getVersicherungsbeginn());
 
-        checkRegelkonform(vertragsId, deckungsartId, deckungsbetrag, versicherungsbeginn);
-
-        dao.insertDeckung(vertragsId, deckungsartId, deckungsbetrag);
+        checkRegelkonform(vertrag, deckungsartId, deckungsbetrag);
     }
 
-    private void checkRegelkonform(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag, java.time.LocalDate versicherungsbeginn) {
-        Integer kundenId = dao.getKundenIdFromVertrag(vertragsId);
-        java.time.LocalDate geburtsdatum = dao.getGeburtsdatumFromKunde(kundenId);
+    private void checkRegelkonform(VertragKontext vertrag, Integer deckungsartId, BigDecimal deckungsbetrag) {
+        if (!vertrag.isKundeGefunden()) {
+            throw new KundeExistiertNichtException(vertrag.getKundenId());
+        }
+        java.time.LocalDate versicherungsbeginn = vertrag.getVersicherungsbeginn();
+        java.time.LocalDate geburtsdatum = vertrag.getGeburtsdatum();
         int alter = versicherungsbeginn.getYear() - geburtsdatum.getYear();
         if (versicherungsbeginn.getDayOfYear() < geburtsdatum.getDayOfYear()) {
             alter--;
         }
-        if (deckungsartId == 1 && alter < 18) {
-            throw new DeckungsartNichtRegelkonformException(deckungsartId);
-        }
-        if (deckungsartId == 3) {
-            if (deckungsbetrag.intValue() == 100_000 && alter > 90) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-            if (deckungsbetrag.intValue() == 200_000 && alter > 70) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-            if (deckungsbetrag.intValue() == 300_000 && alter > 60) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            }
-        }
+        ablehnungsregeln.pruefe(deckungsartId, deckungsbetrag, alter);
     }
-}
\ No newline at end of file
+}
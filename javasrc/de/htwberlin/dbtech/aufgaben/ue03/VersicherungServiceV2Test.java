@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.List;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class VersicherungServiceV2Test {
@@ -195,4 +196,30 @@ public class VersicherungServiceV2Test {
 
     }
 
+    /**
+     * Mehrere Deckungen in einem Durchgang. Abgelehnte Antraege liefern dieselbe
+     * Ausnahme wie createDeckung, der gueltige Antrag wird eingetragen.
+     */
+    @org.junit.Test
+    public void createDeckung13() throws Exception {
+        List<DeckungsAntrag> antraege = List.of(
+                new DeckungsAntrag(99, 1, BigDecimal.valueOf(0)),
+                new DeckungsAntrag(5, 5, BigDecimal.valueOf(1500)),
+                new DeckungsAntrag(6, 1, BigDecimal.valueOf(100000000)),
+                new DeckungsAntrag(4, 3, BigDecimal.valueOf(100000)));
+        List<DeckungsErgebnis> ergebnisse = vService.createDeckungen(antraege);
+
+        Assert.assertEquals("Falsche Anzahl Ergebnisse", 4, ergebnisse.size());
+        Assert.assertTrue(ergebnisse.get(0).getAblehnung() instanceof VertragExistiertNichtException);
+        Assert.assertTrue(ergebnisse.get(1).getAblehnung() instanceof DeckungspreisNichtVorhandenException);
+        Assert.assertTrue(ergebnisse.get(2).getAblehnung() instanceof DeckungsartNichtRegelkonformException);
+        Assert.assertTrue("Antrag nicht angenommen", ergebnisse.get(3).isAngenommen());
+
+        QueryDataSet databaseDataSet = new QueryDataSet(dbTesterCon);
+        String sql = "select * from Deckung where Vertrag_FK = 4 and Deckungsart_FK = 3";
+        databaseDataSet.addTable("Deckung", sql);
+        ITable tblDeckung = databaseDataSet.getTable("Deckung");
+        Assert.assertEquals("Falsche Anzahl Zeilen", 1, tblDeckung.getRowCount());
+    }
+
 }
@@ -1,32 +1,79 @@
 package de.htwberlin.dbtech.aufgaben.ue03;
 
+import de.htwberlin.dbtech.aufgaben.stammdaten.MonatsrateTabelle;
 import de.htwberlin.dbtech.exceptions.*;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.StatementCache;
+import de.htwberlin.dbtech.utils.Tage;
 
 import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 public class VersicherungsServiceDao implements IVersicherungsServiceDao{
-    private Connection connection;
+    private static final int BATCH_GROESSE = 1000;
+    private StatementCache statements;
+    private MonatsrateTabelle monatsrateTabelle;
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        if (statements != null) {
+            statements.close();
+        }
+        statements = new StatementCache(connection);
+    }
+
+    public StatementCache getStatementCache() {
+        return statements;
+    }
+
+    @Override
+    public void setMonatsrateTabelle(MonatsrateTabelle monatsrateTabelle) {
+        this.monatsrateTabelle = monatsrateTabelle;
     }
 
     @Override
     public Integer getProduktIdFromVertrag(Integer vertragsId) {
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT PRODUKT_FK FROM VERTRAG WHERE ID = ?")) {
+        try {
+            PreparedStatement stmt = statements.prepare("SELECT PRODUKT_FK FROM VERTRAG WHERE ID = ?");
             stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                } else {
+                    throw new VertragExistiertNichtException(vertragsId);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException(e.getMessage());
+        }
+    }
+
+    @Override
+    public VertragKontext loadVertragKontext(Integer vertragsId) {
+        // Spalten ueber die Position, Datumswerte als Tagnummer (Tage)
+        String sql = "SELECT v.PRODUKT_FK, v.KUNDE_FK, " + Tage.epochTag("v.VERSICHERUNGSBEGINN") + ", " +
+                Tage.epochTag("v.VERSICHERUNGSENDE") + ", k.ID AS KUNDE_ID, " + Tage.epochTag("k.GEBURTSDATUM") + " " +
+                "FROM VERTRAG v LEFT JOIN KUNDE k ON k.ID = v.KUNDE_FK " +
+                "WHERE v.ID = ?";
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
+            stmt.setInt(1, vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new VertragExistiertNichtException(vertragsId);
+                }
+                rs.getInt(5);
+                boolean kundeGefunden = !rs.wasNull();
+                return new VertragKontext(vertragsId, rs.getInt(1), rs.getInt(2), Tage.lese(rs, 3),
+                        Tage.lese(rs, 4), kundeGefunden, Tage.lese(rs, 6));
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -35,14 +82,15 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
 
     @Override
     public Integer getProduktIdFromDeckungsart(Integer deckungsartId) {
-        try (PreparedStatement stmt = connection.prepareStatement(
-                "SELECT PRODUKT_FK FROM DECKUNGSART WHERE ID = ?")) {
+        try {
+            PreparedStatement stmt = statements.prepare("SELECT PRODUKT_FK FROM DECKUNGSART WHERE ID = ?");
             stmt.setInt(1, deckungsartId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new DeckungsartExistiertNichtException(deckungsartId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                } else {
+                    throw new DeckungsartExistiertNichtException(deckungsartId);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -52,12 +100,14 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
     @Override
     public void checkDeckungsbetragExistiert(Integer deckungsartId, BigDecimal deckungsbetrag) {
         String sql = "SELECT 1 FROM DECKUNGSBETRAG WHERE DECKUNGSART_FK = ? AND DECKUNGSBETRAG = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
             stmt.setInt(1, deckungsartId);
             stmt.setBigDecimal(2, deckungsbetrag);
-            var rs = stmt.executeQuery();
-            if (!rs.next()) {
-                throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -66,15 +116,16 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
 
     @Override
     public LocalDate getVersicherungsbeginn(Integer vertragsId) {
-        String sql = "SELECT VERSICHERUNGSBEGINN FROM VERTRAG WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        String sql = "SELECT " + Tage.epochTag("VERSICHERUNGSBEGINN") + " FROM VERTRAG WHERE ID = ?";
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
             stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                Date date = rs.getDate(1);
-                return date.toLocalDate();
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Tage.lese(rs, 1);
+                } else {
+                    throw new VertragExistiertNichtException(vertragsId);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -87,13 +138,15 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
                 "JOIN DECKUNGSBETRAG db ON dp.DECKUNGSBETRAG_FK = db.ID " +
                 "WHERE db.DECKUNGSART_FK = ? AND db.DECKUNGSBETRAG = ? " +
                 "AND ? BETWEEN dp.GUELTIG_VON AND dp.GUELTIG_BIS";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
             stmt.setInt(1, deckungsartId);
             stmt.setBigDecimal(2, deckungsbetrag);
             stmt.setDate(3, Date.valueOf(versicherungsbeginn));
-            var rs = stmt.executeQuery();
-            if (!rs.next()) {
-                throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -103,13 +156,15 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
     @Override
     public Integer getKundenIdFromVertrag(Integer vertragsId) {
         String sql = "SELECT KUNDE_FK FROM VERTRAG WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
             stmt.setInt(1, vertragsId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            } else {
-                throw new VertragExistiertNichtException(vertragsId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                } else {
+                    throw new VertragExistiertNichtException(vertragsId);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -118,15 +173,16 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
 
     @Override
     public LocalDate getGeburtsdatumFromKunde(Integer kundenId) {
-        String sql = "SELECT GEBURTSDATUM FROM KUNDE WHERE ID = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        String sql = "SELECT " + Tage.epochTag("GEBURTSDATUM") + " FROM KUNDE WHERE ID = ?";
+        try {
+            PreparedStatement stmt = statements.prepare(sql);
             stmt.setInt(1, kundenId);
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                Date date = rs.getDate(1);
-                return date.toLocalDate();
-            } else {
-                throw new KundeExistiertNichtException(kundenId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Tage.lese(rs, 1);
+                } else {
+                    throw new KundeExistiertNichtException(kundenId);
+                }
             }
         } catch (SQLException e) {
             throw new DataException(e.getMessage());
@@ -136,11 +192,20 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
     @Override
     public void insertDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
         String sql = "insert into Deckung (VERTRAG_FK, DECKUNGSART_FK, DECKUNGSBETRAG) values (?, ?, ?)";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, vertragsId);
-            statement.setInt(2, deckungsartId);
-            statement.setBigDecimal(3, deckungsbetrag);
-            statement.executeUpdate();
+        Connection connection = statements.getConnection();
+        try {
+            PreparedStatement statement = statements.prepare(sql);
+            // Insert und Monatsrate in einer Transaktion
+            JdbcUtils.inTransaktion(connection, () -> {
+                statement.setInt(1, vertragsId);
+                statement.setInt(2, deckungsartId);
+                statement.setBigDecimal(3, deckungsbetrag);
+                statement.executeUpdate();
+                if (monatsrateTabelle != null) {
+                    monatsrateTabelle.addiereDeckung(connection, vertragsId, deckungsartId);
+                }
+                return null;
+            });
         } catch (SQLException e) {
             if (e.getMessage().contains("VERTRAG_FK")) {
                 throw new VertragExistiertNichtException(vertragsId);
@@ -150,4 +215,86 @@ public class VersicherungsServiceDao implements IVersicherungsServiceDao{
             throw new DataException(e.getMessage());
         }
     }
+
+    @Override
+    public List<DeckungsErgebnis> insertDeckungen(List<DeckungsAntrag> antraege) {
+        String sql = "insert into Deckung (VERTRAG_FK, DECKUNGSART_FK, DECKUNGSBETRAG) values (?, ?, ?)";
+        List<DeckungsErgebnis> ergebnisse = new ArrayList<>(antraege.size());
+        try {
+            for (List<DeckungsAntrag> teil : JdbcUtils.chunks(antraege, BATCH_GROESSE)) {
+                schreibeDeckungen(statements.prepare(sql), teil, ergebnisse);
+            }
+        } catch (SQLException e) {
+            throw new DataException(e.getMessage());
+        }
+        return ergebnisse;
+    }
+
+    /**
+     * Schreibt einen Teil der Antraege als ein Batch in einer Transaktion. Schlaegt
+     * das Batch fehl, ist es zurueckgerollt und wird Zeile fuer Zeile wiederholt.
+     */
+    private void schreibeDeckungen(PreparedStatement statement, List<DeckungsAntrag> teil,
+                                   List<DeckungsErgebnis> ergebnisse) throws SQLException {
+        Connection connection = statements.getConnection();
+        try {
+            JdbcUtils.inTransaktion(connection, () -> {
+                List<Integer> vertragsIds = new ArrayList<>(teil.size());
+                List<Integer> deckungsartIds = new ArrayList<>(teil.size());
+                for (DeckungsAntrag antrag : teil) {
+                    setzeDeckung(statement, antrag);
+                    statement.addBatch();
+                    vertragsIds.add(antrag.getVertragsId());
+                    deckungsartIds.add(antrag.getDeckungsartId());
+                }
+                statement.executeBatch();
+                if (monatsrateTabelle != null) {
+                    monatsrateTabelle.addiereDeckungen(connection, vertragsIds, deckungsartIds);
+                }
+                return null;
+            });
+            for (DeckungsAntrag antrag : teil) {
+                ergebnisse.add(DeckungsErgebnis.angenommen(antrag));
+            }
+        } catch (BatchUpdateException e) {
+            // das Batch ist zurueckgerollt; Zeile fuer Zeile wiederholen
+            statement.clearBatch();
+            for (DeckungsAntrag antrag : teil) {
+                try {
+                    JdbcUtils.inTransaktion(connection, () -> {
+                        setzeDeckung(statement, antrag);
+                        statement.executeUpdate();
+                        if (monatsrateTabelle != null) {
+                            monatsrateTabelle.addiereDeckung(connection, antrag.getVertragsId(),
+                                    antrag.getDeckungsartId());
+                        }
+                        return null;
+                    });
+                    ergebnisse.add(DeckungsErgebnis.angenommen(antrag));
+                } catch (SQLException ex) {
+                    ergebnisse.add(DeckungsErgebnis.abgelehnt(antrag, insertFehler(ex, antrag)));
+                }
+            }
+        }
+    }
+
+    private static void setzeDeckung(PreparedStatement statement, DeckungsAntrag antrag) throws SQLException {
+        statement.setInt(1, antrag.getVertragsId());
+        statement.setInt(2, antrag.getDeckungsartId());
+        statement.setBigDecimal(3, antrag.getDeckungsbetrag());
+    }
+
+    /**
+     * Nur die Verletzung eines der beiden Fremdschluessel ist eine Ablehnung des
+     * Antrags; jeder andere Fehler wird wie in insertDeckung als DataException
+     * geworfen.
+     */
+    private static VersicherungException insertFehler(SQLException e, DeckungsAntrag antrag) {
+        if (e.getMessage().contains("VERTRAG_FK")) {
+            return new VertragExistiertNichtException(antrag.getVertragsId());
+        } else if (e.getMessage().contains("DECKUNGSART_FK")) {
+            return new DeckungsartExistiertNichtException(antrag.getDeckungsartId());
+        }
+        throw new DataException(e.getMessage());
+    }
 }
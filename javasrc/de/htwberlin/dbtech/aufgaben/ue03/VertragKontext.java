@@ -0,0 +1,66 @@
+package de.htwberlin.dbtech.aufgaben.ue03;
+
+import java.time.LocalDate;
+
+/**
+ * Die fuer createDeckung benoetigten Daten eines Vertrags und seines Kunden,
+ * gelesen mit einer Abfrage.
+ */
+public final class VertragKontext {
+    private final Integer vertragsId;
+    private final Integer produktId;
+    private final Integer kundenId;
+    private final LocalDate versicherungsbeginn;
+    private final LocalDate versicherungsende;
+    private final boolean kundeGefunden;
+    private final LocalDate geburtsdatum;
+
+    public VertragKontext(Integer vertragsId, Integer produktId, Integer kundenId, LocalDate versicherungsbeginn,
+                          LocalDate versicherungsende, boolean kundeGefunden, LocalDate geburtsdatum) {
+        this.vertragsId = vertragsId;
+        this.produktId = produktId;
+        this.kundenId = kundenId;
+        this.versicherungsbeginn = versicherungsbeginn;
+        this.versicherungsende = versicherungsende;
+        this.kundeGefunden = kundeGefunden;
+        this.geburtsdatum = geburtsdatum;
+    }
+
+    @Override
+    public String toString() {
+        return "VertragKontext [vertragsId=" + vertragsId + ", produktId=" + produktId + ", kundenId=" + kundenId
+                + ", versicherungsbeginn=" + versicherungsbeginn + ", versicherungsende=" + versicherungsende
+                + ", geburtsdatum=" + geburtsdatum + "]";
+    }
+
+    public Integer getVertragsId() {
+        return vertragsId;
+    }
+
+    public Integer getProduktId() {
+        return produktId;
+    }
+
+    public Integer getKundenId() {
+        return kundenId;
+    }
+
+    public LocalDate getVersicherungsbeginn() {
+        return versicherungsbeginn;
+    }
+
+    public LocalDate getVersicherungsende() {
+        return versicherungsende;
+    }
+
+    /**
+     * @return false, wenn der Kunde des Vertrags nicht in der Tabelle Kunde steht.
+     */
+    public boolean isKundeGefunden() {
+        return kundeGefunden;
+    }
+
+    public LocalDate getGeburtsdatum() {
+        return geburtsdatum;
+    }
+}
@@ -0,0 +1,39 @@
+package de.htwberlin.dbtech.aufgaben.ue04;
+
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * createDeckung aus {@link IVersicherungService} als CompletableFuture, begrenzt
+ * durch einen {@link AsyncAusfuehrer}. Die Ausnahmen des PL/SQL-Packages kommen
+ * als VersicherungException wie beim synchronen Aufruf.
+ * <p>
+ * Bei mehr als einem gleichzeitigen Aufruf muss der Dienst ueber setDataSource
+ * konfiguriert sein, vor dem Erzeugen des Wrappers; eine feste Connection darf
+ * nicht von mehreren Threads benutzt werden.
+ */
+public class VersicherungServiceAsync {
+    private final VersicherungServicePlSql dienst;
+    private final AsyncAusfuehrer ausfuehrer;
+
+    /**
+     * @throws IllegalArgumentException wenn der ausfuehrer mehr als einen Aufruf
+     *                                  gleichzeitig zulaesst und der Dienst
+     *                                  keine DataSource hat.
+     */
+    public VersicherungServiceAsync(VersicherungServicePlSql dienst, AsyncAusfuehrer ausfuehrer) {
+        if (ausfuehrer.getMaxGleichzeitig() > 1 && dienst.getDataSource() == null) {
+            throw new IllegalArgumentException("maxGleichzeitig: " + ausfuehrer.getMaxGleichzeitig()
+                    + ", dienst ohne DataSource");
+        }
+        this.dienst = dienst;
+        this.ausfuehrer = ausfuehrer;
+    }
+
+    public CompletableFuture<Void> createDeckung(Integer vertragsId, Integer deckungsartId,
+                                                 BigDecimal deckungsbetrag) {
+        return ausfuehrer.ausfuehren(() -> dienst.createDeckung(vertragsId, deckungsartId, deckungsbetrag));
+    }
+}
@@ -5,9 +5,11 @@ package de.htwberlin.dbtech.aufgaben.ue04;
  */
 
 import de.htwberlin.dbtech.exceptions.*;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -18,14 +20,31 @@ import java.sql.SQLException;
  */
 public class VersicherungServicePlSql implements IVersicherungService {
     private static final Logger L = LoggerFactory.getLogger(VersicherungServicePlSql.class);
-    private Connection connection;
+    private final ConnectionProvider verbindung = new ConnectionProvider();
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        verbindung.setConnection(connection);
+    }
+
+    /**
+     * Statt einer festen Connection leiht sich jede Operation eine Connection aus
+     * der DataSource. Der Dienst kann dann von mehreren Threads benutzt werden.
+     */
+    public void setDataSource(DataSource dataSource) {
+        verbindung.setDataSource(dataSource);
+    }
+
+    /**
+     * @return die mit setDataSource gesetzte DataSource oder null bei fester
+     *         Connection.
+     */
+    public DataSource getDataSource() {
+        return verbindung.getDataSource();
     }
 
     private Connection useConnection() {
+        Connection connection = verbindung.getConnection();
         if (connection == null) {
             throw new DataException("Connection not set");
         }
@@ -34,33 +53,35 @@ public class VersicherungServicePlSql implements IVersicherungService {
 
     @Override
     public void createDeckung(Integer vertragsId, Integer deckungsartId, BigDecimal deckungsbetrag) {
-        L.info("vertragsId: " + vertragsId);
-        L.info("deckungsartId: " + deckungsartId);
-        L.info("deckungsbetrag: " + deckungsbetrag);
-        try (CallableStatement cStmt = useConnection().prepareCall("{call versicherungsservice.create_deckung(?, ?, ?)}")) {
-            cStmt.setInt(1, vertragsId);
-            cStmt.setInt(2, deckungsartId);
-            cStmt.setBigDecimal(3, deckungsbetrag);
-            cStmt.executeUpdate();
-            L.info("ende");
-        } catch (SQLException e) {
-            L.info("Error code: " + e.getErrorCode());
-            if (e.getErrorCode() == 20002) {
-                throw new VertragExistiertNichtException(vertragsId);
-            } else if (e.getErrorCode() == 20003) {
-                throw new DeckungsartExistiertNichtException(deckungsartId);
-            } else if (e.getErrorCode() == 20004) {
-                throw new UngueltigerDeckungsbetragException(deckungsbetrag);
-            } else if (e.getErrorCode() == 20005) {
-                throw new DeckungsartPasstNichtZuProduktException();
-            } else if (e.getErrorCode() == 20006) {
-                throw new DeckungsartNichtRegelkonformException(deckungsartId);
-            } else if (e.getErrorCode() == 20007) {
-                throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
-            } else {
-                throw new DataException(e);
+        verbindung.mitConnectionAusfuehren(() -> {
+            L.info("vertragsId: " + vertragsId);
+            L.info("deckungsartId: " + deckungsartId);
+            L.info("deckungsbetrag: " + deckungsbetrag);
+            try (CallableStatement cStmt = useConnection().prepareCall("{call versicherungsservice.create_deckung(?, ?, ?)}")) {
+                cStmt.setInt(1, vertragsId);
+                cStmt.setInt(2, deckungsartId);
+                cStmt.setBigDecimal(3, deckungsbetrag);
+                cStmt.executeUpdate();
+                L.info("ende");
+            } catch (SQLException e) {
+                L.info("Error code: " + e.getErrorCode());
+                if (e.getErrorCode() == 20002) {
+                    throw new VertragExistiertNichtException(vertragsId);
+                } else if (e.getErrorCode() == 20003) {
+                    throw new DeckungsartExistiertNichtException(deckungsartId);
+                } else if (e.getErrorCode() == 20004) {
+                    throw new UngueltigerDeckungsbetragException(deckungsbetrag);
+                } else if (e.getErrorCode() == 20005) {
+                    throw new DeckungsartPasstNichtZuProduktException();
+                } else if (e.getErrorCode() == 20006) {
+                    throw new DeckungsartNichtRegelkonformException(deckungsartId);
+                } else if (e.getErrorCode() == 20007) {
+                    throw new DeckungspreisNichtVorhandenException(deckungsbetrag);
+                } else {
+                    throw new DataException(e);
+                }
             }
-        }
+        });
     }
 
 }
\ No newline at end of file
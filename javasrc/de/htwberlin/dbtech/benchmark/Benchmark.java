@@ -0,0 +1,176 @@
+package de.htwberlin.dbtech.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Misst eine Operation mit einer festen Anzahl von Threads. Jeder Thread hat
+ * eine eigene Connection (autoCommit aus) und eine eigene Instanz des Dienstes;
+ * nach jeder Operation wird zurueckgerollt, damit der Datenbestand waehrend der
+ * Messung gleich bleibt.
+ * <p>
+ * Nach einer Aufwaermphase wird eine feste Zeit gemessen. Ergebnis sind
+ * Durchsatz, Median und 99. Perzentil der Latenz sowie die Allokationsrate der
+ * messenden Threads.
+ */
+public class Benchmark {
+    private static final Logger L = LoggerFactory.getLogger(Benchmark.class);
+
+    /**
+     * Eine einzelne gemessene Operation. i zaehlt die Aufrufe des Threads.
+     */
+    public interface Operation {
+        void ausfuehren(int threadNr, long i);
+    }
+
+    /**
+     * Erzeugt je Thread die Operation, z.B. einen Dienst mit der Connection des
+     * Threads.
+     */
+    public interface Fabrik {
+        Operation erzeuge(Connection connection);
+    }
+
+    private final DataSource dataSource;
+    private final long aufwaermenMs;
+    private final long messenMs;
+
+    public Benchmark(DataSource dataSource, long aufwaermenMs, long messenMs) {
+        this.dataSource = dataSource;
+        this.aufwaermenMs = aufwaermenMs;
+        this.messenMs = messenMs;
+    }
+
+    public Messergebnis messe(String name, int threads, Fabrik fabrik) {
+        L.info("start " + name + ", threads: " + threads);
+        List<Arbeiter> arbeiter = new ArrayList<>();
+        CountDownLatch bereit = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            Arbeiter a = new Arbeiter(t, fabrik, bereit, start);
+            arbeiter.add(a);
+            a.thread.start();
+        }
+        try {
+            bereit.await();
+            start.countDown();
+            for (Arbeiter a : arbeiter) {
+                a.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        long anzahl = 0;
+        long fehler = 0;
+        long bytes = 0;
+        for (Arbeiter a : arbeiter) {
+            if (a.abbruch != null) {
+                throw new RuntimeException("benchmark " + name + " abgebrochen", a.abbruch);
+            }
+            anzahl += a.anzahl;
+            fehler += a.fehler;
+            bytes += a.allokiert;
+        }
+        long[] alle = new long[(int) anzahl];
+        int pos = 0;
+        for (Arbeiter a : arbeiter) {
+            System.arraycopy(a.latenzen, 0, alle, pos, a.anzahl);
+            pos += a.anzahl;
+        }
+        Arrays.sort(alle);
+        double sekunden = messenMs / 1000.0;
+        Messergebnis ergebnis = new Messergebnis(name, threads, anzahl, fehler, anzahl / sekunden,
+                perzentil(alle, 0.50), perzentil(alle, 0.99), bytes / sekunden / (1024 * 1024));
+        L.info(ergebnis.toString());
+        return ergebnis;
+    }
+
+    private static double perzentil(long[] sortiert, double p) {
+        if (sortiert.length == 0) {
+            return 0.0;
+        }
+        int i = (int) Math.min(sortiert.length - 1, Math.ceil(p * sortiert.length) - 1);
+        return sortiert[Math.max(i, 0)] / 1e6;
+    }
+
+    private static long allokiert() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private class Arbeiter implements Runnable {
+        final int nr;
+        final Fabrik fabrik;
+        final CountDownLatch bereit;
+        final CountDownLatch start;
+        final Thread thread;
+        long[] latenzen = new long[1 << 16];
+        int anzahl = 0;
+        long fehler = 0;
+        long allokiert = 0;
+        Throwable abbruch;
+
+        Arbeiter(int nr, Fabrik fabrik, CountDownLatch bereit, CountDownLatch start) {
+            this.nr = nr;
+            this.fabrik = fabrik;
+            this.bereit = bereit;
+            this.start = start;
+            this.thread = new Thread(this, "benchmark-" + nr);
+        }
+
+        @Override
+        public void run() {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                Operation op = fabrik.erzeuge(connection);
+                bereit.countDown();
+                start.await();
+                long i = 0;
+                long ende = System.currentTimeMillis() + aufwaermenMs;
+                while (System.currentTimeMillis() < ende) {
+                    einmal(op, connection, i++, false);
+                }
+                long bytesVorher = allokiert();
+                ende = System.currentTimeMillis() + messenMs;
+                while (System.currentTimeMillis() < ende) {
+                    einmal(op, connection, i++, true);
+                }
+                allokiert = allokiert() - bytesVorher;
+            } catch (Throwable e) {
+                abbruch = e;
+                bereit.countDown();
+            }
+        }
+
+        private void einmal(Operation op, Connection connection, long i, boolean messen) throws SQLException {
+            long t0 = System.nanoTime();
+            try {
+                op.ausfuehren(nr, i);
+            } catch (RuntimeException e) {
+                if (messen) {
+                    fehler++;
+                }
+            }
+            connection.rollback();
+            if (messen) {
+                if (anzahl == latenzen.length) {
+                    latenzen = Arrays.copyOf(latenzen, anzahl * 2);
+                }
+                latenzen[anzahl++] = System.nanoTime() - t0;
+            }
+        }
+    }
+}
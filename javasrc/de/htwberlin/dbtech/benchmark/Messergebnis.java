@@ -0,0 +1,71 @@
+package de.htwberlin.dbtech.benchmark;
+
+/**
+ * Ergebnis eines Laufs von {@link Benchmark}. Latenzen in Millisekunden,
+ * Allokationsrate in MB je Sekunde.
+ */
+public class Messergebnis {
+    private final String name;
+    private final int threads;
+    private final long anzahl;
+    private final long fehler;
+    private final double durchsatz;
+    private final double p50Ms;
+    private final double p99Ms;
+    private final double allokationMbProSekunde;
+
+    public Messergebnis(String name, int threads, long anzahl, long fehler, double durchsatz, double p50Ms,
+                        double p99Ms, double allokationMbProSekunde) {
+        this.name = name;
+        this.threads = threads;
+        this.anzahl = anzahl;
+        this.fehler = fehler;
+        this.durchsatz = durchsatz;
+        this.p50Ms = p50Ms;
+        this.p99Ms = p99Ms;
+        this.allokationMbProSekunde = allokationMbProSekunde;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getAnzahl() {
+        return anzahl;
+    }
+
+    public long getFehler() {
+        return fehler;
+    }
+
+    public double getDurchsatz() {
+        return durchsatz;
+    }
+
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    public double getAllokationMbProSekunde() {
+        return allokationMbProSekunde;
+    }
+
+    public static String kopfzeile() {
+        return String.format("%-28s %7s %10s %10s %9s %9s %10s", "benchmark", "threads", "ops/s", "ops",
+                "p50 ms", "p99 ms", "alloc MB/s");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-28s %7d %10.1f %10d %9.3f %9.3f %10.2f", name, threads, durchsatz, anzahl, p50Ms,
+                p99Ms, allokationMbProSekunde) + (fehler > 0 ? "  fehler: " + fehler : "");
+    }
+}
@@ -0,0 +1,89 @@
+package de.htwberlin.dbtech.benchmark;
+
+import de.htwberlin.dbtech.aufgaben.ue02.VersicherungJdbc;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vergleicht calcMonatsrate mit Jahresregel und mit Datumsbereich ueber einer
+ * langen Preishistorie (Standard: 1000 Deckungsbetraege mit je 1200 Preisen,
+ * also 1,2 Mio. Zeilen in Deckungspreis). Der Index deckungspreis_gueltig_idx
+ * aus db/versicherung/tables-create.sql muss angelegt sein. Vor der Messung wird
+ * geprueft, dass beide Varianten dieselben Raten liefern.
+ * <p>
+ * Einstellungen ueber System-Properties wie bei {@link VersicherungBenchmark},
+ * zusaetzlich -Dbenchmark.betraege und -Dbenchmark.monate.
+ */
+public class MonatsrateBenchmark {
+    private static final Logger L = LoggerFactory.getLogger(MonatsrateBenchmark.class);
+
+    public static void main(String[] args) {
+        int maxThreads = Integer.getInteger("benchmark.threads", 4);
+        int vertraege = Integer.getInteger("benchmark.vertraege", 1000);
+        int betraege = Integer.getInteger("benchmark.betraege", 1000);
+        int monate = Integer.getInteger("benchmark.monate", 1200);
+        long aufwaermenMs = Integer.getInteger("benchmark.aufwaermen", 3) * 1000L;
+        long messenMs = Integer.getInteger("benchmark.messen", 10) * 1000L;
+
+        Testdaten testdaten = new Testdaten(vertraege, 1);
+        Preishistorie historie = new Preishistorie(betraege, monate);
+        try (ConnectionPool pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password,
+                1, maxThreads + 1)) {
+            try (Connection connection = pool.getConnection()) {
+                testdaten.anlegen(connection);
+                historie.anlegen(connection);
+                pruefeGleicheErgebnisse(connection, testdaten, vertraege);
+            }
+            Benchmark benchmark = new Benchmark(pool, aufwaermenMs, messenMs);
+            List<Messergebnis> ergebnisse = new ArrayList<>();
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                ergebnisse.add(benchmark.messe("calcMonatsrate-jahresregel", threads,
+                        connection -> fall(connection, testdaten, false)));
+                ergebnisse.add(benchmark.messe("calcMonatsrate-datumsbereich", threads,
+                        connection -> fall(connection, testdaten, true)));
+            }
+            try (Connection connection = pool.getConnection()) {
+                historie.entfernen(connection);
+                testdaten.entfernen(connection);
+            }
+            System.out.println(Messergebnis.kopfzeile());
+            for (Messergebnis e : ergebnisse) {
+                System.out.println(e);
+            }
+        } catch (SQLException e) {
+            L.error("Verbindungsaufbau gescheitert", e);
+        }
+    }
+
+    private static Benchmark.Operation fall(Connection connection, Testdaten testdaten, boolean datumsbereich) {
+        VersicherungJdbc vj = new VersicherungJdbc();
+        vj.setConnection(connection);
+        vj.setPreisfilterAlsDatumsbereich(datumsbereich);
+        return (t, i) -> vj.calcMonatsrate(testdaten.vertragMitDeckung(t * 7919L + i));
+    }
+
+    private static void pruefeGleicheErgebnisse(Connection connection, Testdaten testdaten, int vertraege) {
+        VersicherungJdbc jahresregel = new VersicherungJdbc();
+        jahresregel.setConnection(connection);
+        VersicherungJdbc datumsbereich = new VersicherungJdbc();
+        datumsbereich.setConnection(connection);
+        datumsbereich.setPreisfilterAlsDatumsbereich(true);
+        for (int i = 0; i < Math.min(vertraege, 100); i++) {
+            int id = testdaten.vertragMitDeckung(i);
+            BigDecimal a = jahresregel.calcMonatsrate(id);
+            BigDecimal b = datumsbereich.calcMonatsrate(id);
+            if (a.compareTo(b) != 0) {
+                throw new IllegalStateException("unterschiedliche Monatsrate fuer Vertrag " + id + ": " + a + " / " + b);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package de.htwberlin.dbtech.benchmark;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Legt eine lange Preishistorie an: zusaetzliche Deckungsbetraege der
+ * Deckungsarten 1 und 2 mit monatlichen Preisen ab 1900. Die Zeitraeume enden
+ * vor 2017 und aendern daher keine Monatsrate der Vertraege aus
+ * {@link Testdaten}, machen aber Deckungspreis gross.
+ */
+public class Preishistorie {
+    private static final Logger L = LoggerFactory.getLogger(Preishistorie.class);
+    private static final int BATCH_GROESSE = 1000;
+    private static final LocalDate BEGINN = LocalDate.of(1900, 1, 1);
+
+    private final int anzahlBetraege;
+    private final int monate;
+
+    /**
+     * @param anzahlBetraege zusaetzliche Deckungsbetraege
+     * @param monate         Preise je Deckungsbetrag, hoechstens 1392 (bis 2015)
+     */
+    public Preishistorie(int anzahlBetraege, int monate) {
+        this.anzahlBetraege = anzahlBetraege;
+        this.monate = Math.min(monate, 1392);
+    }
+
+    public void anlegen(Connection connection) {
+        entfernen(connection);
+        L.info("lege an: " + anzahlBetraege + " deckungsbetraege mit je " + monate + " preisen");
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into Deckungsbetrag (ID, Deckungsart_FK, Deckungsbetrag) values (?, ?, ?)")) {
+                for (int i = 0; i < anzahlBetraege; i++) {
+                    ps.setInt(1, Testdaten.START_ID + i);
+                    ps.setInt(2, 1 + i % 2);
+                    ps.setBigDecimal(3, BigDecimal.valueOf(i + 1));
+                    ps.addBatch();
+                    if ((i + 1) % BATCH_GROESSE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(String.join(" ",
+                    "insert into Deckungspreis (ID, Deckungsbetrag_FK, Gueltig_Von, Gueltig_Bis, Preis)",
+                    "values (?, ?, ?, ?, ?)"))) {
+                int id = Testdaten.START_ID;
+                for (int i = 0; i < anzahlBetraege; i++) {
+                    for (int m = 0; m < monate; m++) {
+                        LocalDate von = BEGINN.plusMonths(m);
+                        ps.setInt(1, id++);
+                        ps.setInt(2, Testdaten.START_ID + i);
+                        ps.setDate(3, Date.valueOf(von));
+                        ps.setDate(4, Date.valueOf(von.plusMonths(1).minusDays(1)));
+                        ps.setBigDecimal(5, BigDecimal.ONE);
+                        ps.addBatch();
+                        if (id % BATCH_GROESSE == 0) {
+                            ps.executeBatch();
+                        }
+                    }
+                }
+                ps.executeBatch();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    public void entfernen(Connection connection) {
+        try {
+            for (String sql : new String[]{
+                    "delete from Deckungspreis where ID >= ?",
+                    "delete from Deckungsbetrag where ID >= ?"}) {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setInt(1, Testdaten.START_ID);
+                    ps.executeUpdate();
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+}
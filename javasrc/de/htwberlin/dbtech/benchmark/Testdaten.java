@@ -0,0 +1,148 @@
+package de.htwberlin.dbtech.benchmark;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Legt die Daten fuer die Benchmarks an und entfernt sie wieder. Vorausgesetzt
+ * werden die Stammdaten aus db/versicherung/data-insert.sql; alle angelegten
+ * Datensaetze haben IDs ab {@link #START_ID}.
+ * <p>
+ * Es gibt zwei Gruppen von Vertraegen (Produkt KFZV, Beginn 2025-01-01): die
+ * ersten anzahlVertraege ohne Deckung fuer createDeckung, die naechsten mit
+ * Deckungen fuer calcMonatsrate. Dazu kommen offene Angebote fuer biete.
+ */
+public class Testdaten {
+    private static final Logger L = LoggerFactory.getLogger(Testdaten.class);
+    public static final int START_ID = 100000;
+    public static final LocalDate VERSICHERUNGSBEGINN = LocalDate.of(2025, 1, 1);
+    private static final int BATCH_GROESSE = 1000;
+
+    private final int anzahlVertraege;
+    private final int anzahlAngebote;
+
+    public Testdaten(int anzahlVertraege, int anzahlAngebote) {
+        this.anzahlVertraege = anzahlVertraege;
+        this.anzahlAngebote = anzahlAngebote;
+    }
+
+    /**
+     * @return die ID des i-ten Vertrags ohne Deckung.
+     */
+    public int vertragOhneDeckung(long i) {
+        return START_ID + (int) (i % anzahlVertraege);
+    }
+
+    /**
+     * @return die ID des i-ten Vertrags mit Deckungen.
+     */
+    public int vertragMitDeckung(long i) {
+        return START_ID + anzahlVertraege + (int) (i % anzahlVertraege);
+    }
+
+    public int angebot(long i) {
+        return START_ID + (int) (i % anzahlAngebote);
+    }
+
+    public void anlegen(Connection connection) {
+        entfernen(connection);
+        L.info("lege an: " + anzahlVertraege + " vertraege je gruppe, " + anzahlAngebote + " angebote");
+        Date beginn = Date.valueOf(VERSICHERUNGSBEGINN);
+        Date ende = Date.valueOf(VERSICHERUNGSBEGINN.plusYears(1).minusDays(1));
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into Kunde (ID, Name, Geburtsdatum) values (?, ?, ?)")) {
+                for (int i = 0; i < 2 * anzahlVertraege; i++) {
+                    ps.setInt(1, START_ID + i);
+                    ps.setString(2, "Kunde " + i);
+                    ps.setDate(3, Date.valueOf(LocalDate.of(1980, 1, 1).plusDays(i % 7000)));
+                    stapeln(ps, i);
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(String.join(" ",
+                    "insert into Vertrag (ID, Produkt_FK, Kunde_FK, Versicherungsbeginn, Versicherungsende)",
+                    "values (?, 1, ?, ?, ?)"))) {
+                for (int i = 0; i < 2 * anzahlVertraege; i++) {
+                    ps.setInt(1, START_ID + i);
+                    ps.setInt(2, START_ID + i);
+                    ps.setDate(3, beginn);
+                    ps.setDate(4, ende);
+                    stapeln(ps, i);
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into Deckung (Vertrag_FK, Deckungsart_FK, Deckungsbetrag) values (?, ?, ?)")) {
+                for (int i = 0; i < anzahlVertraege; i++) {
+                    ps.setInt(1, vertragMitDeckung(i));
+                    ps.setInt(2, 1);
+                    ps.setBigDecimal(3, BigDecimal.valueOf(100000000));
+                    ps.addBatch();
+                    ps.setInt(1, vertragMitDeckung(i));
+                    ps.setInt(2, 2);
+                    ps.setBigDecimal(3, BigDecimal.valueOf(15000000));
+                    stapeln(ps, i);
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = connection.prepareStatement(String.join(" ",
+                    "insert into Angebot (AID, ArtikelBez, AuktionEndeZeitpunkt, AuktionMinPreis)",
+                    "values (?, ?, ?, 1)"))) {
+                for (int i = 0; i < anzahlAngebote; i++) {
+                    ps.setInt(1, START_ID + i);
+                    ps.setString(2, "Artikel " + i);
+                    ps.setTimestamp(3, Timestamp.valueOf(LocalDateTime.of(2099, 12, 31, 0, 0)));
+                    stapeln(ps, i);
+                }
+                ps.executeBatch();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    public void entfernen(Connection connection) {
+        String[] sqls = {
+                "delete from Gebot where AID >= ?",
+                "delete from Angebot where AID >= ?",
+                "delete from Deckung where Vertrag_FK >= ?",
+                "delete from Vertrag where ID >= ?",
+                "delete from Kunde where ID >= ?"};
+        try {
+            for (String sql : sqls) {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setInt(1, START_ID);
+                    ps.executeUpdate();
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static void stapeln(PreparedStatement ps, int i) throws SQLException {
+        ps.addBatch();
+        if ((i + 1) % BATCH_GROESSE == 0) {
+            ps.executeBatch();
+        }
+    }
+}
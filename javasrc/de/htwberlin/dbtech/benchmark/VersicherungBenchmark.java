@@ -0,0 +1,140 @@
+package de.htwberlin.dbtech.benchmark;
+
+import de.htwberlin.dbtech.aufgaben.ue02.VersicherungJdbc;
+import de.htwberlin.dbtech.aufgaben.ue03.VersicherungService;
+import de.htwberlin.dbtech.aufgaben.ue03.VersicherungServiceV2Adapter;
+import de.htwberlin.dbtech.aufgaben.ue04.VersicherungServicePlSql;
+import de.htwberlin.dbtech.bsp.auktion.AuktionsService;
+import de.htwberlin.dbtech.bsp.auktion.GebotPipeline;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vergleicht die drei Implementierungen von createDeckung (JDBC, DAO mit
+ * Adapter, PL/SQL) sowie calcMonatsrate und AuktionsService.biete mit 1 bis N
+ * Threads. Die Datenbank aus DbCred muss die Tabellen und Stammdaten aus
+ * db/versicherung und db/auktion sowie das Package aus db/aufgaben/ue04
+ * enthalten; die Testdaten werden angelegt und am Ende wieder entfernt.
+ * <p>
+ * Einstellungen ueber System-Properties:
+ * <pre>
+ * -Dbenchmark.threads=4        hoechste Anzahl Threads
+ * -Dbenchmark.vertraege=1000   Vertraege je Gruppe
+ * -Dbenchmark.angebote=100     Angebote fuer biete
+ * -Dbenchmark.aufwaermen=3     Sekunden
+ * -Dbenchmark.messen=10        Sekunden
+ * -Dbenchmark.nur=createDeckung-jdbc,biete   nur diese Benchmarks
+ * </pre>
+ */
+public class VersicherungBenchmark {
+    private static final Logger L = LoggerFactory.getLogger(VersicherungBenchmark.class);
+    private static final BigDecimal DECKUNGSBETRAG = BigDecimal.valueOf(100000000);
+
+    public static void main(String[] args) {
+        int maxThreads = Integer.getInteger("benchmark.threads", 4);
+        int vertraege = Integer.getInteger("benchmark.vertraege", 1000);
+        int angebote = Integer.getInteger("benchmark.angebote", 100);
+        long aufwaermenMs = Integer.getInteger("benchmark.aufwaermen", 3) * 1000L;
+        long messenMs = Integer.getInteger("benchmark.messen", 10) * 1000L;
+        String nur = System.getProperty("benchmark.nur", "");
+
+        Testdaten testdaten = new Testdaten(vertraege, angebote);
+        try (ConnectionPool pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password,
+                1, maxThreads + 2);
+             GebotPipeline pipeline = new GebotPipeline(pool, IdAllocator.ausSequenz(pool, "Gebot_Seq"), 1000)) {
+            try (Connection connection = pool.getConnection()) {
+                testdaten.anlegen(connection);
+            }
+            Benchmark benchmark = new Benchmark(pool, aufwaermenMs, messenMs);
+            List<Messergebnis> ergebnisse = new ArrayList<>();
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                for (Fall fall : faelle(testdaten, pipeline)) {
+                    if (nur.isEmpty() || List.of(nur.split(",")).contains(fall.name)) {
+                        ergebnisse.add(benchmark.messe(fall.name, threads, fall.fabrik));
+                    }
+                }
+            }
+            try (Connection connection = pool.getConnection()) {
+                testdaten.entfernen(connection);
+            }
+            System.out.println(Messergebnis.kopfzeile());
+            for (Messergebnis e : ergebnisse) {
+                System.out.println(e);
+            }
+            L.info(pool.toString());
+            L.info(pipeline.toString());
+        } catch (SQLException e) {
+            L.error("Verbindungsaufbau gescheitert", e);
+        }
+    }
+
+    private static List<Fall> faelle(Testdaten testdaten, GebotPipeline pipeline) {
+        List<Fall> faelle = new ArrayList<>();
+        faelle.add(new Fall("createDeckung-jdbc", connection -> {
+            VersicherungService vs = new VersicherungService();
+            vs.setConnection(connection);
+            return (t, i) -> vs.createDeckung(testdaten.vertragOhneDeckung(streuen(t, i)), 1, DECKUNGSBETRAG);
+        }));
+        faelle.add(new Fall("createDeckung-dao", connection -> {
+            VersicherungServiceV2Adapter vs = new VersicherungServiceV2Adapter();
+            vs.setConnection(connection);
+            return (t, i) -> vs.createDeckung(testdaten.vertragOhneDeckung(streuen(t, i)), 1, DECKUNGSBETRAG);
+        }));
+        faelle.add(new Fall("createDeckung-plsql", connection -> {
+            VersicherungServicePlSql vs = new VersicherungServicePlSql();
+            vs.setConnection(connection);
+            return (t, i) -> vs.createDeckung(testdaten.vertragOhneDeckung(streuen(t, i)), 1, DECKUNGSBETRAG);
+        }));
+        faelle.add(new Fall("calcMonatsrate", connection -> {
+            VersicherungJdbc vj = new VersicherungJdbc();
+            vj.setConnection(connection);
+            return (t, i) -> vj.calcMonatsrate(testdaten.vertragMitDeckung(streuen(t, i)));
+        }));
+        faelle.add(new Fall("biete", connection -> {
+            AuktionsService as = new AuktionsService();
+            as.setConnection(connection);
+            return (t, i) -> as.biete(testdaten.angebot(streuen(t, i)), BigDecimal.valueOf(2 + i % 1000));
+        }));
+        faelle.add(new Fall("biete-atomar", connection -> {
+            AuktionsService as = new AuktionsService();
+            as.setConnection(connection);
+            as.setAtomaresBieten(true);
+            return (t, i) -> as.biete(testdaten.angebot(streuen(t, i)), BigDecimal.valueOf(2 + i % 1000));
+        }));
+        faelle.add(new Fall("biete-gruppe", connection -> {
+            AuktionsService as = new AuktionsService();
+            as.setConnection(connection);
+            as.setGebotPipeline(pipeline);
+            return (t, i) -> as.biete(testdaten.angebot(streuen(t, i)), BigDecimal.valueOf(2 + i % 1000));
+        }));
+        return faelle;
+    }
+
+    /**
+     * Verteilt die Threads auf unterschiedliche Datensaetze, damit sie nicht
+     * dieselben Zeilen sperren.
+     */
+    private static long streuen(int threadNr, long i) {
+        return threadNr * 7919L + i;
+    }
+
+    private static class Fall {
+        final String name;
+        final Benchmark.Fabrik fabrik;
+
+        Fall(String name, Benchmark.Fabrik fabrik) {
+            this.name = name;
+            this.fabrik = fabrik;
+        }
+    }
+}
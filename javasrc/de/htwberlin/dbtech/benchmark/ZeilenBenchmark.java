@@ -0,0 +1,105 @@
+package de.htwberlin.dbtech.benchmark;
+
+import de.htwberlin.dbtech.aufgaben.ue02.Kunde;
+import de.htwberlin.dbtech.aufgaben.ue02.VersicherungJdbc;
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.ConnectionPool;
+import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Misst die Allokation je gelesener Zeile beim Lesen aller Kunden: einmal wie
+ * bisher (Spalten ueber den Namen, java.sql.Date, ein Kunde je Zeile) und
+ * einmal mit VersicherungJdbc.alleKunden und einem wiederverwendeten Kunden.
+ * Ausgegeben werden die Messergebnisse und die allokierten Bytes je Zeile.
+ * <p>
+ * Einstellungen ueber System-Properties wie bei {@link VersicherungBenchmark};
+ * es werden 2 * benchmark.vertraege Kunden angelegt (Standard 10000).
+ */
+public class ZeilenBenchmark {
+    private static final Logger L = LoggerFactory.getLogger(ZeilenBenchmark.class);
+
+    public static void main(String[] args) {
+        int maxThreads = Integer.getInteger("benchmark.threads", 1);
+        int vertraege = Integer.getInteger("benchmark.vertraege", 10000);
+        long aufwaermenMs = Integer.getInteger("benchmark.aufwaermen", 3) * 1000L;
+        long messenMs = Integer.getInteger("benchmark.messen", 10) * 1000L;
+
+        Testdaten testdaten = new Testdaten(vertraege, 1);
+        try (ConnectionPool pool = JdbcUtils.createConnectionPool(DbCred.url, DbCred.user, DbCred.password,
+                1, maxThreads + 1)) {
+            long zeilen;
+            try (Connection connection = pool.getConnection()) {
+                testdaten.anlegen(connection);
+                zeilen = anzahlKunden(connection);
+            }
+            Benchmark benchmark = new Benchmark(pool, aufwaermenMs, messenMs);
+            List<Messergebnis> ergebnisse = new ArrayList<>();
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                ergebnisse.add(benchmark.messe("kunden-nach-name", threads, ZeilenBenchmark::nachName));
+                ergebnisse.add(benchmark.messe("kunden-flyweight", threads, ZeilenBenchmark::flyweight));
+            }
+            try (Connection connection = pool.getConnection()) {
+                testdaten.entfernen(connection);
+            }
+            System.out.println(Messergebnis.kopfzeile() + String.format(" %12s", "bytes/zeile"));
+            for (Messergebnis e : ergebnisse) {
+                double zeilenProSekunde = e.getDurchsatz() * zeilen;
+                double bytesProZeile = zeilenProSekunde == 0 ? 0.0
+                        : e.getAllokationMbProSekunde() * 1024 * 1024 / zeilenProSekunde;
+                System.out.println(e + String.format(" %12.1f", bytesProZeile));
+            }
+        } catch (SQLException e) {
+            L.error("Verbindungsaufbau gescheitert", e);
+        }
+    }
+
+    /**
+     * Die bisherige Abbildung, wie vor ZeilenMapper in findKundeById.
+     */
+    private static Benchmark.Operation nachName(Connection connection) {
+        long[] senke = new long[1];
+        return (t, i) -> {
+            try (PreparedStatement ps = connection.prepareStatement("select * from Kunde")) {
+                ps.setFetchSize(1000);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Kunde k = new Kunde(rs.getInt("ID"), rs.getString("Name"),
+                                rs.getDate("Geburtsdatum").toLocalDate());
+                        senke[0] += k.getGeburtsdatum().getDayOfYear();
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        };
+    }
+
+    private static Benchmark.Operation flyweight(Connection connection) {
+        VersicherungJdbc vj = new VersicherungJdbc();
+        vj.setConnection(connection);
+        Kunde flyweight = new Kunde();
+        long[] senke = new long[1];
+        return (t, i) -> vj.alleKunden(flyweight, k -> senke[0] += k.getGeburtsdatum().getDayOfYear());
+    }
+
+    private static long anzahlKunden(Connection connection) {
+        try (PreparedStatement ps = connection.prepareStatement("select count(*) from Kunde");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package de.htwberlin.dbtech.bsp.auktion;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 
 public class Angebot {
+    private static final Logger L = LoggerFactory.getLogger(Angebot.class);
+    private static final String HOECHSTES_GEBOT_SQL =
+            "select max(GebotsPreis) as HoechstesGebot, count(GID) as AnzahlGebote from Gebot where AID = ?";
+
     private Integer aid;
     private String artikelBez;
     private Timestamp auktionEndeZeitpunkt;
@@ -15,7 +25,12 @@ public class Angebot {
     // aktuellerPreis wird aus den Geboten berechnet
     // ist nicht Splate in der Tabelle Angebot
     // wird auch nicht in insert und aupdate behandelt
+    // erst beim ersten getAktuellerPreis bzw. getAnzahlGebote geladen
     private BigDecimal aktuellerPreis;
+    private int anzahlGebote;
+    private boolean geboteGeladen = false;
+    // nach der Uhr der Datenbank beim Laden durch den AngebotFinder
+    private boolean offen;
 
     private Connection connection = null;
 
@@ -23,7 +38,6 @@ public class Angebot {
         this.connection = connection;
     }
 
-    @SuppressWarnings("unused")
     private Connection useConnection() {
         if (connection == null) {
             throw new ServiceException("Service hat keine Connection");
@@ -63,10 +77,50 @@ public class Angebot {
         this.auktionMinPreis = auktionMinPreis;
     }
 
+    /**
+     * @return das hoechste Gebot, ohne Gebote der Mindestpreis. Wird beim ersten
+     * Aufruf mit einer Abfrage auf Gebot geladen.
+     */
     public BigDecimal getAktuellerPreis() {
+        ladeGebote();
         return aktuellerPreis;
     }
 
+    public int getAnzahlGebote() {
+        ladeGebote();
+        return anzahlGebote;
+    }
+
+    /**
+     * @return true, wenn die Auktion beim Laden noch nicht beendet war.
+     */
+    public boolean isOffen() {
+        return offen;
+    }
+
+    void setOffen(boolean offen) {
+        this.offen = offen;
+    }
+
+    private void ladeGebote() {
+        if (geboteGeladen) {
+            return;
+        }
+        try (PreparedStatement ps = useConnection().prepareStatement(HOECHSTES_GEBOT_SQL)) {
+            ps.setInt(1, aid);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                BigDecimal hoechstesGebot = rs.getBigDecimal("HoechstesGebot");
+                anzahlGebote = rs.getInt("AnzahlGebote");
+                aktuellerPreis = hoechstesGebot != null ? hoechstesGebot : auktionMinPreis;
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        geboteGeladen = true;
+    }
+
     public void insert() {
         // SQL-Code zum Speichern dieses Angebots in der Datenbank
     }
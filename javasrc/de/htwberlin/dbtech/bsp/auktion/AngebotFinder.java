@@ -1,11 +1,33 @@
 package de.htwberlin.dbtech.bsp.auktion;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Ein Finder gehoert zu einer Arbeitseinheit, z.B. einem Aufruf von biete.
+ * Jedes Angebot wird darin hoechstens einmal gelesen; weitere findById liefern
+ * dasselbe Objekt ohne Abfrage (Identity Map), auch fuer eine nicht vorhandene
+ * AID. Fuer eine neue Arbeitseinheit einen neuen Finder nehmen oder
+ * {@link #leeren} aufrufen.
+ */
 public class AngebotFinder {
+    private static final Logger L = LoggerFactory.getLogger(AngebotFinder.class);
+    private static final String FIND_SQL = String.join(" ",
+            "select AID, ArtikelBez, AuktionEndeZeitpunkt, AuktionMinPreis,",
+            "  case when AuktionEndeZeitpunkt >= current_timestamp then 1 else 0 end as Offen",
+            "from Angebot where AID = ?");
+
     private Connection connection = null;
+    private final Map<Integer, Angebot> geladen = new HashMap<>();
 
     public void setConnection(Connection connection) {
         this.connection = connection;
@@ -18,11 +40,41 @@ public class AngebotFinder {
         return connection;
     }
 
+    /**
+     * @return das Angebot oder null, wenn es die AID nicht gibt. Der aktuelle
+     * Preis wird erst bei Bedarf geladen.
+     */
     public Angebot findById(Integer aid) {
-        Angebot a = new Angebot();
-        a.setConnection(useConnection());
-        // Sql-Code zum Befuellen des Abgebotsobjekts
+        if (geladen.containsKey(aid)) {
+            return geladen.get(aid);
+        }
+        Angebot a = null;
+        try (PreparedStatement ps = useConnection().prepareStatement(FIND_SQL)) {
+            ps.setInt(1, aid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    a = new Angebot();
+                    a.setConnection(useConnection());
+                    a.setAid(rs.getInt("AID"));
+                    a.setArtikelBez(rs.getString("ArtikelBez"));
+                    a.setAuktionEndeZeitpunkt(rs.getTimestamp("AuktionEndeZeitpunkt"));
+                    a.setAuktionMinPreis(rs.getBigDecimal("AuktionMinPreis"));
+                    a.setOffen(rs.getInt("Offen") == 1);
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        geladen.put(aid, a);
         return a;
     }
 
+    /**
+     * Beendet die Arbeitseinheit; danach wird wieder aus der Datenbank gelesen.
+     */
+    public void leeren() {
+        geladen.clear();
+    }
+
 }
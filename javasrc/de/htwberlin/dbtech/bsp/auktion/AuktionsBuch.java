@@ -0,0 +1,350 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Die offenen Auktionen im Speicher: je AID Ende, Mindestpreis und hoechstes
+ * Gebot. Ein Gebot wird per compare-and-set gegen den aktuellen Stand geprueft
+ * und eingetragen, ohne Sperre und ohne Datenbankabfrage. Es gelten dieselben
+ * Regeln wie in AuktionsService.biete; die Zeit ist die Uhr der Anwendung, nicht
+ * current_timestamp der Datenbank.
+ * <p>
+ * Das Buch wird beim Start aus Angebot und Gebot geladen. Gebote muessen danach
+ * ausschliesslich ueber das Buch abgegeben werden; angenommene Gebote schreibt
+ * der {@link GebotSchreiber}. Eine im Buch unbekannte AID wird einmal in der
+ * Datenbank nachgeschlagen, so werden spaeter angelegte Angebote gefunden.
+ */
+public class AuktionsBuch {
+    private static final Logger L = LoggerFactory.getLogger(AuktionsBuch.class);
+    private static final String LADEN_SQL = String.join(" ",
+            "select a.AID, a.AuktionEndeZeitpunkt, a.AuktionMinPreis,",
+            "  max(g.GebotsPreis) as HoechstesGebot, count(g.GID) as AnzahlGebote",
+            "from Angebot a left join Gebot g on g.AID = a.AID");
+    private static final String GRUPPIERUNG = "group by a.AID, a.AuktionEndeZeitpunkt, a.AuktionMinPreis";
+
+    private final ConcurrentHashMap<Integer, AtomicReference<Stand>> auktionen = new ConcurrentHashMap<>();
+    private final DataSource dataSource;
+
+    /**
+     * @param dataSource zum Laden und Nachschlagen unbekannter AIDs; kann null
+     *                   sein, dann wird nur mit {@link #laden(Connection)}
+     *                   geladen.
+     */
+    public AuktionsBuch(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public int laden() {
+        if (dataSource == null) {
+            throw new DataException("DataSource not set");
+        }
+        try (Connection c = dataSource.getConnection()) {
+            return laden(c);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Liest alle Angebote mit ihrem hoechsten Gebot und ersetzt den Inhalt des
+     * Buchs. Noch nicht geschriebene Gebote muessen vorher geschrieben sein.
+     *
+     * @return die Anzahl der Auktionen.
+     */
+    public int laden(Connection connection) {
+        String sql = LADEN_SQL + " " + GRUPPIERUNG;
+        L.info(sql);
+        auktionen.clear();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Stand s = stand(rs);
+                    auktionen.put(s.aid, new AtomicReference<>(s));
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        L.info("auktionen: " + auktionen.size());
+        return auktionen.size();
+    }
+
+    /**
+     * Traegt ein neu angelegtes Angebot ohne Gebote ein, z.B. direkt nach dem
+     * Insert in Angebot. Ein vorhandener Stand bleibt unveraendert.
+     */
+    public void hinzufuegen(Integer aid, Timestamp auktionEndeZeitpunkt, BigDecimal auktionMinPreis) {
+        auktionen.putIfAbsent(aid, new AtomicReference<>(
+                new Stand(aid, auktionEndeZeitpunkt.getTime(), auktionMinPreis, null, 0)));
+    }
+
+    public BietErgebnis biete(Integer aid, BigDecimal gebotspreis) {
+        return biete(aid, gebotspreis, System.currentTimeMillis());
+    }
+
+    /**
+     * Prueft das Gebot und traegt es bei Erfolg als hoechstes Gebot ein.
+     */
+    public BietErgebnis biete(Integer aid, BigDecimal gebotspreis, long jetztMillis) {
+        return biete(aid, gebotspreis, jetztMillis, null);
+    }
+
+    /**
+     * Wie {@link #biete(Integer, BigDecimal, long)}; ein angenommenes Gebot wird
+     * danach an beiAnnahme uebergeben, z.B. an GebotSchreiber.uebergeben.
+     * Schlaegt die Uebergabe fehl, wird das Gebot per compare-and-set wieder
+     * ausgetragen und die Ausnahme weitergeworfen. Bis dahin war es fuer andere
+     * Gebote sichtbar; ein in dieser Zeit als zu niedrig abgelehntes Gebot bleibt
+     * abgelehnt.
+     *
+     * @param beiAnnahme kann null sein.
+     */
+    public BietErgebnis biete(Integer aid, BigDecimal gebotspreis, long jetztMillis, Runnable beiAnnahme) {
+        AtomicReference<Stand> auktion = auktion(aid);
+        if (auktion == null) {
+            return BietErgebnis.AID_UNBEKANNT;
+        }
+        while (true) {
+            Stand vorher = auktion.get();
+            BietErgebnis ergebnis = vorher.pruefe(gebotspreis, jetztMillis);
+            if (ergebnis != BietErgebnis.ANGENOMMEN) {
+                return ergebnis;
+            }
+            Stand neu = vorher.mitGebot(gebotspreis);
+            if (!auktion.compareAndSet(vorher, neu)) {
+                continue;
+            }
+            if (beiAnnahme != null) {
+                try {
+                    beiAnnahme.run();
+                } catch (RuntimeException | Error e) {
+                    Stand zurueck = auktion.updateAndGet(s -> s.ohneGebot(vorher, neu));
+                    L.warn("aid: " + aid + "  gebot zurueckgenommen: " + zurueck);
+                    throw e;
+                }
+            }
+            return ergebnis;
+        }
+    }
+
+    /**
+     * Traegt ein angenommenes Gebot wieder aus, das die Datenbank beim Schreiben
+     * abgewiesen hat. Ist es noch das hoechste Gebot, wird der Stand der AID
+     * ueber connection neu gelesen: der GebotSchreiber schreibt in der
+     * Reihenfolge der Annahme, die Gebote davor stehen also schon in der
+     * Tabelle, und ein spaeteres haette es abgeloest. Sonst bleibt das spaetere,
+     * hoehere Gebot stehen und nur die Anzahl sinkt. Eine Schliessung bleibt
+     * erhalten; gibt es das Angebot nicht mehr, wird die AID entfernt.
+     *
+     * @return der neue Stand oder null, wenn die AID unbekannt ist bzw. entfernt
+     *         wurde.
+     */
+    public Stand verwerfen(Integer aid, BigDecimal gebotspreis, Connection connection) {
+        AtomicReference<Stand> auktion = auktionen.get(aid);
+        if (auktion == null) {
+            return null;
+        }
+        while (true) {
+            Stand vorher = auktion.get();
+            Stand neu;
+            if (vorher.hoechstesGebot != null && vorher.hoechstesGebot.compareTo(gebotspreis) == 0) {
+                Stand gelesen = nachschlagen(connection, aid);
+                if (gelesen == null) {
+                    auktionen.remove(aid, auktion);
+                    L.warn("aid: " + aid + "  nicht mehr vorhanden, entfernt");
+                    return null;
+                }
+                neu = vorher.mitGeboten(gelesen);
+            } else {
+                neu = vorher.mitGeboten(vorher.hoechstesGebot, Math.max(0, vorher.anzahlGebote - 1));
+            }
+            if (auktion.compareAndSet(vorher, neu)) {
+                L.warn("aid: " + aid + "  gebot verworfen: " + neu);
+                return neu;
+            }
+        }
+    }
+
+    /**
+     * @return der aktuelle Stand oder null, wenn die AID unbekannt ist.
+     */
+    public Stand getStand(Integer aid) {
+        AtomicReference<Stand> auktion = auktion(aid);
+        return auktion == null ? null : auktion.get();
+    }
+
+    /**
+     * Markiert die Auktion als geschlossen; danach wird jedes Gebot mit BEENDET
+     * abgelehnt, auch wenn die Uhr der Anwendung nachgeht.
+     *
+     * @return der letzte Stand oder null, wenn die AID unbekannt ist.
+     */
+    public Stand schliessen(Integer aid) {
+        AtomicReference<Stand> auktion = auktionen.get(aid);
+        if (auktion == null) {
+            return null;
+        }
+        return auktion.updateAndGet(Stand::geschlossen);
+    }
+
+    public int getAnzahl() {
+        return auktionen.size();
+    }
+
+    private AtomicReference<Stand> auktion(Integer aid) {
+        AtomicReference<Stand> auktion = auktionen.get(aid);
+        if (auktion != null || dataSource == null) {
+            return auktion;
+        }
+        Stand s = nachschlagen(aid);
+        if (s == null) {
+            return null;
+        }
+        AtomicReference<Stand> vorhanden = auktionen.putIfAbsent(aid, new AtomicReference<>(s));
+        return vorhanden != null ? vorhanden : auktionen.get(aid);
+    }
+
+    private Stand nachschlagen(Integer aid) {
+        try (Connection c = dataSource.getConnection()) {
+            return nachschlagen(c, aid);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static Stand nachschlagen(Connection connection, Integer aid) {
+        String sql = LADEN_SQL + " where a.AID = ? " + GRUPPIERUNG;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, aid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? stand(rs) : null;
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static Stand stand(ResultSet rs) throws SQLException {
+        return new Stand(rs.getInt("AID"), rs.getTimestamp("AuktionEndeZeitpunkt").getTime(),
+                rs.getBigDecimal("AuktionMinPreis"), rs.getBigDecimal("HoechstesGebot"), rs.getInt("AnzahlGebote"));
+    }
+
+    /**
+     * Unveraenderlicher Stand einer Auktion; jede Aenderung ersetzt ihn.
+     */
+    public static class Stand {
+        private final int aid;
+        private final long endeMillis;
+        private final BigDecimal minPreis;
+        private final BigDecimal hoechstesGebot;
+        private final int anzahlGebote;
+        private final boolean geschlossen;
+
+        Stand(int aid, long endeMillis, BigDecimal minPreis, BigDecimal hoechstesGebot, int anzahlGebote) {
+            this(aid, endeMillis, minPreis, hoechstesGebot, anzahlGebote, false);
+        }
+
+        private Stand(int aid, long endeMillis, BigDecimal minPreis, BigDecimal hoechstesGebot, int anzahlGebote,
+                      boolean geschlossen) {
+            this.aid = aid;
+            this.endeMillis = endeMillis;
+            this.minPreis = minPreis;
+            this.hoechstesGebot = hoechstesGebot;
+            this.anzahlGebote = anzahlGebote;
+            this.geschlossen = geschlossen;
+        }
+
+        BietErgebnis pruefe(BigDecimal gebotspreis, long jetztMillis) {
+            if (geschlossen || jetztMillis > endeMillis) {
+                return BietErgebnis.BEENDET;
+            }
+            boolean ok = anzahlGebote == 0
+                    ? gebotspreis.compareTo(minPreis) >= 0
+                    : gebotspreis.compareTo(hoechstesGebot) > 0;
+            return ok ? BietErgebnis.ANGENOMMEN : BietErgebnis.ZU_NIEDRIG;
+        }
+
+        Stand mitGebot(BigDecimal gebotspreis) {
+            return new Stand(aid, endeMillis, minPreis, gebotspreis, anzahlGebote + 1, geschlossen);
+        }
+
+        /**
+         * Nimmt das Gebot, das aus vorher den Stand neu gemacht hat, wieder
+         * heraus. Kam seitdem kein Gebot hinzu, gilt wieder das hoechste Gebot von
+         * vorher, sonst bleibt das spaetere, hoehere Gebot stehen.
+         */
+        Stand ohneGebot(Stand vorher, Stand neu) {
+            if (anzahlGebote == neu.anzahlGebote) {
+                return new Stand(aid, endeMillis, minPreis, vorher.hoechstesGebot, vorher.anzahlGebote, geschlossen);
+            }
+            return new Stand(aid, endeMillis, minPreis, hoechstesGebot, anzahlGebote - 1, geschlossen);
+        }
+
+        Stand mitGeboten(Stand gelesen) {
+            return mitGeboten(gelesen.hoechstesGebot, gelesen.anzahlGebote);
+        }
+
+        Stand mitGeboten(BigDecimal hoechstesGebot, int anzahlGebote) {
+            return new Stand(aid, endeMillis, minPreis, hoechstesGebot, anzahlGebote, geschlossen);
+        }
+
+        Stand geschlossen() {
+            return geschlossen ? this : new Stand(aid, endeMillis, minPreis, hoechstesGebot, anzahlGebote, true);
+        }
+
+        public int getAid() {
+            return aid;
+        }
+
+        public long getEndeMillis() {
+            return endeMillis;
+        }
+
+        public BigDecimal getMinPreis() {
+            return minPreis;
+        }
+
+        /**
+         * @return das hoechste Gebot oder null, wenn es noch keines gibt.
+         */
+        public BigDecimal getHoechstesGebot() {
+            return hoechstesGebot;
+        }
+
+        public int getAnzahlGebote() {
+            return anzahlGebote;
+        }
+
+        public boolean isGeschlossen() {
+            return geschlossen;
+        }
+
+        public BigDecimal getAktuellerPreis() {
+            return hoechstesGebot != null ? hoechstesGebot : minPreis;
+        }
+
+        @Override
+        public String toString() {
+            return "Stand [aid=" + aid + ", endeMillis=" + endeMillis + ", minPreis=" + minPreis
+                    + ", hoechstesGebot=" + hoechstesGebot + ", anzahlGebote=" + anzahlGebote + ", geschlossen="
+                    + geschlossen + "]";
+        }
+    }
+}
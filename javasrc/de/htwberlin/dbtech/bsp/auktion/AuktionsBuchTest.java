@@ -0,0 +1,175 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+
+/**
+ * Prueft AuktionsBuch ohne Datenbank.
+ */
+public class AuktionsBuchTest {
+    private static final long JETZT = 1_000_000;
+    private AuktionsBuch buch;
+
+    @Before
+    public void setUp() {
+        buch = new AuktionsBuch(null);
+        buch.hinzufuegen(1, new Timestamp(JETZT + 1000), BigDecimal.TEN);
+    }
+
+    @Test
+    public void bieten() {
+        Assert.assertEquals(BietErgebnis.ZU_NIEDRIG, buch.biete(1, BigDecimal.ONE, JETZT));
+        Assert.assertEquals(BietErgebnis.ANGENOMMEN, buch.biete(1, BigDecimal.TEN, JETZT));
+        Assert.assertEquals(BietErgebnis.ZU_NIEDRIG, buch.biete(1, BigDecimal.TEN, JETZT));
+        Assert.assertEquals(BietErgebnis.BEENDET, buch.biete(1, BigDecimal.valueOf(20), JETZT + 1001));
+        Assert.assertEquals(BietErgebnis.AID_UNBEKANNT, buch.biete(2, BigDecimal.TEN, JETZT));
+        Assert.assertEquals(1, buch.getStand(1).getAnzahlGebote());
+    }
+
+    /**
+     * Schlaegt die Uebergabe fehl, steht das Gebot nicht im Buch.
+     */
+    @Test
+    public void uebergabeFehlgeschlagen() {
+        buch.biete(1, BigDecimal.valueOf(11), JETZT);
+        try {
+            buch.biete(1, BigDecimal.valueOf(12), JETZT, () -> {
+                throw new DataException("journal");
+            });
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        AuktionsBuch.Stand s = buch.getStand(1);
+        Assert.assertEquals(BigDecimal.valueOf(11), s.getHoechstesGebot());
+        Assert.assertEquals(1, s.getAnzahlGebote());
+        Assert.assertEquals(BietErgebnis.ANGENOMMEN, buch.biete(1, BigDecimal.valueOf(12), JETZT));
+    }
+
+    /**
+     * Kam waehrend der Uebergabe ein hoeheres Gebot hinzu, bleibt es das hoechste;
+     * eine Schliessung bleibt erhalten.
+     */
+    @Test
+    public void zuruecknehmenNachHoeheremGebot() {
+        try {
+            buch.biete(1, BigDecimal.valueOf(11), JETZT, () -> {
+                Assert.assertEquals(BietErgebnis.ANGENOMMEN, buch.biete(1, BigDecimal.valueOf(15), JETZT));
+                buch.schliessen(1);
+                throw new DataException("journal");
+            });
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        AuktionsBuch.Stand s = buch.getStand(1);
+        Assert.assertEquals(BigDecimal.valueOf(15), s.getHoechstesGebot());
+        Assert.assertEquals(1, s.getAnzahlGebote());
+        Assert.assertTrue(s.isGeschlossen());
+    }
+
+    @Test
+    public void erstesGebotZurueckgenommen() {
+        try {
+            buch.biete(1, BigDecimal.TEN, JETZT, () -> {
+                throw new DataException("journal");
+            });
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        AuktionsBuch.Stand s = buch.getStand(1);
+        Assert.assertNull(s.getHoechstesGebot());
+        Assert.assertEquals(0, s.getAnzahlGebote());
+        Assert.assertEquals(BigDecimal.TEN, s.getAktuellerPreis());
+    }
+
+    /**
+     * Ist das verworfene Gebot noch das hoechste, gilt der Stand der Datenbank.
+     */
+    @Test
+    public void verwerfenHoechstesGebot() {
+        buch.biete(1, BigDecimal.valueOf(11), JETZT);
+        buch.biete(1, BigDecimal.valueOf(12), JETZT);
+        buch.schliessen(1);
+        AuktionsBuch.Stand s = buch.verwerfen(1, BigDecimal.valueOf(12), gelesen(BigDecimal.valueOf(11), 1));
+        Assert.assertEquals(BigDecimal.valueOf(11), s.getHoechstesGebot());
+        Assert.assertEquals(1, s.getAnzahlGebote());
+        Assert.assertTrue(s.isGeschlossen());
+    }
+
+    /**
+     * Wurde das verworfene Gebot schon ueberboten, wird die Datenbank nicht
+     * gelesen und nur die Anzahl sinkt.
+     */
+    @Test
+    public void verwerfenNachHoeheremGebot() {
+        buch.biete(1, BigDecimal.valueOf(11), JETZT);
+        buch.biete(1, BigDecimal.valueOf(12), JETZT);
+        AuktionsBuch.Stand s = buch.verwerfen(1, BigDecimal.valueOf(11), null);
+        Assert.assertEquals(BigDecimal.valueOf(12), s.getHoechstesGebot());
+        Assert.assertEquals(1, s.getAnzahlGebote());
+    }
+
+    @Test
+    public void verwerfenAngebotEntfernt() {
+        buch.biete(1, BigDecimal.valueOf(11), JETZT);
+        Assert.assertNull(buch.verwerfen(1, BigDecimal.valueOf(11), gelesen(null, 0)));
+        Assert.assertNull(buch.getStand(1));
+    }
+
+    /**
+     * Eine Connection, deren Abfrage fuer AID 1 den gegebenen Stand liefert, bzw.
+     * keine Zeile, wenn anzahlGebote 0 und hoechstesGebot null ist.
+     */
+    private static Connection gelesen(BigDecimal hoechstesGebot, int anzahlGebote) {
+        boolean[] gelesen = {hoechstesGebot == null && anzahlGebote == 0};
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            boolean zeile = !gelesen[0];
+                            gelesen[0] = true;
+                            return zeile;
+                        case "getInt":
+                            return "AID".equals(args[0]) ? 1 : anzahlGebote;
+                        case "getTimestamp":
+                            return new Timestamp(JETZT + 1000);
+                        case "getBigDecimal":
+                            return "AuktionMinPreis".equals(args[0]) ? BigDecimal.TEN : hoechstesGebot;
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setInt":
+                        case "close":
+                            return null;
+                        case "executeQuery":
+                            return rs;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) {
+                        return ps;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
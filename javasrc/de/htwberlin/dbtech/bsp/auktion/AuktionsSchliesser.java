@@ -0,0 +1,325 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.JdbcUtils;
+import de.htwberlin.dbtech.utils.ZeitRad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schliesst Auktionen zu ihrem AuktionEndeZeitpunkt. Die Endzeitpunkte der
+ * offenen Auktionen liegen in einem {@link ZeitRad}; ein eigener Thread dreht
+ * es jeden Tick weiter. Eine faellige Auktion wird sofort im Speicher
+ * geschlossen (und im {@link AuktionsBuch}, falls gesetzt), so dass
+ * {@link #istBeendet} spaete Gebote ohne Abfrage ablehnt.
+ * <p>
+ * Das Ergebnis, d.h. das hoechste Gebot (bei gleichem Preis die kleinere GID),
+ * wird nach dem Nachlauf in Auktionsergebnis geschrieben: alle in einem Tick
+ * faelligen Auktionen zusammen, mit einem INSERT ... SELECT je 1000 AIDs und
+ * einem Commit. Schliessen tausende Auktionen in derselben Sekunde, sind das
+ * also wenige Anweisungen statt einer Abfrage je Auktion. Der Nachlauf gibt
+ * Geboten, die vor dem Ende angenommen, aber noch nicht geschrieben wurden
+ * (GebotSchreiber, GebotPipeline), Zeit bis zum Commit.
+ * <p>
+ * Schlaegt das Schreiben fehl, wird es im naechsten Tick wiederholt. Beim
+ * Schliessen nicht mehr geschriebene Ergebnisse holt das naechste
+ * {@link #laden} nach, weil es alle Angebote ohne Ergebnis einplant.
+ */
+public class AuktionsSchliesser implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(AuktionsSchliesser.class);
+    private static final String LADEN_SQL = String.join(" ",
+            "select a.AID, a.AuktionEndeZeitpunkt from Angebot a",
+            "where not exists (select 1 from Auktionsergebnis e where e.AID = a.AID)");
+    private static final String ERGEBNIS_SQL = String.join(" ",
+            "insert into Auktionsergebnis (AID, GID, Preis, Geschlossen)",
+            "select a.AID, g.GID, g.GebotsPreis, current_timestamp",
+            "from Angebot a",
+            "left join (select GID, AID, GebotsPreis,",
+            "                  row_number() over (partition by AID order by GebotsPreis desc, GID) as Rang",
+            "           from Gebot where AID in (%s)) g on g.AID = a.AID and g.Rang = 1",
+            "where a.AID in (%s)",
+            "and not exists (select 1 from Auktionsergebnis e where e.AID = a.AID)");
+    private static final long PAUSE_MS = 1000;
+    /**
+     * Voreinstellung fuer den Nachlauf: mehrere Wiederholungen des
+     * GebotSchreiber (Pause 1 s) und volle Gruppen der GebotPipeline.
+     */
+    private static final long NACHLAUF_MS = 10_000;
+
+    private final DataSource dataSource;
+    private final AuktionsBuch buch;
+    private final ZeitRad<Integer> rad;
+    private final Queue<Integer> neu = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Long> enden = new ConcurrentHashMap<>();
+    private final Set<Integer> geschlossen = ConcurrentHashMap.newKeySet();
+    private final Deque<Ausstehend> ausstehend = new ArrayDeque<>();
+    private final Thread thread;
+    private volatile boolean laufen = true;
+    private volatile long nachlaufMs = NACHLAUF_MS;
+    private final AtomicLong anzahlGeschlossen = new AtomicLong();
+    private final AtomicLong ergebnisse = new AtomicLong();
+    private final AtomicLong anweisungen = new AtomicLong();
+    private final AtomicLong fehlgeschlagen = new AtomicLong();
+    private volatile int maxJeTick = 0;
+
+    /**
+     * @param buch kann null sein, wenn Gebote nicht ueber ein AuktionsBuch
+     *             laufen.
+     */
+    public AuktionsSchliesser(DataSource dataSource, AuktionsBuch buch, long tickMillis) {
+        this.dataSource = dataSource;
+        this.buch = buch;
+        this.rad = new ZeitRad<>(tickMillis, System.currentTimeMillis());
+        this.thread = new Thread(this::drehen, "auktions-schliesser");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * So lange nach dem Schliessen im Speicher wird mit dem Schreiben des
+     * Ergebnisses gewartet; mindestens so lang wie ein Gebot im GebotSchreiber
+     * oder in der GebotPipeline bis zum Commit braucht. Voreinstellung 10 s; 0
+     * nur, wenn Gebote direkt committet werden. Ein Gebot, das erst nach dem
+     * Nachlauf committet wird, fehlt im Ergebnis.
+     */
+    public void setNachlaufMs(long nachlaufMs) {
+        this.nachlaufMs = nachlaufMs;
+    }
+
+    /**
+     * Plant alle Angebote ohne Ergebnis ein. Bereits abgelaufene werden im
+     * naechsten Tick geschlossen.
+     *
+     * @return die Anzahl eingeplanter Auktionen.
+     */
+    public int laden() {
+        L.info(LADEN_SQL);
+        int anzahl = 0;
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement(LADEN_SQL)) {
+            ps.setFetchSize(1000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    planen(rs.getInt(1), rs.getTimestamp(2));
+                    anzahl++;
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        L.info("eingeplant: " + anzahl);
+        return anzahl;
+    }
+
+    /**
+     * Plant eine Auktion ein, z.B. direkt nach dem Insert in Angebot.
+     */
+    public void planen(Integer aid, Timestamp auktionEndeZeitpunkt) {
+        if (geschlossen.contains(aid)) {
+            return;
+        }
+        enden.put(aid, auktionEndeZeitpunkt.getTime());
+        neu.add(aid);
+    }
+
+    /**
+     * Entscheidet ohne Datenbank, ob die Auktion beendet ist: geschlossen oder
+     * ihr Endzeitpunkt nach der Uhr der Anwendung vorbei.
+     *
+     * @return false auch fuer eine hier unbekannte AID.
+     */
+    public boolean istBeendet(Integer aid) {
+        if (geschlossen.contains(aid)) {
+            return true;
+        }
+        Long ende = enden.get(aid);
+        return ende != null && System.currentTimeMillis() > ende;
+    }
+
+    private void drehen() {
+        List<Integer> faellig = new ArrayList<>();
+        while (laufen) {
+            long jetzt = System.currentTimeMillis();
+            Integer aid;
+            while ((aid = neu.poll()) != null) {
+                Long ende = enden.get(aid);
+                if (ende != null) {
+                    rad.planen(ende, aid);
+                }
+            }
+            rad.weiter(jetzt, faellig::add);
+            if (!faellig.isEmpty()) {
+                schliessen(faellig, jetzt);
+                faellig.clear();
+            }
+            if (!ergebnisseSchreiben(jetzt)) {
+                pause(PAUSE_MS);
+                continue;
+            }
+            pause(rad.getTickMillis() - System.currentTimeMillis() % rad.getTickMillis());
+        }
+    }
+
+    private void schliessen(List<Integer> faellig, long jetzt) {
+        long schreiben = jetzt + nachlaufMs;
+        int anzahl = 0;
+        for (Integer aid : faellig) {
+            Long ende = enden.get(aid);
+            if (ende == null || ende > jetzt) {
+                // inzwischen mit spaeterem Ende neu eingeplant
+                continue;
+            }
+            geschlossen.add(aid);
+            enden.remove(aid);
+            if (buch != null) {
+                buch.schliessen(aid);
+            }
+            ausstehend.add(new Ausstehend(aid, schreiben));
+            anzahl++;
+        }
+        anzahlGeschlossen.addAndGet(anzahl);
+        if (anzahl > maxJeTick) {
+            maxJeTick = anzahl;
+        }
+    }
+
+    /**
+     * Schreibt die Ergebnisse aller Auktionen, deren Nachlauf vorbei ist.
+     *
+     * @return false, wenn das Schreiben fehlgeschlagen ist; die Auktionen
+     * bleiben dann ausstehend.
+     */
+    private boolean ergebnisseSchreiben(long jetzt) {
+        List<Integer> aids = new ArrayList<>();
+        for (Ausstehend a : ausstehend) {
+            if (a.schreibenMillis > jetzt) {
+                break;
+            }
+            aids.add(a.aid);
+        }
+        if (aids.isEmpty()) {
+            return true;
+        }
+        int geschrieben = 0;
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                for (List<Integer> teil : JdbcUtils.chunks(aids, JdbcUtils.MAX_IN_LIST)) {
+                    String platzhalter = JdbcUtils.placeholders(teil.size());
+                    try (PreparedStatement ps = c.prepareStatement(
+                            String.format(ERGEBNIS_SQL, platzhalter, platzhalter))) {
+                        for (int i = 0; i < teil.size(); i++) {
+                            ps.setInt(i + 1, teil.get(i));
+                            ps.setInt(teil.size() + i + 1, teil.get(i));
+                        }
+                        geschrieben += ps.executeUpdate();
+                        anweisungen.incrementAndGet();
+                    }
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            fehlgeschlagen.incrementAndGet();
+            L.error("ergebnisse nicht geschrieben: " + aids.size(), e);
+            return false;
+        }
+        for (int i = 0; i < aids.size(); i++) {
+            ausstehend.poll();
+        }
+        ergebnisse.addAndGet(geschrieben);
+        L.info("ergebnisse: " + geschrieben + " von " + aids.size());
+        return true;
+    }
+
+    private void pause(long ms) {
+        try {
+            Thread.sleep(Math.max(1, ms));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            laufen = false;
+        }
+    }
+
+    public long getGeschlossen() {
+        return anzahlGeschlossen.get();
+    }
+
+    public long getErgebnisse() {
+        return ergebnisse.get();
+    }
+
+    /**
+     * @return die Anzahl ausgefuehrter INSERT ... SELECT fuer Ergebnisse.
+     */
+    public long getAnweisungen() {
+        return anweisungen.get();
+    }
+
+    public long getFehlgeschlagen() {
+        return fehlgeschlagen.get();
+    }
+
+    /**
+     * @return die meisten in einem Tick geschlossenen Auktionen.
+     */
+    public int getMaxJeTick() {
+        return maxJeTick;
+    }
+
+    public int getOffen() {
+        return enden.size();
+    }
+
+    /**
+     * Beendet den Thread. Ausstehende Ergebnisse werden nicht mehr geschrieben,
+     * siehe {@link #laden}.
+     */
+    @Override
+    public void close() {
+        laufen = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        L.info("geschlossen: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return "AuktionsSchliesser [offen=" + getOffen() + ", geschlossen=" + getGeschlossen() + ", ergebnisse="
+                + getErgebnisse() + ", anweisungen=" + getAnweisungen() + ", fehlgeschlagen=" + getFehlgeschlagen()
+                + ", maxJeTick=" + getMaxJeTick() + "]";
+    }
+
+    private static class Ausstehend {
+        final Integer aid;
+        final long schreibenMillis;
+
+        Ausstehend(Integer aid, long schreibenMillis) {
+            this.aid = aid;
+            this.schreibenMillis = schreibenMillis;
+        }
+    }
+}
@@ -2,22 +2,153 @@ package de.htwberlin.dbtech.bsp.auktion;
 
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
+import de.htwberlin.dbtech.utils.IdAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
 
 public class AuktionsService implements IAuktionsService {
     private static final Logger L = LoggerFactory.getLogger(AuktionsService.class);
-    private Connection connection = null;
+    private final ConnectionProvider verbindung = new ConnectionProvider();
+    /**
+     * Prueft und fuegt in einem Roundtrip ein. Die Sperre auf die Angebotszeile
+     * reiht gleichzeitige Gebote auf dieselbe Auktion hintereinander; erst danach
+     * werden die Bedingungen im INSERT ... SELECT ausgewertet, so sieht jedes
+     * Gebot die vorher committeten. Ergebnis: Anzahl eingefuegter Zeilen, -1 fuer
+     * eine unbekannte AID. Ohne IdAllocator (GID null) wird max(GID) + 1
+     * genommen und bei einer Kollision wiederholt.
+     */
+    private static final String BIETEN_SQL = String.join(" ",
+            "declare",
+            "  v_aid Angebot.AID%type := ?;",
+            "  v_preis Gebot.GebotsPreis%type := ?;",
+            "  v_gid Gebot.GID%type := ?;",
+            "  v_sperre Angebot.AID%type;",
+            "  v_ergebnis integer;",
+            "begin",
+            "  begin",
+            "    select AID into v_sperre from Angebot where AID = v_aid for update;",
+            "  exception",
+            "    when no_data_found then v_ergebnis := -1;",
+            "  end;",
+            "  if v_ergebnis is null then",
+            "    for versuch in 1 .. 3 loop",
+            "      begin",
+            "        insert into Gebot (GID, AID, GebotsZeitpunkt, GebotsPreis)",
+            "          select coalesce(v_gid, (select coalesce(max(GID), 0) + 1 from Gebot)),",
+            "                 a.AID, current_timestamp, v_preis",
+            "          from Angebot a",
+            "          where a.AID = v_aid",
+            "            and a.AuktionEndeZeitpunkt >= current_timestamp",
+            "            and v_preis >= a.AuktionMinPreis",
+            "            and not exists (select 1 from Gebot g where g.AID = a.AID and g.GebotsPreis >= v_preis);",
+            "        v_ergebnis := sql%rowcount;",
+            "        exit;",
+            "      exception",
+            "        when dup_val_on_index then",
+            "          if v_gid is not null or versuch = 3 then",
+            "            raise;",
+            "          end if;",
+            "      end;",
+            "    end loop;",
+            "  end if;",
+            "  ? := v_ergebnis;",
+            "end;");
+    private IdAllocator gids;
+    private boolean atomaresBieten = false;
+    private AuktionsBuch buch;
+    private GebotSchreiber schreiber;
+    private BietMaschine maschine;
+    private GebotPipeline pipeline;
+    private AuktionsSchliesser schliesser;
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        verbindung.setConnection(connection);
+    }
+
+    /**
+     * Statt einer festen Connection leiht sich jede Operation eine Connection aus
+     * der DataSource. Der Dienst kann dann von mehreren Threads benutzt werden.
+     */
+    public void setDataSource(DataSource dataSource) {
+        verbindung.setDataSource(dataSource);
+    }
+
+    /**
+     * @return die mit setDataSource gesetzte DataSource oder null bei fester
+     *         Connection.
+     */
+    public DataSource getDataSource() {
+        return verbindung.getDataSource();
+    }
+
+    /**
+     * Ist ein IdAllocator gesetzt (z.B. ueber Gebot_Seq), werden GIDs daraus
+     * vergeben statt ueber max(GID) + 1. Nicht mit max(GID) + 1 auf derselben
+     * Tabelle mischen, auch nicht ueber AuktionsServiceDao: Gebot_Seq vergibt
+     * Bloecke ab 1000000, max(GID) + 1 kollidiert danach mit diesen Bloecken.
+     */
+    public void setGidAllocator(IdAllocator gids) {
+        this.gids = gids;
+    }
+
+    /**
+     * Schaltet das Bieten in einem Roundtrip ein bzw. aus. Pruefung und Insert
+     * laufen dann in einem Block, der auch bei gleichzeitigen Geboten auf dieselbe
+     * Auktion nur gueltige Gebote einfuegt. Nur fuer ein abgelehntes Gebot wird
+     * nachgefragt, ob die Auktion beendet oder der Preis zu niedrig war.
+     */
+    public void setAtomaresBieten(boolean atomaresBieten) {
+        this.atomaresBieten = atomaresBieten;
+    }
+
+    /**
+     * Entscheidet Gebote im Speicher und schreibt angenommene ueber den
+     * GebotSchreiber; biete braucht dann keine Connection. Beim Start zuerst
+     * GebotJournal.nachholen, dann AuktionsBuch.laden.
+     */
+    public void setAuktionsBuch(AuktionsBuch buch, GebotSchreiber schreiber) {
+        this.buch = buch;
+        this.schreiber = schreiber;
+        if (schreiber != null) {
+            schreiber.setAuktionsBuch(buch);
+        }
+    }
+
+    /**
+     * Gibt Gebote an die BietMaschine weiter und wartet auf das Ergebnis. Geht
+     * vor dem AuktionsBuch.
+     */
+    public void setBietMaschine(BietMaschine maschine) {
+        this.maschine = maschine;
+    }
+
+    /**
+     * Gepruefte Gebote werden nicht mehr einzeln mit autoCommit eingefuegt,
+     * sondern ueber die GebotPipeline gruppenweise mit einem Commit je Gruppe.
+     * biete kehrt erst nach diesem Commit zurueck. Die Pipeline schreibt ueber
+     * eigene Connections, nicht in der Transaktion der Connection des Dienstes.
+     */
+    public void setGebotPipeline(GebotPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Gebote auf Auktionen, die der AuktionsSchliesser als beendet kennt, werden
+     * ohne Datenbankzugriff abgelehnt.
+     */
+    public void setAuktionsSchliesser(AuktionsSchliesser schliesser) {
+        this.schliesser = schliesser;
     }
 
     private Connection useConnection() {
+        Connection connection = verbindung.getConnection();
         if (connection == null) {
             throw new ServiceException("Service hat keine Connection");
         }
@@ -26,18 +157,75 @@ public class AuktionsService implements IAuktionsService {
 
     @Override
     public void biete(Integer aid, BigDecimal gebotspreis) {
-        L.info("aid: " + aid + "  gebotspreis: " + gebotspreis);
-        if (!existiertAidInDb(aid)) {
-            throw new ServiceException("AID existiert nicht: " + aid);
+        if (maschine != null) {
+            L.info("aid: " + aid + "  gebotspreis: " + gebotspreis);
+            AsyncAusfuehrer.warte(maschine.biete(aid, gebotspreis)).pruefe(aid);
+            return;
         }
-        if (!istAuktionNochOffen(aid)) {
+        if (buch != null) {
+            bieteImBuch(aid, gebotspreis);
+            return;
+        }
+        if (schliesser != null && schliesser.istBeendet(aid)) {
+            L.info("aid: " + aid + "  beendet");
             throw new ServiceException("Auktion bereits beendet");
         }
-        if (!istGebotspreisOk(aid, gebotspreis)) {
+        verbindung.mitConnectionAusfuehren(() -> {
+            L.info("aid: " + aid + "  gebotspreis: " + gebotspreis);
+            if (atomaresBieten) {
+                bieteAtomar(aid, gebotspreis);
+                return;
+            }
+            if (!existiertAidInDb(aid)) {
+                throw new ServiceException("AID existiert nicht: " + aid);
+            }
+            if (!istAuktionNochOffen(aid)) {
+                throw new ServiceException("Auktion bereits beendet");
+            }
+            if (!istGebotspreisOk(aid, gebotspreis)) {
+                throw new ServiceException("Gebotspreis zu niedrig");
+            }
+
+            speichereGebot(aid, gebotspreis);
+        });
+    }
+
+    private void bieteImBuch(Integer aid, BigDecimal gebotspreis) {
+        L.info("aid: " + aid + "  gebotspreis: " + gebotspreis);
+        long jetzt = System.currentTimeMillis();
+        // erst nach der Uebergabe an den Schreiber gilt das Gebot; sonst wird es im Buch zurueckgenommen
+        buch.biete(aid, gebotspreis, jetzt, () -> schreiber.uebergeben(aid, gebotspreis, new Timestamp(jetzt)))
+                .pruefe(aid);
+    }
+
+    private void bieteAtomar(Integer aid, BigDecimal gebotspreis) {
+        int ergebnis;
+        try (CallableStatement cs = useConnection().prepareCall(BIETEN_SQL)) {
+            cs.setInt(1, aid);
+            cs.setBigDecimal(2, gebotspreis);
+            if (gids != null) {
+                cs.setInt(3, gids.nextInt());
+            } else {
+                cs.setNull(3, Types.INTEGER);
+            }
+            cs.registerOutParameter(4, Types.INTEGER);
+            cs.execute();
+            ergebnis = cs.getInt(4);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        L.info("ergebnis: " + ergebnis);
+        if (ergebnis == -1) {
+            throw new ServiceException("AID existiert nicht: " + aid);
+        }
+        if (ergebnis == 0) {
+            // abgelehnt: nur hier ein zweiter Roundtrip, um den Grund zu bestimmen
+            if (!istAuktionNochOffen(aid)) {
+                throw new ServiceException("Auktion bereits beendet");
+            }
             throw new ServiceException("Gebotspreis zu niedrig");
         }
-
-        speichereGebot(aid, gebotspreis);
     }
 
     private boolean existiertAidInDb(Integer aid) {
@@ -102,6 +290,10 @@ public class AuktionsService implements IAuktionsService {
     }
 
     private void speichereGebot(Integer aid, BigDecimal gebotspreis) {
+        if (pipeline != null) {
+            AsyncAusfuehrer.warte(pipeline.einreichen(aid, gebotspreis, new Timestamp(System.currentTimeMillis())));
+            return;
+        }
         String sql = "insert into Gebot values " + "(?,?, current_timestamp,?)";
         Integer neueGid = neueGid();
         try (PreparedStatement ps = useConnection().prepareStatement(sql)) {
@@ -116,6 +308,9 @@ public class AuktionsService implements IAuktionsService {
     }
 
     private Integer neueGid() {
+        if (gids != null) {
+            return gids.nextInt();
+        }
         String sql = "select max(gid) as maxgid from gebot";
         int neueGid = 1;
         try (Statement stmt = useConnection().createStatement()) {
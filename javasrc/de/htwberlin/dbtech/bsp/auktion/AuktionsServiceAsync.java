@@ -0,0 +1,38 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * biete aus {@link IAuktionsService} als CompletableFuture, begrenzt durch einen
+ * {@link AsyncAusfuehrer}. Ein abgelehntes Gebot schliesst das Future mit der
+ * ServiceException des Dienstes ab.
+ * <p>
+ * Bei mehr als einem gleichzeitigen Aufruf muss der Dienst ueber setDataSource
+ * konfiguriert sein, vor dem Erzeugen des Wrappers; eine feste Connection darf
+ * nicht von mehreren Threads benutzt werden.
+ */
+public class AuktionsServiceAsync {
+    private final AuktionsService dienst;
+    private final AsyncAusfuehrer ausfuehrer;
+
+    /**
+     * @throws IllegalArgumentException wenn der ausfuehrer mehr als einen Aufruf
+     *                                  gleichzeitig zulaesst und der Dienst
+     *                                  keine DataSource hat.
+     */
+    public AuktionsServiceAsync(AuktionsService dienst, AsyncAusfuehrer ausfuehrer) {
+        if (ausfuehrer.getMaxGleichzeitig() > 1 && dienst.getDataSource() == null) {
+            throw new IllegalArgumentException("maxGleichzeitig: " + ausfuehrer.getMaxGleichzeitig()
+                    + ", dienst ohne DataSource");
+        }
+        this.dienst = dienst;
+        this.ausfuehrer = ausfuehrer;
+    }
+
+    public CompletableFuture<Void> biete(Integer aid, BigDecimal gebotspreis) {
+        return ausfuehrer.ausfuehren(() -> dienst.biete(aid, gebotspreis));
+    }
+}
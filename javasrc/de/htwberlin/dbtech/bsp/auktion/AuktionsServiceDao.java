@@ -1,12 +1,16 @@
 package de.htwberlin.dbtech.bsp.auktion;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import de.htwberlin.dbtech.utils.IdAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.Timestamp;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 public class AuktionsServiceDao implements IAuktionsService {
     private static final Logger L = LoggerFactory.getLogger(AuktionsServiceDao.class);
@@ -24,43 +28,70 @@ public class AuktionsServiceDao implements IAuktionsService {
         return connection;
     }
 
-    private AngebotFinder angebotFinder = null;
-    private Angebot angebot = null;
+    private IdAllocator gids;
+
+    /**
+     * Ist ein IdAllocator gesetzt, kostet eine neue GID keine Abfrage. Ohne ihn
+     * wird max(GID) + 1 genommen. Die beiden Arten duerfen auf derselben Tabelle
+     * nicht gemischt werden: Gebot_Seq vergibt Bloecke ab 1000000, max(GID) + 1
+     * liegt nach dem ersten so vergebenen Gebot in einem dieser Bloecke und
+     * kollidiert mit spaeter daraus vergebenen GIDs.
+     */
+    public void setGidAllocator(IdAllocator gids) {
+        this.gids = gids;
+    }
 
+    /**
+     * Jeder Aufruf ist eine Arbeitseinheit mit eigenem Finder. Abfragen: das
+     * Angebot, fuer eine offene Auktion der aktuelle Preis, das Insert; mit
+     * IdAllocator keine weitere.
+     */
     @Override
     public void biete(Integer aid, BigDecimal gebotspreis) {
         L.info("aid: " + aid + "  gebotspreis: " + gebotspreis);
 
-        angebotFinder = new AngebotFinder();
+        AngebotFinder angebotFinder = new AngebotFinder();
         angebotFinder.setConnection(useConnection());
 
-        angebot = angebotFinder.findById(aid);
+        Angebot angebot = angebotFinder.findById(aid);
 
         if (angebot == null) {
             throw new ServiceException("AID existiert nicht: " + aid);
         }
 
-        Timestamp aktuellerZeitpunkt = null;
-        // hier Code zum Beschaffen des aktuellen Zeitpunkts
-
-        if (angebot.getAuktionEndeZeitpunkt().before(aktuellerZeitpunkt)) {
+        // nach der Uhr der Datenbank, beim Laden des Angebots bestimmt
+        if (!angebot.isOffen()) {
             throw new ServiceException("Auktion bereits beendet");
         }
 
-        if (gebotspreis.compareTo(angebot.getAktuellerPreis()) > 0) {
+        // erst hier wird der aktuelle Preis geladen
+        int vergleich = gebotspreis.compareTo(angebot.getAktuellerPreis());
+        if (angebot.getAnzahlGebote() == 0 ? vergleich < 0 : vergleich <= 0) {
             throw new ServiceException("Gebotspreis zu niedrig");
         }
 
         Gebot gebot = new Gebot();
         gebot.setConnection(useConnection());
-        Integer gid = null;
-        // hier Code zum Beschaffen einer neuen gid
-
-        gebot.setGid(gid);
+        gebot.setGid(neueGid());
         gebot.setAid(aid);
-        gebot.setGebotsZeitpunkt(aktuellerZeitpunkt);
+        // null: current_timestamp beim Insert
+        gebot.setGebotsZeitpunkt(null);
         gebot.setGebotsPreis(gebotspreis);
         gebot.insert();
     }
 
+    private Integer neueGid() {
+        if (gids != null) {
+            return gids.nextInt();
+        }
+        try (PreparedStatement ps = useConnection().prepareStatement("select coalesce(max(GID), 0) + 1 from Gebot");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
 }
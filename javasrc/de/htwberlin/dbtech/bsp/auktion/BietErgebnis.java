@@ -0,0 +1,29 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.ServiceException;
+
+/**
+ * Ausgang eines Gebots, wenn es ohne Datenbankabfrage entschieden wird.
+ */
+public enum BietErgebnis {
+    ANGENOMMEN,
+    AID_UNBEKANNT,
+    BEENDET,
+    ZU_NIEDRIG;
+
+    /**
+     * Wirft fuer ein abgelehntes Gebot dieselbe ServiceException wie
+     * AuktionsService.biete.
+     */
+    public void pruefe(Integer aid) {
+        switch (this) {
+            case AID_UNBEKANNT:
+                throw new ServiceException("AID existiert nicht: " + aid);
+            case BEENDET:
+                throw new ServiceException("Auktion bereits beendet");
+            case ZU_NIEDRIG:
+                throw new ServiceException("Gebotspreis zu niedrig");
+            default:
+        }
+    }
+}
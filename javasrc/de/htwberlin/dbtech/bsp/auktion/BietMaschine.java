@@ -0,0 +1,263 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Verarbeitet Gebote in einer festen Anzahl von Partitionen mit je einem
+ * Thread. Alle Gebote einer AID landen in derselben Partition und werden dort
+ * nacheinander in der Reihenfolge ihres Eingangs geprueft; zwischen Pruefung
+ * und Eintrag kann kein anderes Gebot derselben Auktion liegen. Die
+ * Warteschlangen sind lock-frei.
+ * <p>
+ * Geprueft wird gegen das {@link AuktionsBuch}, angenommene Gebote gehen an den
+ * {@link GebotSchreiber}; schlaegt die Uebergabe fehl, wird das Gebot im Buch
+ * zurueckgenommen und das Future mit der Ausnahme abgeschlossen. Das Future enthaelt das Ergebnis; ein abgelehntes Gebot
+ * ist kein Fehler, mit {@link BietErgebnis#pruefe} wird daraus die
+ * ServiceException von biete.
+ */
+public class BietMaschine implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(BietMaschine.class);
+    private static final long PARK_NANOS = 1_000_000;
+
+    private final AuktionsBuch buch;
+    private final GebotSchreiber schreiber;
+    private final Partition[] partitionen;
+    private volatile boolean laufen = true;
+
+    /**
+     * @param schreiber kann null sein, dann werden angenommene Gebote nur im Buch
+     *                  eingetragen.
+     */
+    public BietMaschine(AuktionsBuch buch, GebotSchreiber schreiber, int anzahlPartitionen) {
+        if (anzahlPartitionen < 1) {
+            throw new IllegalArgumentException("anzahlPartitionen: " + anzahlPartitionen);
+        }
+        this.buch = buch;
+        this.schreiber = schreiber;
+        if (schreiber != null) {
+            schreiber.setAuktionsBuch(buch);
+        }
+        this.partitionen = new Partition[anzahlPartitionen];
+        for (int i = 0; i < anzahlPartitionen; i++) {
+            partitionen[i] = new Partition(i);
+        }
+        for (Partition p : partitionen) {
+            p.thread.start();
+        }
+    }
+
+    public CompletableFuture<BietErgebnis> biete(Integer aid, BigDecimal gebotspreis) {
+        CompletableFuture<BietErgebnis> future = new CompletableFuture<>();
+        if (!laufen) {
+            future.completeExceptionally(new RejectedExecutionException("BietMaschine geschlossen"));
+            return future;
+        }
+        Partition p = partitionen[Math.floorMod(aid.hashCode(), partitionen.length)];
+        Auftrag auftrag = new Auftrag(aid, gebotspreis, future);
+        p.einstellen(auftrag);
+        // close kann zwischen Pruefung und Einstellen gelaufen sein; steht der Auftrag
+        // dann noch in der Schlange, nimmt ihn niemand mehr heraus
+        if (!laufen && p.entfernen(auftrag)) {
+            future.completeExceptionally(new RejectedExecutionException("BietMaschine geschlossen"));
+        }
+        return future;
+    }
+
+    /**
+     * @return die Kennzahlen aller Partitionen zum jetzigen Zeitpunkt.
+     */
+    public List<PartitionsMetrik> getMetriken() {
+        List<PartitionsMetrik> metriken = new ArrayList<>(partitionen.length);
+        for (Partition p : partitionen) {
+            metriken.add(p.metrik());
+        }
+        return metriken;
+    }
+
+    /**
+     * Verarbeitet die noch eingestellten Gebote und beendet die Threads. Jedes
+     * von biete gelieferte Future ist danach abgeschlossen.
+     */
+    @Override
+    public void close() {
+        laufen = false;
+        for (Partition p : partitionen) {
+            LockSupport.unpark(p.thread);
+        }
+        for (Partition p : partitionen) {
+            try {
+                p.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        // waehrend des Schliessens eingestellt, nicht mehr verarbeitet
+        for (Partition p : partitionen) {
+            Auftrag auftrag;
+            while ((auftrag = p.schlange.poll()) != null) {
+                p.tiefe.decrementAndGet();
+                auftrag.future.completeExceptionally(new RejectedExecutionException("BietMaschine geschlossen"));
+            }
+        }
+        L.info("geschlossen: " + getMetriken());
+    }
+
+    private static class Auftrag {
+        final Integer aid;
+        final BigDecimal gebotspreis;
+        final CompletableFuture<BietErgebnis> future;
+        final long eingangNanos = System.nanoTime();
+
+        Auftrag(Integer aid, BigDecimal gebotspreis, CompletableFuture<BietErgebnis> future) {
+            this.aid = aid;
+            this.gebotspreis = gebotspreis;
+            this.future = future;
+        }
+    }
+
+    private class Partition implements Runnable {
+        final int nr;
+        final Queue<Auftrag> schlange = new ConcurrentLinkedQueue<>();
+        final AtomicInteger tiefe = new AtomicInteger();
+        final Thread thread;
+        volatile boolean wartet = false;
+        final AtomicLong verarbeitet = new AtomicLong();
+        final AtomicLong summeLatenzNanos = new AtomicLong();
+        final AtomicLong maxLatenzNanos = new AtomicLong();
+        final AtomicInteger maxTiefe = new AtomicInteger();
+
+        Partition(int nr) {
+            this.nr = nr;
+            this.thread = new Thread(this, "biet-partition-" + nr);
+            this.thread.setDaemon(true);
+        }
+
+        void einstellen(Auftrag auftrag) {
+            schlange.offer(auftrag);
+            maxTiefe.accumulateAndGet(tiefe.incrementAndGet(), Math::max);
+            if (wartet) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * @return true, wenn der Auftrag noch in der Schlange stand.
+         */
+        boolean entfernen(Auftrag auftrag) {
+            if (schlange.remove(auftrag)) {
+                tiefe.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Auftrag auftrag = schlange.poll();
+                if (auftrag == null) {
+                    if (!laufen) {
+                        return;
+                    }
+                    wartet = true;
+                    // erneut pruefen, sonst kann ein gerade eingestellter Auftrag liegen bleiben
+                    if (schlange.isEmpty() && laufen) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    wartet = false;
+                    continue;
+                }
+                tiefe.decrementAndGet();
+                verarbeite(auftrag);
+            }
+        }
+
+        private void verarbeite(Auftrag auftrag) {
+            try {
+                long jetzt = System.currentTimeMillis();
+                Runnable uebergabe = schreiber == null ? null
+                        : () -> schreiber.uebergeben(auftrag.aid, auftrag.gebotspreis, new Timestamp(jetzt));
+                auftrag.future.complete(buch.biete(auftrag.aid, auftrag.gebotspreis, jetzt, uebergabe));
+            } catch (RuntimeException e) {
+                L.error("aid: " + auftrag.aid, e);
+                auftrag.future.completeExceptionally(e);
+            }
+            long latenz = System.nanoTime() - auftrag.eingangNanos;
+            verarbeitet.incrementAndGet();
+            summeLatenzNanos.addAndGet(latenz);
+            maxLatenzNanos.accumulateAndGet(latenz, Math::max);
+        }
+
+        PartitionsMetrik metrik() {
+            return new PartitionsMetrik(nr, tiefe.get(), maxTiefe.get(), verarbeitet.get(), summeLatenzNanos.get(),
+                    maxLatenzNanos.get());
+        }
+    }
+
+    /**
+     * Kennzahlen einer Partition: aktuelle und groesste Tiefe der Schlange,
+     * verarbeitete Gebote und Latenz vom Einstellen bis zum Abschluss des Futures.
+     */
+    public static class PartitionsMetrik {
+        private final int partition;
+        private final int tiefe;
+        private final int maxTiefe;
+        private final long verarbeitet;
+        private final long summeLatenzNanos;
+        private final long maxLatenzNanos;
+
+        PartitionsMetrik(int partition, int tiefe, int maxTiefe, long verarbeitet, long summeLatenzNanos,
+                         long maxLatenzNanos) {
+            this.partition = partition;
+            this.tiefe = tiefe;
+            this.maxTiefe = maxTiefe;
+            this.verarbeitet = verarbeitet;
+            this.summeLatenzNanos = summeLatenzNanos;
+            this.maxLatenzNanos = maxLatenzNanos;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public int getTiefe() {
+            return tiefe;
+        }
+
+        public int getMaxTiefe() {
+            return maxTiefe;
+        }
+
+        public long getVerarbeitet() {
+            return verarbeitet;
+        }
+
+        public double getMittlereLatenzMs() {
+            return verarbeitet == 0 ? 0.0 : summeLatenzNanos / 1e6 / verarbeitet;
+        }
+
+        public double getMaxLatenzMs() {
+            return maxLatenzNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Partition %d [tiefe=%d, maxTiefe=%d, verarbeitet=%d, mittel=%.3f ms, max=%.3f ms]",
+                    partition, tiefe, maxTiefe, verarbeitet, getMittlereLatenzMs(), getMaxLatenzMs());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.utils.AsyncAusfuehrer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Prueft BietMaschine mit einem AuktionsBuch ohne Datenbank und ohne
+ * GebotSchreiber.
+ */
+public class BietMaschineTest {
+    private static final Logger L = LoggerFactory.getLogger(BietMaschineTest.class);
+    private static final int AUKTIONEN = 8;
+    private AuktionsBuch buch;
+    private BietMaschine maschine;
+
+    @Before
+    public void setUp() {
+        buch = new AuktionsBuch(null);
+        Timestamp ende = new Timestamp(System.currentTimeMillis() + 3_600_000);
+        for (int aid = 1; aid <= AUKTIONEN; aid++) {
+            buch.hinzufuegen(aid, ende, BigDecimal.ONE);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (maschine != null) {
+            maschine.close();
+        }
+    }
+
+    /**
+     * Steigende Gebote einer AID werden in der Reihenfolge ihres Eingangs
+     * geprueft, also alle angenommen.
+     */
+    @Test
+    public void reihenfolgeJeAid() {
+        maschine = new BietMaschine(buch, null, 3);
+        List<CompletableFuture<BietErgebnis>> futures = new ArrayList<>();
+        for (int preis = 1; preis <= 1000; preis++) {
+            futures.add(maschine.biete(1, BigDecimal.valueOf(preis)));
+        }
+        for (CompletableFuture<BietErgebnis> f : futures) {
+            Assert.assertEquals(BietErgebnis.ANGENOMMEN, AsyncAusfuehrer.warte(f));
+        }
+        Assert.assertEquals(1000, buch.getStand(1).getAnzahlGebote());
+        Assert.assertEquals(BigDecimal.valueOf(1000), buch.getStand(1).getHoechstesGebot());
+    }
+
+    @Test
+    public void niedrigeresGebotAbgelehnt() {
+        maschine = new BietMaschine(buch, null, 2);
+        Assert.assertEquals(BietErgebnis.ANGENOMMEN, AsyncAusfuehrer.warte(maschine.biete(2, BigDecimal.TEN)));
+        Assert.assertEquals(BietErgebnis.ZU_NIEDRIG, AsyncAusfuehrer.warte(maschine.biete(2, BigDecimal.TEN)));
+        Assert.assertEquals(BietErgebnis.ZU_NIEDRIG, AsyncAusfuehrer.warte(maschine.biete(2, BigDecimal.ONE)));
+        Assert.assertEquals(BietErgebnis.AID_UNBEKANNT, AsyncAusfuehrer.warte(maschine.biete(99, BigDecimal.TEN)));
+        Assert.assertEquals(BigDecimal.TEN, buch.getStand(2).getHoechstesGebot());
+    }
+
+    /**
+     * Bieten mehrere Threads, waehrend geschlossen wird, ist danach jedes Future
+     * abgeschlossen: mit einem Ergebnis oder abgewiesen. Mehrere Runden, damit
+     * Gebote auch zwischen der Pruefung in biete und dem Leeren der Schlangen
+     * in close eintreffen.
+     */
+    @Test
+    public void schliessenSchliesstAlleFuturesAb() throws Exception {
+        for (int runde = 0; runde < 20; runde++) {
+            setUp();
+            maschine = new BietMaschine(buch, null, 2);
+            Queue<CompletableFuture<BietErgebnis>> futures = new ConcurrentLinkedQueue<>();
+            List<Thread> bieter = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 1; i <= 5_000; i++) {
+                        futures.add(maschine.biete(1 + i % AUKTIONEN, BigDecimal.valueOf(i)));
+                    }
+                });
+                bieter.add(thread);
+                thread.start();
+            }
+            while (futures.size() < 2_000) {
+                Thread.onSpinWait();
+            }
+            maschine.close();
+            for (Thread thread : bieter) {
+                thread.join();
+            }
+            int abgewiesen = 0;
+            for (CompletableFuture<BietErgebnis> f : futures) {
+                Assert.assertTrue("nicht abgeschlossen, runde " + runde, f.isDone());
+                try {
+                    Assert.assertNotNull(f.get());
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    abgewiesen++;
+                }
+            }
+            Assert.assertEquals(20_000, futures.size());
+            L.info("runde " + runde + ", abgewiesen: " + abgewiesen);
+            for (BietMaschine.PartitionsMetrik m : maschine.getMetriken()) {
+                Assert.assertEquals(0, m.getTiefe());
+            }
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package de.htwberlin.dbtech.bsp.auktion;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 
 public class Gebot {
+    private static final Logger L = LoggerFactory.getLogger(Gebot.class);
+    private static final String INSERT_SQL = String.join(" ",
+            "insert into Gebot (GID, AID, GebotsZeitpunkt, GebotsPreis)",
+            "values (?, ?, coalesce(?, current_timestamp), ?)");
+
     private Integer gid;
     private Integer aid;
     private Timestamp gebotsZeitpunkt;
@@ -18,7 +28,6 @@ public class Gebot {
         this.connection = connection;
     }
 
-    @SuppressWarnings("unused")
     private Connection useConnection() {
         if (connection == null) {
             throw new ServiceException("Service hat keine Connection");
@@ -58,8 +67,20 @@ public class Gebot {
         this.gebotsPreis = gebotsPreis;
     }
 
+    /**
+     * Ohne gebotsZeitpunkt wird current_timestamp der Datenbank eingefuegt.
+     */
     public void insert() {
-        // SQL-Code zum Speichern dieses Gebots in der Datenbank
+        try (PreparedStatement ps = useConnection().prepareStatement(INSERT_SQL)) {
+            ps.setInt(1, gid);
+            ps.setInt(2, aid);
+            ps.setTimestamp(3, gebotsZeitpunkt);
+            ps.setBigDecimal(4, gebotsPreis);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
     }
 
     public void update() {
@@ -1,11 +1,27 @@
 package de.htwberlin.dbtech.bsp.auktion;
 
+import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Wie {@link AngebotFinder}: eine Identity Map je Arbeitseinheit.
+ */
 public class GebotFinder {
+    private static final Logger L = LoggerFactory.getLogger(GebotFinder.class);
+    private static final String FIND_SQL =
+            "select GID, AID, GebotsZeitpunkt, GebotsPreis from Gebot where GID = ?";
+
     private Connection connection = null;
+    private final Map<Integer, Gebot> geladen = new HashMap<>();
 
     public void setConnection(Connection connection) {
         this.connection = connection;
@@ -18,11 +34,36 @@ public class GebotFinder {
         return connection;
     }
 
+    /**
+     * @return das Gebot oder null, wenn es die GID nicht gibt.
+     */
     public Gebot findById(Integer gid) {
-        Gebot g = new Gebot();
-        g.setConnection(useConnection());
-        // Sql-Code zum Befuellen des Gebotsobjekts
+        if (geladen.containsKey(gid)) {
+            return geladen.get(gid);
+        }
+        Gebot g = null;
+        try (PreparedStatement ps = useConnection().prepareStatement(FIND_SQL)) {
+            ps.setInt(1, gid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    g = new Gebot();
+                    g.setConnection(useConnection());
+                    g.setGid(rs.getInt("GID"));
+                    g.setAid(rs.getInt("AID"));
+                    g.setGebotsZeitpunkt(rs.getTimestamp("GebotsZeitpunkt"));
+                    g.setGebotsPreis(rs.getBigDecimal("GebotsPreis"));
+                }
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        geladen.put(gid, g);
         return g;
     }
 
+    public void leeren() {
+        geladen.clear();
+    }
+
 }
@@ -0,0 +1,298 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lokale Datei, in die ein angenommenes Gebot geschrieben wird, bevor biete
+ * zurueckkehrt. Damit ist das Gebot gesichert, auch wenn es noch nicht in der
+ * Tabelle Gebot steht. Committete Gebote werden je GID bestaetigt; sind alle
+ * eingetragenen bestaetigt, wird die Datei geleert. Unter Dauerlast wird sie
+ * verdichtet, sobald der vollstaendig bestaetigte Anfang groesser als
+ * verdichtenAbBytes ist: der Rest wird in eine neue Datei kopiert, die die alte
+ * ersetzt.
+ * <p>
+ * Nach einem Absturz traegt {@link #nachholen} die Gebote der Datei in die
+ * Tabelle nach; Gebote mit schon vorhandener GID werden uebersprungen. Nur mit
+ * Zeilenende abgeschlossene Zeilen zaehlen; eine unvollstaendige letzte Zeile
+ * stammt von einem Gebot, dessen biete nicht zurueckgekehrt ist, und wird
+ * verworfen. Schlaegt das Schreiben einer Zeile fehl, wird die Datei auf die
+ * letzte vollstaendige Zeile zurueckgeschnitten; gelingt auch das nicht, nimmt
+ * das Journal keine Gebote mehr an.
+ */
+public class GebotJournal implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(GebotJournal.class);
+    private static final String NACHHOLEN_SQL = String.join(" ",
+            "merge into Gebot g using (select ? as GID from dual) n on (g.GID = n.GID)",
+            "when not matched then insert (GID, AID, GebotsZeitpunkt, GebotsPreis) values (?, ?, ?, ?)");
+
+    private final Path datei;
+    private FileChannel kanal;
+    private boolean syncJeGebot = true;
+    private long verdichtenAbBytes = 1 << 20;
+    private boolean defekt = false;
+    private long groesse;
+    /**
+     * Ende des Anfangs der Datei, in dem alle Gebote bestaetigt sind.
+     */
+    private long bestaetigtBis = 0;
+    /**
+     * Die Eintraege nach bestaetigtBis in der Reihenfolge der Datei.
+     */
+    private final ArrayDeque<Eintrag> offen = new ArrayDeque<>();
+    private final Map<Integer, Eintrag> offenNachGid = new HashMap<>();
+
+    public GebotJournal(Path datei) {
+        this.datei = datei;
+        try {
+            this.kanal = oeffnen(datei);
+            this.groesse = kanal.size();
+        } catch (IOException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static FileChannel oeffnen(Path datei) throws IOException {
+        return FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Ohne Sync je Gebot liegt ein Gebot nach dem Eintragen nur im Puffer des
+     * Betriebssystems und ueberlebt einen Absturz der Anwendung, aber nicht des
+     * Rechners.
+     */
+    public synchronized void setSyncJeGebot(boolean syncJeGebot) {
+        this.syncJeGebot = syncJeGebot;
+    }
+
+    public synchronized void setVerdichtenAbBytes(long verdichtenAbBytes) {
+        this.verdichtenAbBytes = verdichtenAbBytes;
+    }
+
+    public synchronized void eintragen(Gebot gebot) {
+        if (defekt) {
+            throw new DataException("journal defekt: " + datei);
+        }
+        String zeile = gebot.getGid() + ";" + gebot.getAid() + ";" + gebot.getGebotsPreis().toPlainString() + ";"
+                + gebot.getGebotsZeitpunkt().getTime() + "\n";
+        ByteBuffer puffer = ByteBuffer.wrap(zeile.getBytes(StandardCharsets.US_ASCII));
+        try {
+            while (puffer.hasRemaining()) {
+                kanal.write(puffer);
+            }
+            if (syncJeGebot) {
+                kanal.force(false);
+            }
+        } catch (IOException e) {
+            L.error("", e);
+            zurueckschneiden();
+            throw new DataException(e);
+        }
+        groesse += puffer.capacity();
+        Eintrag eintrag = new Eintrag(groesse);
+        offen.addLast(eintrag);
+        offenNachGid.put(gebot.getGid(), eintrag);
+    }
+
+    /**
+     * Entfernt eine teilweise geschriebene Zeile, sonst wuerde die naechste Zeile
+     * an sie angehaengt.
+     */
+    private void zurueckschneiden() {
+        try {
+            kanal.truncate(groesse);
+            kanal.force(false);
+        } catch (IOException e) {
+            L.error("journal defekt: " + datei, e);
+            defekt = true;
+        }
+    }
+
+    /**
+     * Meldet, dass die Gebote committet sind oder nicht mehr geschrieben werden
+     * sollen. Sind alle eingetragenen Gebote bestaetigt, wird die Datei geleert.
+     */
+    public synchronized void bestaetigen(List<Gebot> gebote) {
+        for (Gebot g : gebote) {
+            Eintrag eintrag = offenNachGid.remove(g.getGid());
+            if (eintrag != null) {
+                eintrag.bestaetigt = true;
+            }
+        }
+        while (!offen.isEmpty() && offen.peekFirst().bestaetigt) {
+            bestaetigtBis = offen.pollFirst().ende;
+        }
+        try {
+            if (offen.isEmpty()) {
+                kanal.truncate(0);
+                kanal.force(false);
+                groesse = 0;
+                bestaetigtBis = 0;
+            } else if (bestaetigtBis >= verdichtenAbBytes) {
+                verdichten();
+            }
+        } catch (IOException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    /**
+     * Kopiert alles nach bestaetigtBis in eine neue Datei und ersetzt damit die
+     * alte. Schlaegt das fehl, bleibt die alte Datei unveraendert.
+     */
+    private void verdichten() throws IOException {
+        Path neu = datei.resolveSibling(datei.getFileName() + ".neu");
+        try (FileChannel lesen = FileChannel.open(datei, StandardOpenOption.READ);
+             FileChannel schreiben = FileChannel.open(neu, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = bestaetigtBis;
+            while (position < groesse) {
+                position += lesen.transferTo(position, groesse - position, schreiben);
+            }
+            schreiben.force(false);
+        }
+        Files.move(neu, datei, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        kanal.close();
+        kanal = oeffnen(datei);
+        for (Eintrag e : offen) {
+            e.ende -= bestaetigtBis;
+        }
+        L.info("verdichtet: " + bestaetigtBis + " -> " + (groesse - bestaetigtBis));
+        groesse -= bestaetigtBis;
+        bestaetigtBis = 0;
+    }
+
+    /**
+     * @return die Gebote der Datei, z.B. nach einem Absturz.
+     */
+    public synchronized List<Gebot> lesen() {
+        List<Gebot> gebote = new ArrayList<>();
+        try {
+            String inhalt = new String(Files.readAllBytes(datei), StandardCharsets.US_ASCII);
+            int anfang = 0;
+            int ende;
+            while ((ende = inhalt.indexOf('\n', anfang)) >= 0) {
+                String zeile = inhalt.substring(anfang, ende);
+                anfang = ende + 1;
+                String[] teile = zeile.split(";");
+                if (teile.length != 4) {
+                    L.warn("unvollstaendige zeile: " + zeile);
+                    continue;
+                }
+                Gebot g = new Gebot();
+                g.setGid(Integer.valueOf(teile[0]));
+                g.setAid(Integer.valueOf(teile[1]));
+                g.setGebotsPreis(new BigDecimal(teile[2]));
+                g.setGebotsZeitpunkt(new Timestamp(Long.parseLong(teile[3])));
+                gebote.add(g);
+            }
+            if (anfang < inhalt.length()) {
+                L.warn("unvollstaendige letzte zeile: " + inhalt.substring(anfang));
+            }
+        } catch (IOException | NumberFormatException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        return gebote;
+    }
+
+    /**
+     * Traegt die Gebote der Datei in die Tabelle Gebot nach, committet und leert
+     * die Datei. Muss vor dem Laden des {@link AuktionsBuch} laufen.
+     *
+     * @return die Anzahl der Gebote in der Datei.
+     */
+    public synchronized int nachholen(Connection connection) {
+        List<Gebot> gebote = lesen();
+        L.info("nachholen: " + gebote.size());
+        if (!gebote.isEmpty()) {
+            boolean autoCommit = true;
+            try {
+                autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement ps = connection.prepareStatement(NACHHOLEN_SQL)) {
+                    for (Gebot g : gebote) {
+                        ps.setInt(1, g.getGid());
+                        ps.setInt(2, g.getGid());
+                        ps.setInt(3, g.getAid());
+                        ps.setTimestamp(4, g.getGebotsZeitpunkt());
+                        ps.setBigDecimal(5, g.getGebotsPreis());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e2) {
+                    L.error("", e2);
+                }
+                L.error("", e);
+                throw new DataException(e);
+            } finally {
+                try {
+                    connection.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    L.error("", e);
+                }
+            }
+        }
+        offen.clear();
+        offenNachGid.clear();
+        try {
+            kanal.truncate(0);
+            kanal.force(false);
+            groesse = 0;
+            bestaetigtBis = 0;
+        } catch (IOException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+        return gebote.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            kanal.close();
+        } catch (IOException e) {
+            L.error("", e);
+        }
+    }
+
+    private static class Eintrag {
+        /**
+         * Offset hinter der Zeile.
+         */
+        long ende;
+        boolean bestaetigt = false;
+
+        Eintrag(long ende) {
+            this.ende = ende;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Prueft GebotJournal mit einer temporaeren Datei, ohne Datenbank.
+ */
+public class GebotJournalTest {
+    @Rule
+    public TemporaryFolder ordner = new TemporaryFolder();
+    private Path datei;
+    private GebotJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        datei = ordner.newFile("gebote.journal").toPath();
+    }
+
+    @After
+    public void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void nurVollstaendigeZeilen() throws IOException {
+        Files.write(datei, "1;10;5.50;1000\n2;10;6;2000\n3;10;7".getBytes(StandardCharsets.US_ASCII));
+        journal = new GebotJournal(datei);
+        List<Gebot> gebote = journal.lesen();
+        Assert.assertEquals(List.of(1, 2), gids(gebote));
+        Assert.assertEquals(0, new BigDecimal("5.50").compareTo(gebote.get(0).getGebotsPreis()));
+        Assert.assertEquals(new Timestamp(2000), gebote.get(1).getGebotsZeitpunkt());
+    }
+
+    /**
+     * Bestaetigt wird je GID, auch in anderer Reihenfolge als eingetragen; erst
+     * wenn alle bestaetigt sind, wird die Datei geleert.
+     */
+    @Test
+    public void bestaetigenJeGid() throws IOException {
+        journal = new GebotJournal(datei);
+        Gebot a = gebot(1);
+        Gebot b = gebot(2);
+        Gebot c = gebot(3);
+        journal.eintragen(a);
+        journal.eintragen(b);
+        journal.eintragen(c);
+        journal.bestaetigen(Arrays.asList(c, a));
+        Assert.assertEquals(List.of(1, 2, 3), gids(journal.lesen()));
+        journal.bestaetigen(List.of(b));
+        Assert.assertEquals(0, Files.size(datei));
+    }
+
+    /**
+     * Unter Dauerlast wird die Datei nie ganz bestaetigt; verdichtet wird bis zum
+     * ersten unbestaetigten Gebot.
+     */
+    @Test
+    public void verdichten() throws IOException {
+        journal = new GebotJournal(datei);
+        journal.setVerdichtenAbBytes(1);
+        Gebot a = gebot(1);
+        Gebot b = gebot(2);
+        Gebot c = gebot(3);
+        journal.eintragen(a);
+        journal.eintragen(b);
+        journal.eintragen(c);
+        journal.bestaetigen(List.of(a));
+        Assert.assertEquals(List.of(2, 3), gids(journal.lesen()));
+        journal.bestaetigen(List.of(c));
+        Assert.assertEquals(List.of(2, 3), gids(journal.lesen()));
+        Gebot d = gebot(4);
+        journal.eintragen(d);
+        journal.bestaetigen(List.of(b));
+        Assert.assertEquals(List.of(4), gids(journal.lesen()));
+        // nach dem Verdichten wird an die neue Datei angehaengt
+        Gebot e = gebot(5);
+        journal.eintragen(e);
+        journal.bestaetigen(List.of(d));
+        Assert.assertEquals(List.of(5), gids(journal.lesen()));
+        journal.bestaetigen(List.of(e));
+        Assert.assertEquals(0, Files.size(datei));
+    }
+
+    private static Gebot gebot(int gid) {
+        Gebot g = new Gebot();
+        g.setGid(gid);
+        g.setAid(10);
+        g.setGebotsPreis(BigDecimal.valueOf(gid));
+        g.setGebotsZeitpunkt(new Timestamp(1000L * gid));
+        return g;
+    }
+
+    private static List<Integer> gids(List<Gebot> gebote) {
+        return gebote.stream().map(Gebot::getGid).collect(Collectors.toList());
+    }
+}
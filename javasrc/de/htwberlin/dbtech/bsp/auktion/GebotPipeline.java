@@ -0,0 +1,372 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sammelt Gebote in einem begrenzten Ringpuffer und schreibt sie gruppenweise
+ * in die Tabelle Gebot: ein JDBC-Batch und ein Commit je Gruppe (group commit).
+ * Eine Gruppe wird geschrieben, sobald batchGroesse Gebote warten oder das
+ * aelteste flushIntervallMs alt ist. Die Futures einer Gruppe werden erst nach
+ * dem Commit abgeschlossen; wer darauf wartet, weiss also, dass sein Gebot
+ * gespeichert ist. Ist der Puffer voll, wartet einreichen.
+ * <p>
+ * Scheitert der Batch, wird die Gruppe zurueckgerollt und Gebot fuer Gebot
+ * wiederholt, damit ein fehlerhaftes Gebot nicht die anderen mitreisst.
+ * <p>
+ * Im Unterschied zum {@link GebotSchreiber} gilt ein Gebot erst mit dem Commit
+ * als gespeichert, ein Journal ist daher nicht noetig.
+ */
+public class GebotPipeline implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(GebotPipeline.class);
+    private static final String INSERT_SQL =
+            "insert into Gebot (GID, AID, GebotsZeitpunkt, GebotsPreis) values (?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final IdAllocator gids;
+    private final Eintrag[] ring;
+    private final ReentrantLock sperre = new ReentrantLock();
+    private final Condition bereit = sperre.newCondition();
+    private final Condition nichtVoll = sperre.newCondition();
+    private int kopf = 0;
+    private int anzahl = 0;
+    private boolean laufen = true;
+    private int batchGroesse = 100;
+    private long flushIntervallNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private final Thread thread;
+
+    private final AtomicLong gruppen = new AtomicLong();
+    private final AtomicLong geschrieben = new AtomicLong();
+    private final AtomicLong gebildet = new AtomicLong();
+    private final AtomicLong volleGruppen = new AtomicLong();
+    private final AtomicLong summeGruppengroesse = new AtomicLong();
+    private final AtomicLong summeBatchGroesse = new AtomicLong();
+    private final AtomicLong einzelnWiederholt = new AtomicLong();
+    private final AtomicLong fehlgeschlagen = new AtomicLong();
+    private final AtomicLong summeCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    /**
+     * @param kapazitaet Groesse des Ringpuffers, mindestens so gross wie die
+     *                   batchGroesse.
+     */
+    public GebotPipeline(DataSource dataSource, IdAllocator gids, int kapazitaet) {
+        if (kapazitaet < 1) {
+            throw new IllegalArgumentException("kapazitaet: " + kapazitaet);
+        }
+        this.dataSource = dataSource;
+        this.gids = gids;
+        this.ring = new Eintrag[kapazitaet];
+        this.batchGroesse = Math.min(batchGroesse, kapazitaet);
+        this.thread = new Thread(this::schreiben, "gebot-pipeline");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Hoechstens so viele Gebote je Batch und Commit; erreicht die Schlange
+     * diese Groesse, wird sofort geschrieben.
+     */
+    public void setBatchGroesse(int batchGroesse) {
+        if (batchGroesse < 1 || batchGroesse > ring.length) {
+            throw new IllegalArgumentException("batchGroesse: " + batchGroesse + ", kapazitaet: " + ring.length);
+        }
+        sperre.lock();
+        try {
+            this.batchGroesse = batchGroesse;
+            bereit.signal();
+        } finally {
+            sperre.unlock();
+        }
+    }
+
+    /**
+     * So lange wartet das aelteste Gebot hoechstens auf weitere, bevor seine
+     * Gruppe geschrieben wird. 0 schreibt sofort alles, was gerade wartet.
+     */
+    public void setFlushIntervallMs(long flushIntervallMs) {
+        if (flushIntervallMs < 0) {
+            throw new IllegalArgumentException("flushIntervallMs: " + flushIntervallMs);
+        }
+        sperre.lock();
+        try {
+            this.flushIntervallNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervallMs);
+            bereit.signal();
+        } finally {
+            sperre.unlock();
+        }
+    }
+
+    /**
+     * Vergibt die GID und stellt das Gebot in den Puffer.
+     *
+     * @return ein Future, das nach dem Commit der Gruppe mit dem Gebot
+     * abgeschlossen wird, bzw. mit einer DataException, wenn es nicht
+     * geschrieben werden konnte.
+     */
+    public CompletableFuture<Gebot> einreichen(Integer aid, BigDecimal gebotspreis, Timestamp zeitpunkt) {
+        Gebot gebot = new Gebot();
+        gebot.setGid(gids.nextInt());
+        gebot.setAid(aid);
+        gebot.setGebotsPreis(gebotspreis);
+        gebot.setGebotsZeitpunkt(zeitpunkt);
+        Eintrag eintrag = new Eintrag(gebot);
+        sperre.lock();
+        try {
+            while (anzahl == ring.length && laufen) {
+                nichtVoll.await();
+            }
+            if (!laufen) {
+                eintrag.future.completeExceptionally(new RejectedExecutionException("GebotPipeline geschlossen"));
+                return eintrag.future;
+            }
+            ring[(kopf + anzahl) % ring.length] = eintrag;
+            anzahl++;
+            if (anzahl == 1 || anzahl >= batchGroesse) {
+                bereit.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            eintrag.future.completeExceptionally(new DataException("unterbrochen, gebot nicht eingereicht"));
+        } finally {
+            sperre.unlock();
+        }
+        return eintrag.future;
+    }
+
+    private void schreiben() {
+        try {
+            List<Eintrag> gruppe;
+            while ((gruppe = naechsteGruppe()) != null) {
+                schreibe(gruppe);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            L.error("unterbrochen, ausstehend: " + getAusstehend());
+        }
+    }
+
+    /**
+     * Wartet, bis eine Gruppe voll oder ihre Frist abgelaufen ist, und nimmt sie
+     * aus dem Puffer.
+     *
+     * @return null, wenn die Pipeline geschlossen und der Puffer leer ist.
+     */
+    private List<Eintrag> naechsteGruppe() throws InterruptedException {
+        sperre.lock();
+        try {
+            while (anzahl == 0) {
+                if (!laufen) {
+                    return null;
+                }
+                bereit.await();
+            }
+            while (anzahl < batchGroesse && laufen) {
+                long rest = ring[kopf].eingangNanos + flushIntervallNanos - System.nanoTime();
+                if (rest <= 0) {
+                    break;
+                }
+                bereit.awaitNanos(rest);
+            }
+            int n = Math.min(anzahl, batchGroesse);
+            if (n == batchGroesse) {
+                volleGruppen.incrementAndGet();
+            }
+            gebildet.incrementAndGet();
+            summeGruppengroesse.addAndGet(n);
+            summeBatchGroesse.addAndGet(batchGroesse);
+            List<Eintrag> gruppe = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                gruppe.add(ring[kopf]);
+                ring[kopf] = null;
+                kopf = (kopf + 1) % ring.length;
+            }
+            anzahl -= n;
+            nichtVoll.signalAll();
+            return gruppe;
+        } finally {
+            sperre.unlock();
+        }
+    }
+
+    private void schreibe(List<Eintrag> gruppe) {
+        long start = System.nanoTime();
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(INSERT_SQL)) {
+                try {
+                    for (Eintrag e : gruppe) {
+                        setzeParameter(ps, e.gebot);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    L.warn("batch fehlgeschlagen, einzeln wiederholt: " + gruppe.size(), e);
+                    einzelnWiederholt.incrementAndGet();
+                    ps.clearBatch();
+                    schreibeEinzeln(c, ps, gruppe);
+                    return;
+                }
+                long dauer = System.nanoTime() - start;
+                summeCommitNanos.addAndGet(dauer);
+                maxCommitNanos.accumulateAndGet(dauer, Math::max);
+                gruppen.incrementAndGet();
+                geschrieben.addAndGet(gruppe.size());
+                for (Eintrag e : gruppe) {
+                    e.future.complete(e.gebot);
+                }
+            }
+        } catch (SQLException e) {
+            L.error("gruppe nicht geschrieben: " + gruppe.size(), e);
+            for (Eintrag eintrag : gruppe) {
+                if (eintrag.future.completeExceptionally(new DataException(e))) {
+                    fehlgeschlagen.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void schreibeEinzeln(Connection c, PreparedStatement ps, List<Eintrag> gruppe) throws SQLException {
+        for (Eintrag e : gruppe) {
+            if (e.future.isDone()) {
+                continue;
+            }
+            try {
+                setzeParameter(ps, e.gebot);
+                ps.executeUpdate();
+                c.commit();
+                geschrieben.incrementAndGet();
+                e.future.complete(e.gebot);
+            } catch (SQLException ex) {
+                c.rollback();
+                L.error("gid: " + e.gebot.getGid(), ex);
+                fehlgeschlagen.incrementAndGet();
+                e.future.completeExceptionally(new DataException(ex));
+            }
+        }
+    }
+
+    private static void setzeParameter(PreparedStatement ps, Gebot g) throws SQLException {
+        ps.setInt(1, g.getGid());
+        ps.setInt(2, g.getAid());
+        ps.setTimestamp(3, g.getGebotsZeitpunkt());
+        ps.setBigDecimal(4, g.getGebotsPreis());
+    }
+
+    public int getAusstehend() {
+        sperre.lock();
+        try {
+            return anzahl;
+        } finally {
+            sperre.unlock();
+        }
+    }
+
+    public long getGruppen() {
+        return gruppen.get();
+    }
+
+    public long getGeschrieben() {
+        return geschrieben.get();
+    }
+
+    public long getFehlgeschlagen() {
+        return fehlgeschlagen.get();
+    }
+
+    /**
+     * @return Gruppen, die wegen Fehlern Gebot fuer Gebot wiederholt wurden.
+     */
+    public long getEinzelnWiederholt() {
+        return einzelnWiederholt.get();
+    }
+
+    /**
+     * @return mittlere Fuellung der gebildeten Gruppen als Anteil der
+     * batchGroesse, zwischen 0 und 1.
+     */
+    public double getMittlereFuellung() {
+        long b = summeBatchGroesse.get();
+        return b == 0 ? 0.0 : (double) summeGruppengroesse.get() / b;
+    }
+
+    /**
+     * @return Anteil der Gruppen, die wegen voller batchGroesse statt wegen des
+     * Intervalls geschrieben wurden.
+     */
+    public double getAnteilVolleGruppen() {
+        long g = gebildet.get();
+        return g == 0 ? 0.0 : (double) volleGruppen.get() / g;
+    }
+
+    /**
+     * @return mittlere Dauer von Batch und Commit einer Gruppe.
+     */
+    public double getMittlereCommitLatenzMs() {
+        long g = gruppen.get();
+        return g == 0 ? 0.0 : summeCommitNanos.get() / 1e6 / g;
+    }
+
+    public double getMaxCommitLatenzMs() {
+        return maxCommitNanos.get() / 1e6;
+    }
+
+    /**
+     * Schreibt die restlichen Gebote des Puffers und beendet den Schreib-Thread.
+     * Danach eingereichte Gebote werden abgelehnt.
+     */
+    @Override
+    public void close() {
+        sperre.lock();
+        try {
+            laufen = false;
+            bereit.signalAll();
+            nichtVoll.signalAll();
+        } finally {
+            sperre.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        L.info("geschlossen: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GebotPipeline [ausstehend=%d, gruppen=%d, geschrieben=%d, fehlgeschlagen=%d, "
+                        + "fuellung=%.2f, voll=%.2f, commit=%.3f ms, maxCommit=%.3f ms]",
+                getAusstehend(), getGruppen(), getGeschrieben(), getFehlgeschlagen(), getMittlereFuellung(),
+                getAnteilVolleGruppen(), getMittlereCommitLatenzMs(), getMaxCommitLatenzMs());
+    }
+
+    private static class Eintrag {
+        final Gebot gebot;
+        final CompletableFuture<Gebot> future = new CompletableFuture<>();
+        final long eingangNanos = System.nanoTime();
+
+        Eintrag(Gebot gebot) {
+            this.gebot = gebot;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package de.htwberlin.dbtech.bsp.auktion;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import de.htwberlin.dbtech.utils.IdAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schreibt die im {@link AuktionsBuch} angenommenen Gebote im Hintergrund in
+ * Batches in die Tabelle Gebot (write-behind). Ein Gebot gilt als uebergeben,
+ * sobald es im {@link GebotJournal} steht; danach wird es in die Schlange
+ * gestellt. Ist die Schlange voll, wartet uebergeben (Gegendruck).
+ * <p>
+ * Schlaegt ein Batch fehl, werden seine Gebote einzeln mit je einem Commit
+ * geschrieben. Ein Gebot, das die Datenbank selbst abweist (Constraint oder
+ * ungueltiger Wert), wird protokolliert, verworfen, im Journal bestaetigt und
+ * aus dem AuktionsBuch ausgetragen; bei jedem anderen Fehler, z.B. ohne
+ * Verbindung, werden die restlichen Gebote nach einer Pause wiederholt. Beim Schliessen
+ * wird die Schlange noch geleert; was dann nicht mehr geschrieben werden kann,
+ * steht im Journal und wird beim naechsten Start nachgeholt.
+ */
+public class GebotSchreiber implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(GebotSchreiber.class);
+    private static final String INSERT_SQL =
+            "insert into Gebot (GID, AID, GebotsZeitpunkt, GebotsPreis) values (?, ?, ?, ?)";
+    private static final long PAUSE_MS = 1000;
+
+    private final DataSource dataSource;
+    private final IdAllocator gids;
+    private final GebotJournal journal;
+    private final BlockingQueue<Gebot> schlange;
+    private final Thread thread;
+    private volatile AuktionsBuch buch;
+    private volatile boolean laufen = true;
+    private volatile int batchGroesse = 500;
+    private final AtomicLong geschrieben = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong fehlgeschlagen = new AtomicLong();
+    private final AtomicLong verworfen = new AtomicLong();
+
+    /**
+     * @param journal kann null sein; dann sind uebergebene, noch nicht
+     *                geschriebene Gebote bei einem Absturz verloren.
+     */
+    public GebotSchreiber(DataSource dataSource, IdAllocator gids, GebotJournal journal, int kapazitaet) {
+        this.dataSource = dataSource;
+        this.gids = gids;
+        this.journal = journal;
+        this.schlange = new ArrayBlockingQueue<>(kapazitaet);
+        this.thread = new Thread(this::schreiben, "gebot-schreiber");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void setBatchGroesse(int batchGroesse) {
+        this.batchGroesse = batchGroesse;
+    }
+
+    /**
+     * Das Buch, dessen angenommene Gebote geschrieben werden; ein verworfenes
+     * Gebot wird dort mit AuktionsBuch.verwerfen wieder ausgetragen. Ohne Buch
+     * bleibt es dort das hoechste Gebot.
+     */
+    public void setAuktionsBuch(AuktionsBuch buch) {
+        this.buch = buch;
+    }
+
+    /**
+     * Vergibt die GID, sichert das Gebot im Journal und stellt es zum Schreiben
+     * ein. Wirft eine Ausnahme, wenn das Gebot nicht eingestellt wurde; es steht
+     * dann auch nicht (mehr) unbestaetigt im Journal.
+     */
+    public Gebot uebergeben(Integer aid, BigDecimal gebotspreis, Timestamp zeitpunkt) {
+        Gebot gebot = new Gebot();
+        gebot.setGid(gids.nextInt());
+        gebot.setAid(aid);
+        gebot.setGebotsPreis(gebotspreis);
+        gebot.setGebotsZeitpunkt(zeitpunkt);
+        if (journal != null) {
+            journal.eintragen(gebot);
+        }
+        try {
+            schlange.put(gebot);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (journal != null) {
+                // nicht eingestellt: beim Nachholen nicht mehr schreiben
+                journal.bestaetigen(Collections.singletonList(gebot));
+            }
+            throw new DataException("unterbrochen, gebot verworfen: " + gebot.getGid());
+        }
+        return gebot;
+    }
+
+    private void schreiben() {
+        List<Gebot> batch = new ArrayList<>();
+        while (laufen || !schlange.isEmpty()) {
+            try {
+                Gebot erstes = schlange.poll(100, TimeUnit.MILLISECONDS);
+                if (erstes == null) {
+                    continue;
+                }
+                batch.add(erstes);
+                schlange.drainTo(batch, batchGroesse - 1);
+                while (!schreibe(batch)) {
+                    if (!laufen) {
+                        L.error("beendet, nicht geschrieben: " + batch.size() + " + " + schlange.size());
+                        return;
+                    }
+                    Thread.sleep(PAUSE_MS);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false, wenn nicht alle Gebote geschrieben oder verworfen sind; die
+     *         restlichen stehen dann noch in batch.
+     */
+    private boolean schreibe(List<Gebot> batch) {
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(INSERT_SQL)) {
+                try {
+                    for (Gebot g : batch) {
+                        setzeParameter(ps, g);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    ps.clearBatch();
+                    L.warn("batch fehlgeschlagen, einzeln: " + batch.size(), e);
+                    schreibeEinzeln(c, ps, batch);
+                    return true;
+                }
+            }
+        } catch (SQLException e) {
+            fehlgeschlagen.incrementAndGet();
+            L.error("nicht geschrieben: " + batch.size(), e);
+            return false;
+        }
+        geschrieben.addAndGet(batch.size());
+        batches.incrementAndGet();
+        if (journal != null) {
+            journal.bestaetigen(batch);
+        }
+        batch.clear();
+        return true;
+    }
+
+    /**
+     * Schreibt die Gebote einzeln und entfernt jedes geschriebene oder verworfene
+     * aus der Liste. Ein anderer Fehler bricht ab, die restlichen Gebote bleiben
+     * in der Liste.
+     */
+    private void schreibeEinzeln(Connection c, PreparedStatement ps, List<Gebot> gebote) throws SQLException {
+        Iterator<Gebot> it = gebote.iterator();
+        while (it.hasNext()) {
+            Gebot g = it.next();
+            try {
+                setzeParameter(ps, g);
+                ps.executeUpdate();
+                c.commit();
+                geschrieben.incrementAndGet();
+            } catch (SQLIntegrityConstraintViolationException | SQLDataException e) {
+                c.rollback();
+                L.error("verworfen, gid: " + g.getGid(), e);
+                verworfen.incrementAndGet();
+                austragen(c, g);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+            it.remove();
+            if (journal != null) {
+                journal.bestaetigen(Collections.singletonList(g));
+            }
+        }
+    }
+
+    private void austragen(Connection c, Gebot g) {
+        AuktionsBuch b = buch;
+        if (b == null) {
+            return;
+        }
+        try {
+            b.verwerfen(g.getAid(), g.getGebotsPreis(), c);
+        } catch (DataException e) {
+            L.error("nicht aus dem buch ausgetragen, gid: " + g.getGid(), e);
+        }
+    }
+
+    private static void setzeParameter(PreparedStatement ps, Gebot g) throws SQLException {
+        ps.setInt(1, g.getGid());
+        ps.setInt(2, g.getAid());
+        ps.setTimestamp(3, g.getGebotsZeitpunkt());
+        ps.setBigDecimal(4, g.getGebotsPreis());
+    }
+
+    public int getAusstehend() {
+        return schlange.size();
+    }
+
+    public long getGeschrieben() {
+        return geschrieben.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getFehlgeschlagen() {
+        return fehlgeschlagen.get();
+    }
+
+    /**
+     * @return die Anzahl der von der Datenbank abgewiesenen und verworfenen
+     *         Gebote.
+     */
+    public long getVerworfen() {
+        return verworfen.get();
+    }
+
+    /**
+     * Schreibt die restlichen Gebote der Schlange und beendet den Schreib-Thread.
+     * Danach darf uebergeben nicht mehr aufgerufen werden.
+     */
+    @Override
+    public void close() {
+        laufen = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        L.info("geschlossen: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return "GebotSchreiber [ausstehend=" + getAusstehend() + ", geschrieben=" + getGeschrieben() + ", batches="
+                + getBatches() + ", fehlgeschlagen=" + getFehlgeschlagen() + ", verworfen=" + getVerworfen() + "]";
+    }
+}
@@ -1,18 +1,23 @@
 package de.htwberlin.dbtech.bsp.intro;
 
 import de.htwberlin.dbtech.bsp.raum.Raum;
+import de.htwberlin.dbtech.bsp.raum.RaumMapper;
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.RaumException;
 import de.htwberlin.dbtech.utils.DbCred;
+import de.htwberlin.dbtech.utils.QueryStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Jdbc {
     private static final Logger L = LoggerFactory.getLogger(Jdbc.class);
+    private static final RaumMapper RAUM_MAPPER = new RaumMapper();
 
     public static void main(String[] args) {
         L.info("Start");
@@ -35,18 +40,10 @@ public class Jdbc {
     static void selectAll(Connection c) {
         L.info("Start selectAll");
         String sql = "select RID, RaumNr from Raum";
-        L.info(sql);
-        try (Statement stmt = c.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) {
-                    Integer rid = rs.getInt("RID");
-                    String raumNr = rs.getString("RaumNr");
-                    System.out.printf("|%3d|%6s|%n", rid, raumNr);
-                }
-            }
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
+        // Die Zeilen werden einzeln gelesen und ausgegeben, nicht erst gesammelt
+        try (Stream<String> zeilen = QueryStream.of(c, sql,
+                rs -> String.format("|%3d|%6s|%n", rs.getInt("RID"), rs.getString("RaumNr")))) {
+            zeilen.forEach(System.out::print);
         }
         L.info("Ende selectAll");
     }
@@ -105,39 +102,45 @@ public class Jdbc {
 
     static List<String> createList(Connection c) {
         L.info("Start createList");
-        List<String> l = new LinkedList<>();
-        String sql = "select * from raum";
-        L.info(sql);
-        try (Statement stmt = c.createStatement()) {
-            try (ResultSet rs = stmt.executeQuery(sql)) {
-                while (rs.next()) {
-                    l.add(rs.getString("RaumNr"));
-                }
-            }
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
+        List<String> l;
+        try (Stream<String> raumNrn = streamRaumNr(c)) {
+            l = raumNrn.collect(Collectors.toCollection(LinkedList::new));
         }
         L.info(l.toString());
         L.info("Ende createList");
         return l;
     }
 
+    /**
+     * Wie createList, aber ohne die Liste aufzubauen. Der Stream muss geschlossen
+     * werden.
+     */
+    static Stream<String> streamRaumNr(Connection c) {
+        String sql = "select * from raum";
+        return QueryStream.of(c, sql, 500, ps -> {
+        }, rs -> rs.getString("RaumNr"));
+    }
+
     static Raum createObject(Connection c, int rid) {
+        return createObject(c, rid, new Raum());
+    }
+
+    /**
+     * Wie createObject, fuellt aber den uebergebenen Raum, statt einen neuen zu
+     * erzeugen.
+     */
+    static Raum createObject(Connection c, int rid, Raum r) {
         L.info("Start createObject");
         String sql = String.join(" ",
                 "select RID, RaumNr, AnzahlSitze",
                 "from Raum ",
                 "where rid=?");
         L.info(sql);
-        Raum r;
         try (PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, rid);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    String raumNr = rs.getString("RaumNr");
-                    int anzahlSitze = rs.getInt("AnzahlSitze");
-                    r = new Raum(rid, raumNr, anzahlSitze);
+                    RAUM_MAPPER.fuelle(rs, r);
                 } else {
                     throw new RaumException("rid existiert nicht in db: " + rid);
                 }
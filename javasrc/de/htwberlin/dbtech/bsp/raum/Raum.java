@@ -10,6 +10,9 @@ public class Raum {
         return "Raum [rid=" + rid + ", raumNr=" + raumNr + ", anzahlSitze=" + anzahlSitze + "]";
     }
 
+    public Raum() {
+    }
+
     public Raum(int rid, String raumNr, int anzahlSitze) {
         this.rid = rid;
         this.raumNr = raumNr;
@@ -0,0 +1,28 @@
+package de.htwberlin.dbtech.bsp.raum;
+
+import de.htwberlin.dbtech.utils.ZeilenMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Liest Raeume aus einer Abfrage mit den Spalten RID, RaumNr und AnzahlSitze.
+ */
+public class RaumMapper extends ZeilenMapper<Raum> {
+
+    public RaumMapper() {
+        super("RID", "RaumNr", "AnzahlSitze");
+    }
+
+    @Override
+    protected Raum neu() {
+        return new Raum();
+    }
+
+    @Override
+    protected void fuelle(ResultSet rs, int[] indizes, Raum ziel) throws SQLException {
+        ziel.setRid(rs.getInt(indizes[0]));
+        ziel.setRaumNr(rs.getString(indizes[1]));
+        ziel.setAnzahlSitze(rs.getInt(indizes[2]));
+    }
+}
@@ -2,9 +2,11 @@ package de.htwberlin.dbtech.bsp.raum;
 
 import de.htwberlin.dbtech.exceptions.DataException;
 import de.htwberlin.dbtech.exceptions.RaumException;
+import de.htwberlin.dbtech.utils.ConnectionProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,17 +14,26 @@ import java.sql.SQLException;
 
 public class RaumService implements IRaumService {
     private static final Logger L = LoggerFactory.getLogger(RaumService.class);
-    private Connection connection;
+    private final ConnectionProvider verbindung = new ConnectionProvider();
 
     @Override
     public void setConnection(Connection connection) {
-        this.connection = connection;
+        verbindung.setConnection(connection);
         L.debug("connection set");
     }
 
+    /**
+     * Statt einer festen Connection leiht sich jede Operation eine Connection aus
+     * der DataSource. Der Dienst kann dann von mehreren Threads benutzt werden.
+     */
+    public void setDataSource(DataSource dataSource) {
+        verbindung.setDataSource(dataSource);
+    }
+
     protected Connection useConnection() {
+        Connection connection = verbindung.getConnection();
         if (connection != null) {
-            return this.connection;
+            return connection;
         } else {
             throw new RuntimeException("Connection not existing");
         }
@@ -30,21 +41,23 @@ public class RaumService implements IRaumService {
 
     @Override
     public Integer findAnzahlPlaetzeInRaum(int rid) {
-        String sql = "select AnzahlSitze from Raum where RID=?";
-        L.info(sql);
-        try (PreparedStatement ps = useConnection().prepareStatement(sql)) {
-            ps.setInt(1, rid);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("AnzahlSitze");
-                } else {
-                    throw new RaumException("rid doesn't exist in db: " + rid);
+        return verbindung.mitConnection(() -> {
+            String sql = "select AnzahlSitze from Raum where RID=?";
+            L.info(sql);
+            try (PreparedStatement ps = useConnection().prepareStatement(sql)) {
+                ps.setInt(1, rid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return rs.getInt("AnzahlSitze");
+                    } else {
+                        throw new RaumException("rid doesn't exist in db: " + rid);
+                    }
                 }
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
             }
-        } catch (SQLException e) {
-            L.error("", e);
-            throw new DataException(e);
-        }
+        });
     }
 
 }
@@ -0,0 +1,217 @@
+package de.htwberlin.dbtech.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fuehrt blockierende Dienstaufrufe asynchron aus und liefert ein
+ * CompletableFuture. Hoechstens maxGleichzeitig Aufrufe laufen gleichzeitig,
+ * weitere warten in einer Schlange, ohne einen Thread zu belegen. So kann ein
+ * Aufrufer viele Operationen anstossen, waehrend die Datenbank nur so viele
+ * sieht, wie der ConnectionPool hergibt.
+ * <p>
+ * Das Future wird direkt mit der Ausnahme des Dienstes abgeschlossen, z.B. einer
+ * VersicherungException; {@link #warte} wirft sie wieder unveraendert.
+ * <p>
+ * Ohne eigenen Executor werden maxGleichzeitig Daemon-Threads benutzt. Ab Java
+ * 21 kann z.B. Executors.newVirtualThreadPerTaskExecutor() uebergeben werden.
+ */
+public class AsyncAusfuehrer implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(AsyncAusfuehrer.class);
+    private final Executor executor;
+    private final ExecutorService eigenerExecutor;
+    private final int maxGleichzeitig;
+    private final Queue<Auftrag> wartend = new ArrayDeque<>();
+    private int laufend = 0;
+    private final AtomicLong gestartet = new AtomicLong();
+    private final AtomicInteger maxWartend = new AtomicInteger();
+
+    public AsyncAusfuehrer(int maxGleichzeitig) {
+        this(null, maxGleichzeitig);
+    }
+
+    public AsyncAusfuehrer(Executor executor, int maxGleichzeitig) {
+        if (maxGleichzeitig < 1) {
+            throw new IllegalArgumentException("maxGleichzeitig: " + maxGleichzeitig);
+        }
+        this.maxGleichzeitig = maxGleichzeitig;
+        if (executor == null) {
+            AtomicInteger nr = new AtomicInteger();
+            this.eigenerExecutor = Executors.newFixedThreadPool(maxGleichzeitig, r -> {
+                Thread t = new Thread(r, "async-" + nr.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.executor = eigenerExecutor;
+        } else {
+            this.eigenerExecutor = null;
+            this.executor = executor;
+        }
+    }
+
+    public <T> CompletableFuture<T> ausfuehren(Supplier<T> aufgabe) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        einreihen(new Auftrag(future, () -> {
+            try {
+                future.complete(aufgabe.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    public CompletableFuture<Void> ausfuehren(Runnable aufgabe) {
+        return ausfuehren(() -> {
+            aufgabe.run();
+            return null;
+        });
+    }
+
+    private void einreihen(Auftrag auftrag) {
+        synchronized (this) {
+            if (laufend >= maxGleichzeitig) {
+                wartend.add(auftrag);
+                maxWartend.accumulateAndGet(wartend.size(), Math::max);
+                return;
+            }
+            laufend++;
+        }
+        if (!starte(auftrag)) {
+            fertig();
+        }
+    }
+
+    /**
+     * @return false, wenn der Executor den Auftrag abgelehnt hat; das Future ist
+     * dann mit der Ablehnung abgeschlossen.
+     */
+    private boolean starte(Auftrag auftrag) {
+        gestartet.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    auftrag.aufgabe.run();
+                } finally {
+                    fertig();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            L.error("", e);
+            auftrag.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /**
+     * Gibt den Platz eines beendeten Auftrags an den naechsten wartenden weiter.
+     */
+    private void fertig() {
+        while (true) {
+            Auftrag naechster;
+            synchronized (this) {
+                naechster = wartend.poll();
+                if (naechster == null) {
+                    laufend--;
+                    return;
+                }
+            }
+            if (starte(naechster)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wartet auf das Ergebnis. Eine Ausnahme des Dienstes wird unveraendert
+     * geworfen, nicht als CompletionException.
+     */
+    public static <T> T warte(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            throw entpacke(e.getCause());
+        }
+    }
+
+    /**
+     * @return die Ausnahme des Dienstes, auch wenn sie von einer abhaengigen
+     * Stufe in eine CompletionException verpackt wurde.
+     */
+    public static RuntimeException entpacke(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new CompletionException(e);
+    }
+
+    public int getMaxGleichzeitig() {
+        return maxGleichzeitig;
+    }
+
+    public synchronized int getLaufend() {
+        return laufend;
+    }
+
+    public synchronized int getWartend() {
+        return wartend.size();
+    }
+
+    public int getMaxWartend() {
+        return maxWartend.get();
+    }
+
+    public long getGestartet() {
+        return gestartet.get();
+    }
+
+    /**
+     * Beendet nur einen selbst erzeugten Executor; laufende Aufgaben werden
+     * noch abgeschlossen.
+     */
+    @Override
+    public void close() {
+        if (eigenerExecutor != null) {
+            eigenerExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncAusfuehrer [maxGleichzeitig=" + maxGleichzeitig + ", laufend=" + getLaufend() + ", wartend="
+                + getWartend() + ", gestartet=" + getGestartet() + "]";
+    }
+
+    private static class Auftrag {
+        final CompletableFuture<?> future;
+        final Runnable aufgabe;
+
+        Auftrag(CompletableFuture<?> future, Runnable aufgabe) {
+            this.future = future;
+            this.aufgabe = aufgabe;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package de.htwberlin.dbtech.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Einfacher Connection-Pool als DataSource. Es werden mindestens minGroesse und
+ * hoechstens maxGroesse physische Verbindungen gehalten. getConnection liefert
+ * eine Verbindung, deren close() sie an den Pool zurueckgibt.
+ * <p>
+ * Beim Ausleihen wird die Verbindung optional mit isValid geprueft. Ein
+ * Hintergrund-Thread schliesst Verbindungen, die laenger als maxLeerlauf
+ * unbenutzt waren, solange mehr als minGroesse vorhanden sind. Wartezeiten beim
+ * Ausleihen werden gezaehlt.
+ * <p>
+ * Je physischer Verbindung fuehrt der Pool einen {@link StatementCache}, den
+ * Dienste ueber {@link #getStatementCache(Connection)} nutzen koennen.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Erzeugt eine neue physische Verbindung.
+     */
+    public interface Quelle {
+        Connection oeffne() throws SQLException;
+    }
+
+    private final Quelle quelle;
+    private final int minGroesse;
+    private final int maxGroesse;
+    private volatile long maxWartezeitMs = 30_000;
+    private volatile long maxLeerlaufMs = 300_000;
+    private volatile boolean validierungBeimAusleihen = true;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frei = lock.newCondition();
+    private final Deque<Physisch> freieVerbindungen = new ArrayDeque<>();
+    private int anzahl = 0;
+    private int ausgeliehen = 0;
+    private boolean geschlossen = false;
+
+    private long ausleihen = 0;
+    private long gesamtWartezeitNanos = 0;
+    private long maxWartezeitNanos = 0;
+    private long zeitueberschreitungen = 0;
+    private long verworfen = 0;
+
+    private final ScheduledExecutorService aufraeumer;
+
+    public ConnectionPool(final String url, final String user, final String passwd, int minGroesse, int maxGroesse) {
+        this(() -> DriverManager.getConnection(url, user, passwd), minGroesse, maxGroesse);
+    }
+
+    public ConnectionPool(final DataSource ds, int minGroesse, int maxGroesse) {
+        this(ds::getConnection, minGroesse, maxGroesse);
+    }
+
+    public ConnectionPool(Quelle quelle, int minGroesse, int maxGroesse) {
+        if (minGroesse < 0 || maxGroesse < 1 || minGroesse > maxGroesse) {
+            throw new IllegalArgumentException("minGroesse: " + minGroesse + ", maxGroesse: " + maxGroesse);
+        }
+        this.quelle = quelle;
+        this.minGroesse = minGroesse;
+        this.maxGroesse = maxGroesse;
+        aufraeumer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-aufraeumer");
+            t.setDaemon(true);
+            return t;
+        });
+        aufraeumer.scheduleWithFixedDelay(this::aufraeumen, 10, 10, TimeUnit.SECONDS);
+        auffuellen();
+        L.info("pool started, min: " + minGroesse + ", max: " + maxGroesse);
+    }
+
+    public void setMaxWartezeitMs(long maxWartezeitMs) {
+        this.maxWartezeitMs = maxWartezeitMs;
+    }
+
+    public void setMaxLeerlaufMs(long maxLeerlaufMs) {
+        this.maxLeerlaufMs = maxLeerlaufMs;
+    }
+
+    public void setValidierungBeimAusleihen(boolean validierungBeimAusleihen) {
+        this.validierungBeimAusleihen = validierungBeimAusleihen;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long frist = start + TimeUnit.MILLISECONDS.toNanos(maxWartezeitMs);
+        while (true) {
+            Physisch p = null;
+            boolean neu = false;
+            lock.lock();
+            try {
+                while (p == null && !neu) {
+                    if (geschlossen) {
+                        throw new SQLException("pool closed");
+                    }
+                    p = freieVerbindungen.pollFirst();
+                    if (p == null) {
+                        if (anzahl < maxGroesse) {
+                            anzahl++;
+                            neu = true;
+                        } else {
+                            long rest = frist - System.nanoTime();
+                            if (rest <= 0) {
+                                zeitueberschreitungen++;
+                                throw new SQLException("no connection available after " + maxWartezeitMs + " ms");
+                            }
+                            frei.awaitNanos(rest);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for connection", e);
+            } finally {
+                lock.unlock();
+            }
+            if (neu) {
+                p = oeffne();
+            } else if (validierungBeimAusleihen && !istGueltig(p)) {
+                verwerfen(p);
+                continue;
+            }
+            lock.lock();
+            try {
+                ausgeliehen++;
+                ausleihen++;
+                long warten = System.nanoTime() - start;
+                gesamtWartezeitNanos += warten;
+                maxWartezeitNanos = Math.max(maxWartezeitNanos, warten);
+            } finally {
+                lock.unlock();
+            }
+            return p.ausleihen();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pool uses fixed credentials");
+    }
+
+    /**
+     * @return den StatementCache der physischen Verbindung hinter einer
+     * ausgeliehenen Verbindung dieses Pools.
+     */
+    public StatementCache getStatementCache(Connection ausgeliehen) {
+        if (!Proxy.isProxyClass(ausgeliehen.getClass())
+                || !(Proxy.getInvocationHandler(ausgeliehen) instanceof Ausleihe)) {
+            throw new IllegalArgumentException("connection is not from this pool");
+        }
+        return ((Ausleihe) Proxy.getInvocationHandler(ausgeliehen)).physisch.statements;
+    }
+
+    private Physisch oeffne() throws SQLException {
+        try {
+            return new Physisch(quelle.oeffne());
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                anzahl--;
+                frei.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean istGueltig(Physisch p) {
+        try {
+            return p.connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void zurueckgeben(Physisch p) {
+        boolean ok = true;
+        try {
+            if (!p.connection.getAutoCommit()) {
+                p.connection.rollback();
+                p.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            L.error("reset of returned connection failed", e);
+            ok = false;
+        }
+        lock.lock();
+        try {
+            ausgeliehen--;
+            if (ok && !geschlossen) {
+                p.zuletztBenutzt = System.nanoTime();
+                freieVerbindungen.addFirst(p);
+                frei.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        verwerfen(p);
+    }
+
+    private void verwerfen(Physisch p) {
+        p.schliessen();
+        lock.lock();
+        try {
+            anzahl--;
+            verworfen++;
+            frei.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void aufraeumen() {
+        List<Physisch> alt = new ArrayList<>();
+        long grenze = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(maxLeerlaufMs);
+        lock.lock();
+        try {
+            // die am laengsten unbenutzten liegen hinten
+            Iterator<Physisch> it = freieVerbindungen.descendingIterator();
+            while (it.hasNext() && anzahl - alt.size() > minGroesse) {
+                Physisch p = it.next();
+                if (p.zuletztBenutzt - grenze < 0) {
+                    it.remove();
+                    alt.add(p);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Physisch p : alt) {
+            verwerfen(p);
+        }
+        if (!alt.isEmpty()) {
+            L.info("closed idle connections: " + alt.size());
+        }
+        auffuellen();
+    }
+
+    private void auffuellen() {
+        while (true) {
+            lock.lock();
+            try {
+                if (geschlossen || anzahl >= minGroesse) {
+                    return;
+                }
+                anzahl++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                Physisch p = oeffne();
+                lock.lock();
+                try {
+                    p.zuletztBenutzt = System.nanoTime();
+                    freieVerbindungen.addLast(p);
+                    frei.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException | RuntimeException e) {
+                L.error("could not open connection", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Schliesst alle freien Verbindungen. Ausgeliehene Verbindungen werden bei
+     * ihrer Rueckgabe geschlossen.
+     */
+    @Override
+    public void close() {
+        aufraeumer.shutdownNow();
+        List<Physisch> alle;
+        lock.lock();
+        try {
+            geschlossen = true;
+            alle = new ArrayList<>(freieVerbindungen);
+            freieVerbindungen.clear();
+            frei.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Physisch p : alle) {
+            verwerfen(p);
+        }
+        L.info("pool closed");
+    }
+
+    public int getAnzahl() {
+        lock.lock();
+        try {
+            return anzahl;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getAusgeliehen() {
+        lock.lock();
+        try {
+            return ausgeliehen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAusleihen() {
+        lock.lock();
+        try {
+            return ausleihen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getMittlereWartezeitMs() {
+        lock.lock();
+        try {
+            return ausleihen == 0 ? 0.0 : gesamtWartezeitNanos / 1e6 / ausleihen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getMaxWartezeitMs() {
+        lock.lock();
+        try {
+            return maxWartezeitNanos / 1e6;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getZeitueberschreitungen() {
+        lock.lock();
+        try {
+            return zeitueberschreitungen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getVerworfen() {
+        lock.lock();
+        try {
+            return verworfen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool [anzahl=" + getAnzahl() + ", ausgeliehen=" + getAusgeliehen() + ", ausleihen="
+                + getAusleihen() + ", mittlereWartezeitMs=" + getMittlereWartezeitMs() + ", maxWartezeitMs="
+                + getMaxWartezeitMs() + ", zeitueberschreitungen=" + getZeitueberschreitungen() + "]";
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private class Physisch {
+        final Connection connection;
+        final StatementCache statements;
+        long zuletztBenutzt;
+
+        Physisch(Connection connection) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection);
+        }
+
+        Connection ausleihen() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Ausleihe(this));
+        }
+
+        void schliessen() {
+            statements.close();
+            JdbcUtils.closeConnectionQuietly(connection);
+        }
+    }
+
+    /**
+     * Die an den Aufrufer ausgegebene Sicht auf eine physische Verbindung.
+     * close() gibt sie an den Pool zurueck, danach ist sie unbrauchbar.
+     */
+    private class Ausleihe implements InvocationHandler {
+        final Physisch physisch;
+        boolean zurueckgegeben = false;
+
+        Ausleihe(Physisch physisch) {
+            this.physisch = physisch;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!zurueckgegeben) {
+                        zurueckgegeben = true;
+                        zurueckgeben(physisch);
+                    }
+                    return null;
+                case "isClosed":
+                    return zurueckgegeben || physisch.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "pooled " + physisch.connection;
+                default:
+                    if (zurueckgegeben) {
+                        throw new SQLException("connection already returned to pool");
+                    }
+                    try {
+                        return method.invoke(physisch.connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
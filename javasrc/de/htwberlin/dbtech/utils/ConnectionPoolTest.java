@@ -0,0 +1,223 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueft ConnectionPool und ConnectionProvider mit nachgebildeten
+ * Verbindungen, ohne Datenbank.
+ */
+public class ConnectionPoolTest {
+    private final List<Verbindung> geoeffnet = Collections.synchronizedList(new ArrayList<>());
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        geoeffnet.clear();
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private ConnectionPool pool(int minGroesse, int maxGroesse) {
+        pool = new ConnectionPool(() -> {
+            Verbindung v = new Verbindung();
+            geoeffnet.add(v);
+            return v.connection;
+        }, minGroesse, maxGroesse);
+        return pool;
+    }
+
+    @Test
+    public void zurueckgebenUndWiederverwenden() throws SQLException {
+        pool(1, 2);
+        Connection c = pool.getConnection();
+        Assert.assertEquals(1, pool.getAusgeliehen());
+        c.close();
+        c.close();
+        Assert.assertTrue(c.isClosed());
+        Assert.assertEquals(0, pool.getAusgeliehen());
+        try {
+            c.getAutoCommit();
+            Assert.fail("Verbindung nach close benutzbar");
+        } catch (SQLException e) {
+            // erwartet
+        }
+        pool.getConnection().close();
+        Assert.assertEquals(1, geoeffnet.size());
+        Assert.assertEquals(2, pool.getAusleihen());
+    }
+
+    /**
+     * Eine ungueltige freie Verbindung wird beim Ausleihen verworfen und durch
+     * eine neue ersetzt; ohne Validierung wird sie ausgegeben.
+     */
+    @Test
+    public void validierungBeimAusleihen() throws SQLException {
+        pool(1, 1);
+        geoeffnet.get(0).gueltig = false;
+        try (Connection c = pool.getConnection()) {
+            Assert.assertFalse(c.isClosed());
+        }
+        Assert.assertEquals(2, geoeffnet.size());
+        Assert.assertTrue(geoeffnet.get(0).geschlossen);
+        Assert.assertEquals(1, pool.getVerworfen());
+        Assert.assertEquals(1, pool.getAnzahl());
+
+        geoeffnet.get(1).gueltig = false;
+        pool.setValidierungBeimAusleihen(false);
+        try (Connection c = pool.getConnection()) {
+            Assert.assertFalse(c.isClosed());
+        }
+        Assert.assertEquals(2, geoeffnet.size());
+        Assert.assertEquals(1, pool.getVerworfen());
+    }
+
+    @Test
+    public void maxWartezeit() throws Exception {
+        pool(0, 1);
+        pool.setMaxWartezeitMs(100);
+        Connection c = pool.getConnection();
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            Assert.fail("keine Zeitueberschreitung");
+        } catch (SQLException e) {
+            // erwartet
+        }
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals(1, pool.getZeitueberschreitungen());
+
+        // ein wartender Thread bekommt die zurueckgegebene Verbindung
+        pool.setMaxWartezeitMs(5000);
+        CompletableFuture<Connection> wartend = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection();
+            } catch (SQLException e) {
+                throw new DataException(e);
+            }
+        });
+        Thread.sleep(50);
+        Assert.assertFalse(wartend.isDone());
+        c.close();
+        wartend.get(5, TimeUnit.SECONDS).close();
+        Assert.assertEquals(1, geoeffnet.size());
+    }
+
+    /**
+     * Laenger als maxLeerlauf unbenutzte Verbindungen werden bis auf minGroesse
+     * geschlossen, ausgeliehene bleiben.
+     */
+    @Test
+    public void leerlaufAufraeumen() throws SQLException {
+        pool(1, 4);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        Connection d = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+        pool.setMaxLeerlaufMs(0);
+        pool.aufraeumen();
+        // die ausgeliehene zaehlt zu minGroesse
+        Assert.assertEquals(1, pool.getAnzahl());
+        Assert.assertEquals(1, pool.getAusgeliehen());
+        Assert.assertEquals(3, geoeffnet.stream().filter(v -> v.geschlossen).count());
+        Assert.assertFalse(d.isClosed());
+        d.close();
+        pool.aufraeumen();
+        Assert.assertEquals(1, pool.getAnzahl());
+        Assert.assertEquals(3, geoeffnet.stream().filter(v -> v.geschlossen).count());
+
+        pool.setMaxLeerlaufMs(60_000);
+        pool.getConnection().close();
+        pool.aufraeumen();
+        Assert.assertEquals(1, pool.getAnzahl());
+    }
+
+    /**
+     * Verschachtelte Operationen eines Threads teilen sich eine geliehene
+     * Connection; sie wird erst am Ende der aeussersten zurueckgegeben, auch bei
+     * einer Ausnahme.
+     */
+    @Test
+    public void verschachtelteAusleihe() {
+        pool(0, 2);
+        ConnectionProvider verbindung = new ConnectionProvider();
+        verbindung.setDataSource(pool);
+        verbindung.mitConnectionAusfuehren(() -> {
+            Connection aussen = verbindung.getConnection();
+            StatementCache cache = verbindung.getStatementCache();
+            Connection innen = verbindung.mitConnection(verbindung::getConnection);
+            Assert.assertSame(aussen, innen);
+            Assert.assertSame(cache, verbindung.getStatementCache());
+            Assert.assertSame(cache, pool.getStatementCache(aussen));
+            Assert.assertEquals(1, pool.getAusgeliehen());
+            try {
+                verbindung.mitConnectionAusfuehren(() -> {
+                    throw new DataException("innen");
+                });
+                Assert.fail("keine Ausnahme");
+            } catch (DataException e) {
+                // erwartet
+            }
+            Assert.assertSame(aussen, verbindung.getConnection());
+            Assert.assertEquals(1, pool.getAusgeliehen());
+        });
+        Assert.assertNull(verbindung.getConnection());
+        Assert.assertEquals(0, pool.getAusgeliehen());
+        try {
+            verbindung.mitConnection(() -> {
+                throw new DataException("aussen");
+            });
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        Assert.assertEquals(0, pool.getAusgeliehen());
+        Assert.assertEquals(1, geoeffnet.size());
+    }
+
+    /**
+     * Eine nachgebildete physische Verbindung.
+     */
+    private static class Verbindung {
+        volatile boolean gueltig = true;
+        volatile boolean geschlossen = false;
+        final Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isValid":
+                            return gueltig && !geschlossen;
+                        case "close":
+                            geschlossen = true;
+                            return null;
+                        case "isClosed":
+                            return geschlossen;
+                        case "getAutoCommit":
+                            return true;
+                        case "toString":
+                            return "Verbindung@" + System.identityHashCode(proxy);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
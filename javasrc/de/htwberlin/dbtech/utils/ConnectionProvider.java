@@ -0,0 +1,148 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Liefert einem Dienst seine Connection. Entweder ist eine feste Connection
+ * gesetzt (wie bisher mit setConnection), oder eine DataSource, z.B. ein
+ * {@link ConnectionPool}. Im zweiten Fall leiht sich jede Operation mit
+ * {@link #leihen()} eine eigene Connection und gibt sie am Ende zurueck; die
+ * Connection ist waehrend der Operation an den Thread gebunden. So kann ein
+ * Dienst von mehreren Threads gleichzeitig benutzt werden.
+ * <p>
+ * Verschachtelte Aufrufe von leihen() im selben Thread benutzen dieselbe
+ * Connection.
+ */
+public class ConnectionProvider {
+    private volatile Connection connection;
+    private volatile StatementCache statements;
+    private volatile DataSource dataSource;
+    private final ThreadLocal<Ausleihe> aktuell = new ThreadLocal<>();
+
+    public synchronized void setConnection(Connection connection) {
+        if (statements != null) {
+            statements.close();
+        }
+        this.connection = connection;
+        this.statements = connection == null ? null : new StatementCache(connection);
+        this.dataSource = null;
+    }
+
+    public synchronized void setDataSource(DataSource dataSource) {
+        if (statements != null) {
+            statements.close();
+        }
+        this.connection = null;
+        this.statements = null;
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Fuehrt eine Operation aus. Mit DataSource wird dafuer eine Connection
+     * geliehen und danach zurueckgegeben; mit fester Connection wird die
+     * Operation nur aufgerufen.
+     *
+     * @return das Ergebnis der Operation.
+     */
+    public <T> T mitConnection(Supplier<T> operation) {
+        Ausleihe a = leihen();
+        try {
+            return operation.get();
+        } finally {
+            a.zurueckgeben();
+        }
+    }
+
+    /**
+     * Wie {@link #mitConnection} fuer Operationen ohne Ergebnis.
+     */
+    public void mitConnectionAusfuehren(Runnable operation) {
+        Ausleihe a = leihen();
+        try {
+            operation.run();
+        } finally {
+            a.zurueckgeben();
+        }
+    }
+
+    private Ausleihe leihen() {
+        Ausleihe a = aktuell.get();
+        if (a != null) {
+            a.tiefe++;
+            return a;
+        }
+        DataSource ds = dataSource;
+        if (ds == null) {
+            return new Ausleihe(null, null);
+        }
+        try {
+            Connection c = ds.getConnection();
+            StatementCache cache = ds instanceof ConnectionPool
+                    ? ((ConnectionPool) ds).getStatementCache(c)
+                    : null;
+            a = new Ausleihe(c, cache);
+        } catch (SQLException e) {
+            throw new DataException(e);
+        }
+        aktuell.set(a);
+        return a;
+    }
+
+    /**
+     * @return die Connection der laufenden Operation oder die feste Connection,
+     * sonst null.
+     */
+    public Connection getConnection() {
+        Ausleihe a = aktuell.get();
+        return a != null && a.connection != null ? a.connection : connection;
+    }
+
+    /**
+     * @return den StatementCache zur Connection der laufenden Operation, sonst den
+     * der festen Connection. Ausserhalb eines Pools lebt der Cache nur so lange
+     * wie die Ausleihe.
+     */
+    public StatementCache getStatementCache() {
+        Ausleihe a = aktuell.get();
+        if (a == null || a.connection == null) {
+            return statements;
+        }
+        if (a.statements == null) {
+            a.statements = new StatementCache(a.connection);
+            a.eigenerCache = true;
+        }
+        return a.statements;
+    }
+
+    private class Ausleihe {
+        private final Connection connection;
+        private StatementCache statements;
+        private boolean eigenerCache = false;
+        private int tiefe = 1;
+
+        private Ausleihe(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+
+        void zurueckgeben() {
+            if (connection == null || --tiefe > 0) {
+                return;
+            }
+            aktuell.remove();
+            if (eigenerCache) {
+                statements.close();
+            }
+            JdbcUtils.closeConnectionQuietly(connection);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Vergibt Primaerschluessel nach dem Hi/Lo-Verfahren. Aus der Datenbank wird
+ * jeweils ein Block von IDs reserviert, die IDs des Blocks werden ohne Sperre
+ * aus dem Speicher vergeben. Erst wenn der Block verbraucht ist, wird der
+ * naechste reserviert. Nicht vergebene IDs eines Blocks gehen bei einem
+ * Neustart verloren, doppelt vergeben wird keine.
+ * <p>
+ * Quelle ist entweder eine Sequenz, deren INCREMENT BY die Blockgroesse ist
+ * (z.B. Gebot_Seq in db/auktion/tables-create.sql), oder eine Zaehlerzeile der
+ * Tabelle IdBlock aus db/auktion/tables-create.sql bzw.
+ * db/versicherung/tables-create.sql. Die Zaehlerzeile wird in einer eigenen
+ * Transaktion weitergesetzt und braucht daher eine DataSource. Eine Sequenz ist
+ * nicht transaktional und kann auch die Connection eines Dienstes benutzen.
+ */
+public class IdAllocator {
+    private static final Logger L = LoggerFactory.getLogger(IdAllocator.class);
+    private static final Block LEER = new Block(0, 0);
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final String sequenz;
+    private final String zaehler;
+    private volatile int blockGroesse;
+    private final AtomicReference<Block> block = new AtomicReference<>(LEER);
+    private final AtomicLong reservierungen = new AtomicLong();
+
+    private IdAllocator(DataSource dataSource, Connection connection, String sequenz, String zaehler,
+                        int blockGroesse) {
+        this.dataSource = dataSource;
+        this.connection = connection;
+        this.sequenz = sequenz;
+        this.zaehler = zaehler;
+        this.blockGroesse = blockGroesse;
+    }
+
+    public static IdAllocator ausSequenz(Connection connection, String sequenz) {
+        return new IdAllocator(null, connection, sequenz, null, 0);
+    }
+
+    public static IdAllocator ausSequenz(DataSource dataSource, String sequenz) {
+        return new IdAllocator(dataSource, null, sequenz, null, 0);
+    }
+
+    /**
+     * @param name         Schluessel der Zaehlerzeile in IdBlock, z.B. der
+     *                     Tabellenname. Fehlt die Zeile, wird sie mit 1 angelegt.
+     * @param blockGroesse Anzahl IDs je Reservierung; kann zwischen zwei Laeufen
+     *                     geaendert werden.
+     */
+    public static IdAllocator ausZaehler(DataSource dataSource, String name, int blockGroesse) {
+        if (blockGroesse < 1) {
+            throw new IllegalArgumentException("blockGroesse: " + blockGroesse);
+        }
+        return new IdAllocator(dataSource, null, null, name, blockGroesse);
+    }
+
+    /**
+     * @return die naechste freie ID.
+     */
+    public long next() {
+        while (true) {
+            Block b = block.get();
+            long id = b.naechste.getAndIncrement();
+            if (id < b.grenze) {
+                return id;
+            }
+            synchronized (this) {
+                if (block.get() == b) {
+                    block.set(reserviere());
+                }
+            }
+        }
+    }
+
+    public int nextInt() {
+        return Math.toIntExact(next());
+    }
+
+    public long getReservierungen() {
+        return reservierungen.get();
+    }
+
+    public int getBlockGroesse() {
+        return blockGroesse;
+    }
+
+    private Block reserviere() {
+        try {
+            if (dataSource == null) {
+                return reserviere(connection);
+            }
+            try (Connection c = dataSource.getConnection()) {
+                return reserviere(c);
+            }
+        } catch (SQLException e) {
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private Block reserviere(Connection c) throws SQLException {
+        Block b = sequenz != null ? ausSequenz(c) : ausZaehler(c);
+        reservierungen.incrementAndGet();
+        L.info("reserviert: " + b.naechste.get() + " bis " + (b.grenze - 1));
+        return b;
+    }
+
+    private Block ausSequenz(Connection c) throws SQLException {
+        if (blockGroesse == 0) {
+            try (PreparedStatement ps = c.prepareStatement(
+                    "select Increment_By from User_Sequences where Sequence_Name = upper(?)")) {
+                ps.setString(1, sequenz);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new DataException("sequenz existiert nicht: " + sequenz);
+                    }
+                    blockGroesse = rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement("select " + sequenz + ".nextval from dual");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            long hi = rs.getLong(1);
+            return new Block(hi, hi + blockGroesse);
+        }
+    }
+
+    private Block ausZaehler(Connection c) throws SQLException {
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            long naechste;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "select NaechsteId from IdBlock where Name = ? for update")) {
+                ps.setString(1, zaehler);
+                try (ResultSet rs = ps.executeQuery()) {
+                    naechste = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            if (naechste == 0) {
+                naechste = 1;
+                try (PreparedStatement ps = c.prepareStatement(
+                        "insert into IdBlock (Name, NaechsteId) values (?, ?)")) {
+                    ps.setString(1, zaehler);
+                    ps.setLong(2, naechste + blockGroesse);
+                    ps.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    // gleichzeitig von einem anderen Prozess angelegt
+                    c.rollback();
+                    return ausZaehler(c);
+                }
+            } else {
+                try (PreparedStatement ps = c.prepareStatement(
+                        "update IdBlock set NaechsteId = ? where Name = ?")) {
+                    ps.setLong(1, naechste + blockGroesse);
+                    ps.setString(2, zaehler);
+                    ps.executeUpdate();
+                }
+            }
+            c.commit();
+            return new Block(naechste, naechste + blockGroesse);
+        } catch (SQLException | RuntimeException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static class Block {
+        final AtomicLong naechste;
+        final long grenze;
+
+        Block(long von, long grenze) {
+            this.naechste = new AtomicLong(von);
+            this.grenze = grenze;
+        }
+    }
+}
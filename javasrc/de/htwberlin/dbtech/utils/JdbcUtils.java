@@ -7,11 +7,21 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class JdbcUtils {
     private static final Logger L = LoggerFactory.getLogger(JdbcUtils.class);
 
+    /**
+     * Oracle erlaubt hoechstens 1000 Ausdruecke in einer IN-Liste.
+     */
+    public static final int MAX_IN_LIST = 1000;
+
     public static void loadDriver(final String driver) {
         try {
             Class.forName(driver);
@@ -41,6 +51,17 @@ public class JdbcUtils {
         }
     }
 
+    /**
+     * Erzeugt einen Pool mit minGroesse bis maxGroesse Connections; Dienste nutzen
+     * ihn ueber setDataSource.
+     */
+    public static ConnectionPool createConnectionPool(final String url, final String user, final String passwd,
+                                                      final int minGroesse, final int maxGroesse) {
+        ConnectionPool pool = new ConnectionPool(url, user, passwd, minGroesse, maxGroesse);
+        L.info("connection pool created");
+        return pool;
+    }
+
     public static void closeConnection(final Connection connection) {
         try {
             if (connection != null) {
@@ -101,4 +122,79 @@ public class JdbcUtils {
         }
     }
 
+    /**
+     * Liefert n durch Komma getrennte Platzhalter, z.B. "?,?,?" fuer n = 3.
+     */
+    public static String placeholders(final int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    /**
+     * Zerlegt eine Liste in aufeinanderfolgende Teillisten mit hoechstens size
+     * Elementen, z.B. fuer IN-Listen mit Bindevariablen.
+     */
+    public static <T> List<List<T>> chunks(final List<T> list, final int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Fuehrt die Aktion atomar aus. Bei autoCommit wird dafuer eine Transaktion
+     * begonnen und committet, sonst ein Savepoint gesetzt und der Commit dem
+     * Aufrufer ueberlassen. Wirft die Aktion, wird bis zu ihrem Beginn
+     * zurueckgerollt; andere Arbeit einer offenen Transaktion bleibt erhalten.
+     */
+    public static <T> T inTransaktion(final Connection connection, final SqlAktion<T> aktion) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        Savepoint savepoint = null;
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        } else {
+            savepoint = connection.setSavepoint();
+        }
+        try {
+            T ergebnis = aktion.ausfuehren();
+            if (autoCommit) {
+                connection.commit();
+            }
+            return ergebnis;
+        } catch (SQLException | RuntimeException | Error e) {
+            rollbackQuietly(connection, savepoint);
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Rollt bis zum Savepoint zurueck, bei null die ganze Transaktion. Fehler
+     * werden nur protokolliert, damit sie die eigentliche Ursache nicht
+     * verdecken.
+     */
+    public static void rollbackQuietly(final Connection connection, final Savepoint savepoint) {
+        try {
+            if (savepoint == null) {
+                connection.rollback();
+            } else {
+                connection.rollback(savepoint);
+            }
+        } catch (Exception e) {
+            // ignore exception, just log
+            L.error("unhandled", e);
+        }
+    }
+
+    /**
+     * Eine Datenbankaktion fuer {@link #inTransaktion}.
+     */
+    @FunctionalInterface
+    public interface SqlAktion<T> {
+        T ausfuehren() throws SQLException;
+    }
+
 }
@@ -0,0 +1,145 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Ergebnis einer Abfrage als Stream. Eine Zeile wird erst gelesen, wenn der
+ * Aufrufer das naechste Element anfordert; der Treiber holt dabei jeweils
+ * fetchSize Zeilen. So laesst sich auch ein grosses Ergebnis mit konstantem
+ * Speicher verarbeiten.
+ * <p>
+ * Der Stream muss geschlossen werden (try-with-resources), dann werden
+ * ResultSet und Statement geschlossen. Ein Statement aus einem
+ * {@link StatementCache} bleibt offen. SQLExceptions werden als DataException
+ * weitergegeben.
+ */
+public class QueryStream {
+    private static final Logger L = LoggerFactory.getLogger(QueryStream.class);
+    public static final int DEFAULT_FETCH_SIZE = 100;
+
+    /**
+     * Liest eine Zeile; das ResultSet steht schon auf der Zeile.
+     */
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Setzt die Parameter des Statements.
+     */
+    public interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    private QueryStream() {
+    }
+
+    public static <T> Stream<T> of(Connection connection, String sql, RowMapper<T> mapper) {
+        return of(connection, sql, DEFAULT_FETCH_SIZE, ps -> {
+        }, mapper);
+    }
+
+    /**
+     * Bereitet sql vor, bindet die Parameter und fuehrt die Abfrage aus. Das
+     * Statement gehoert dem Stream.
+     */
+    public static <T> Stream<T> of(Connection connection, String sql, int fetchSize, Binder binder,
+                                   RowMapper<T> mapper) {
+        L.info(sql);
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            binder.bind(ps);
+            return of(ps, true, fetchSize, mapper);
+        } catch (SQLException e) {
+            JdbcUtils.closeStatementQuietly(ps);
+            L.error("", e);
+            throw new DataException(e);
+        } catch (RuntimeException e) {
+            JdbcUtils.closeStatementQuietly(ps);
+            throw e;
+        }
+    }
+
+    /**
+     * Fuehrt ein vorbereitetes Statement mit bereits gesetzten Parametern aus. Ist
+     * statementSchliessen false (z.B. bei Statements aus einem StatementCache),
+     * wird beim Schliessen des Streams nur das ResultSet geschlossen und die
+     * vorherige fetchSize des Statements wiederhergestellt.
+     */
+    public static <T> Stream<T> of(PreparedStatement ps, boolean statementSchliessen, int fetchSize,
+                                   RowMapper<T> mapper) {
+        int vorherigeFetchSize = 0;
+        try {
+            if (!statementSchliessen) {
+                vorherigeFetchSize = ps.getFetchSize();
+            }
+            ps.setFetchSize(fetchSize);
+            ResultSet rs = ps.executeQuery();
+            int fetchSizeZurueck = vorherigeFetchSize;
+            return StreamSupport.stream(new Zeilen<>(rs, mapper), false).onClose(() -> {
+                JdbcUtils.closeResultSetQuietly(rs);
+                if (statementSchliessen) {
+                    JdbcUtils.closeStatementQuietly(ps);
+                } else {
+                    setzeFetchSizeQuietly(ps, fetchSizeZurueck);
+                }
+            });
+        } catch (SQLException e) {
+            if (statementSchliessen) {
+                JdbcUtils.closeStatementQuietly(ps);
+            } else {
+                setzeFetchSizeQuietly(ps, vorherigeFetchSize);
+            }
+            L.error("", e);
+            throw new DataException(e);
+        }
+    }
+
+    private static void setzeFetchSizeQuietly(PreparedStatement ps, int fetchSize) {
+        try {
+            ps.setFetchSize(fetchSize);
+        } catch (SQLException e) {
+            // ignore exception, just log
+            L.error("unhandled", e);
+        }
+    }
+
+    private static class Zeilen<T> extends Spliterators.AbstractSpliterator<T> {
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+
+        Zeilen(ResultSet rs, RowMapper<T> mapper) {
+            // kein NONNULL: ein RowMapper darf fuer eine Zeile null liefern
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (!rs.next()) {
+                    return false;
+                }
+                action.accept(mapper.map(rs));
+                return true;
+            } catch (SQLException e) {
+                L.error("", e);
+                throw new DataException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package de.htwberlin.dbtech.utils;
+
+import de.htwberlin.dbtech.exceptions.DataException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Prueft QueryStream mit nachgebildetem Statement und ResultSet, ohne
+ * Datenbank.
+ */
+public class QueryStreamTest {
+
+    @Test
+    public void alleZeilen() {
+        Abfrage a = new Abfrage(1, 2, 3);
+        try (Stream<Integer> zeilen = QueryStream.of(a.statement, true, 50, rs -> rs.getInt(1))) {
+            Assert.assertEquals(List.of(1, 2, 3), zeilen.collect(Collectors.toList()));
+        }
+        Assert.assertEquals(50, a.fetchSizeBeiAbfrage);
+        Assert.assertTrue(a.resultSetGeschlossen);
+        Assert.assertTrue(a.statementGeschlossen);
+    }
+
+    /**
+     * Ein teilweise gelesener Stream liest keine weiteren Zeilen; beim
+     * Schliessen werden ResultSet und Statement trotzdem geschlossen.
+     */
+    @Test
+    public void teilweiseGelesen() {
+        Abfrage a = new Abfrage(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        try (Stream<Integer> zeilen = QueryStream.of(a.statement, true, 50, rs -> rs.getInt(1))) {
+            Assert.assertEquals(List.of(1, 2), zeilen.limit(2).collect(Collectors.toList()));
+        }
+        Assert.assertTrue("next: " + a.nextAufrufe, a.nextAufrufe <= 3);
+        Assert.assertTrue(a.resultSetGeschlossen);
+        Assert.assertTrue(a.statementGeschlossen);
+    }
+
+    @Test
+    public void ungelesenGeschlossen() {
+        Abfrage a = new Abfrage(1, 2, 3);
+        QueryStream.of(a.statement, true, 50, rs -> rs.getInt(1)).close();
+        Assert.assertEquals(0, a.nextAufrufe);
+        Assert.assertTrue(a.resultSetGeschlossen);
+        Assert.assertTrue(a.statementGeschlossen);
+    }
+
+    /**
+     * Ein Statement aus einem Cache bleibt offen und bekommt seine vorherige
+     * fetchSize zurueck, auch wenn der Stream vorzeitig geschlossen wird.
+     */
+    @Test
+    public void statementBleibtOffen() {
+        Abfrage a = new Abfrage(1, 2, 3);
+        a.fetchSize = 10;
+        try (Stream<Integer> zeilen = QueryStream.of(a.statement, false, 500, rs -> rs.getInt(1))) {
+            Assert.assertEquals(Integer.valueOf(1), zeilen.findFirst().orElse(null));
+            Assert.assertEquals(500, a.fetchSize);
+        }
+        Assert.assertEquals(500, a.fetchSizeBeiAbfrage);
+        Assert.assertEquals(10, a.fetchSize);
+        Assert.assertTrue(a.resultSetGeschlossen);
+        Assert.assertFalse(a.statementGeschlossen);
+    }
+
+    @Test
+    public void fetchSizeNachFehlerZurueck() {
+        Abfrage a = new Abfrage();
+        a.fetchSize = 10;
+        a.abfrageFehler = true;
+        try {
+            QueryStream.of(a.statement, false, 500, rs -> rs.getInt(1));
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        Assert.assertEquals(10, a.fetchSize);
+        Assert.assertFalse(a.statementGeschlossen);
+    }
+
+    @Test
+    public void nullZeilen() {
+        Abfrage a = new Abfrage(1, 0, 3);
+        try (Stream<Integer> zeilen = QueryStream.of(a.statement, true, 50,
+                rs -> rs.getInt(1) == 0 ? null : rs.getInt(1))) {
+            Assert.assertEquals(Arrays.asList(1, null, 3), zeilen.collect(Collectors.toList()));
+        }
+        try (Stream<Integer> zeilen = QueryStream.of(new Abfrage().statement, true, 50, rs -> null)) {
+            Assert.assertFalse(zeilen.spliterator().hasCharacteristics(Spliterator.NONNULL));
+        }
+    }
+
+    @Test
+    public void fehlerBeimLesen() {
+        Abfrage a = new Abfrage(1, 2, 3);
+        a.lesefehlerAb = 2;
+        try (Stream<Integer> zeilen = QueryStream.of(a.statement, true, 50, rs -> rs.getInt(1))) {
+            zeilen.forEach(z -> {
+            });
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        Assert.assertTrue(a.resultSetGeschlossen);
+        Assert.assertTrue(a.statementGeschlossen);
+    }
+
+    /**
+     * Mit Connection und SQL gehoert das Statement dem Stream; schlaegt das
+     * Binden fehl, wird es sofort geschlossen.
+     */
+    @Test
+    public void mitConnection() {
+        Abfrage a = new Abfrage(7);
+        Connection c = a.connection();
+        try (Stream<Integer> zeilen = QueryStream.of(c, "select x from t", rs -> rs.getInt(1))) {
+            Assert.assertEquals(List.of(7), zeilen.collect(Collectors.toList()));
+        }
+        Assert.assertTrue(a.statementGeschlossen);
+
+        Abfrage b = new Abfrage(7);
+        try {
+            QueryStream.of(b.connection(), "select x from t where y = ?", 10, ps -> {
+                throw new SQLException("binden");
+            }, rs -> rs.getInt(1));
+            Assert.fail("keine Ausnahme");
+        } catch (DataException e) {
+            // erwartet
+        }
+        Assert.assertTrue(b.statementGeschlossen);
+        Assert.assertEquals(0, b.nextAufrufe);
+    }
+
+    /**
+     * Eine nachgebildete Abfrage mit einer int-Spalte.
+     */
+    private static class Abfrage {
+        final Iterator<Integer> werte;
+        Integer aktuell;
+        int fetchSize = 0;
+        int fetchSizeBeiAbfrage = -1;
+        int nextAufrufe = 0;
+        int lesefehlerAb = Integer.MAX_VALUE;
+        boolean abfrageFehler = false;
+        boolean resultSetGeschlossen = false;
+        boolean statementGeschlossen = false;
+        final ResultSet resultSet;
+        final PreparedStatement statement;
+
+        Abfrage(Integer... werte) {
+            this.werte = Arrays.asList(werte).iterator();
+            resultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next":
+                                if (++nextAufrufe >= lesefehlerAb) {
+                                    throw new SQLException("lesefehler");
+                                }
+                                aktuell = this.werte.hasNext() ? this.werte.next() : null;
+                                return aktuell != null;
+                            case "getInt":
+                                return aktuell;
+                            case "close":
+                                resultSetGeschlossen = true;
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+            statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setFetchSize":
+                                fetchSize = (Integer) args[0];
+                                return null;
+                            case "getFetchSize":
+                                return fetchSize;
+                            case "executeQuery":
+                                if (abfrageFehler) {
+                                    throw new SQLException("abfrage");
+                                }
+                                fetchSizeBeiAbfrage = fetchSize;
+                                return resultSet;
+                            case "close":
+                                statementGeschlossen = true;
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        Connection connection() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("prepareStatement")) {
+                            return statement;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
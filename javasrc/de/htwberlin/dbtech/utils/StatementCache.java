@@ -0,0 +1,95 @@
+package de.htwberlin.dbtech.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache fuer PreparedStatements einer Connection, Schluessel ist der SQL-Text.
+ * Wird ein Statement mehrfach benutzt, entfaellt das erneute Parsen und
+ * Beschreiben in der Datenbank. Sind mehr als maxGroesse Statements im Cache,
+ * wird das am laengsten nicht benutzte geschlossen.
+ * <p>
+ * Die gelieferten Statements gehoeren dem Cache und duerfen vom Aufrufer nicht
+ * geschlossen werden; ResultSets muessen wie gewohnt geschlossen werden. Wie die
+ * Connection selbst ist der Cache nicht fuer mehrere Threads gedacht.
+ */
+public class StatementCache implements AutoCloseable {
+    private static final Logger L = LoggerFactory.getLogger(StatementCache.class);
+    public static final int DEFAULT_GROESSE = 32;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private long treffer = 0;
+    private long fehlgriffe = 0;
+
+    public StatementCache(Connection connection) {
+        this(connection, DEFAULT_GROESSE);
+    }
+
+    public StatementCache(Connection connection, int maxGroesse) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxGroesse) {
+                    JdbcUtils.closeStatementQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Liefert das Statement fuer sql aus dem Cache oder bereitet es vor. Parameter
+     * und Batch eines wiederverwendeten Statements werden zurueckgesetzt.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            treffer++;
+            ps.clearParameters();
+            ps.clearBatch();
+            return ps;
+        }
+        fehlgriffe++;
+        ps = connection.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    public long getTreffer() {
+        return treffer;
+    }
+
+    public long getFehlgriffe() {
+        return fehlgriffe;
+    }
+
+    public int getGroesse() {
+        return statements.size();
+    }
+
+    /**
+     * Schliesst alle Statements im Cache. Die Connection bleibt offen.
+     */
+    @Override
+    public void close() {
+        for (PreparedStatement ps : statements.values()) {
+            JdbcUtils.closeStatementQuietly(ps);
+        }
+        statements.clear();
+        L.info("statement cache closed, treffer: " + treffer + ", fehlgriffe: " + fehlgriffe);
+    }
+
+}
@@ -0,0 +1,125 @@
+package de.htwberlin.dbtech.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prueft StatementCache mit nachgebildeten Statements, ohne Datenbank.
+ */
+public class StatementCacheTest {
+    private final List<Statement> vorbereitet = new ArrayList<>();
+
+    /**
+     * Verdraengt wird das am laengsten nicht benutzte Statement, nicht das
+     * zuerst vorbereitete; es wird dabei geschlossen.
+     */
+    @Test
+    public void lruVerdraengung() throws SQLException {
+        StatementCache cache = new StatementCache(connection(), 2);
+        PreparedStatement a = cache.prepare("a");
+        PreparedStatement b = cache.prepare("b");
+        Assert.assertSame(a, cache.prepare("a"));
+        cache.prepare("c");
+        Assert.assertEquals(2, cache.getGroesse());
+        Assert.assertFalse(a.isClosed());
+        Assert.assertTrue(b.isClosed());
+        Assert.assertSame(a, cache.prepare("a"));
+        Assert.assertNotSame(b, cache.prepare("b"));
+        Assert.assertEquals(2, cache.getTreffer());
+        Assert.assertEquals(4, cache.getFehlgriffe());
+        Assert.assertEquals(4, vorbereitet.size());
+    }
+
+    /**
+     * Ein wiederverwendetes Statement hat keine Parameter und kein Batch mehr.
+     */
+    @Test
+    public void trefferSetztZurueck() throws SQLException {
+        StatementCache cache = new StatementCache(connection(), 2);
+        cache.prepare("a");
+        cache.prepare("a");
+        Statement s = vorbereitet.get(0);
+        Assert.assertEquals(1, s.clearParameters);
+        Assert.assertEquals(1, s.clearBatch);
+    }
+
+    /**
+     * Ein ausserhalb des Caches geschlossenes Statement wird neu vorbereitet.
+     */
+    @Test
+    public void geschlossenesStatementErsetzt() throws SQLException {
+        StatementCache cache = new StatementCache(connection(), 2);
+        PreparedStatement a = cache.prepare("a");
+        a.close();
+        Assert.assertNotSame(a, cache.prepare("a"));
+        Assert.assertEquals(1, cache.getGroesse());
+        Assert.assertEquals(0, cache.getTreffer());
+    }
+
+    @Test
+    public void schliessen() throws SQLException {
+        StatementCache cache = new StatementCache(connection(), 4);
+        cache.prepare("a");
+        cache.prepare("b");
+        cache.prepare("c");
+        cache.close();
+        Assert.assertEquals(0, cache.getGroesse());
+        for (Statement s : vorbereitet) {
+            Assert.assertTrue(s.sql, s.geschlossen);
+        }
+        PreparedStatement neu = cache.prepare("a");
+        Assert.assertFalse(neu.isClosed());
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) {
+                        Statement s = new Statement((String) args[0]);
+                        vorbereitet.add(s);
+                        return s.statement;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Ein nachgebildetes PreparedStatement, das seine Aufrufe zaehlt.
+     */
+    private static class Statement {
+        final String sql;
+        boolean geschlossen = false;
+        int clearParameters = 0;
+        int clearBatch = 0;
+        final PreparedStatement statement;
+
+        Statement(String sql) {
+            this.sql = sql;
+            statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isClosed":
+                                return geschlossen;
+                            case "close":
+                                geschlossen = true;
+                                return null;
+                            case "clearParameters":
+                                clearParameters++;
+                                return null;
+                            case "clearBatch":
+                                clearBatch++;
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.htwberlin.dbtech.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Liest Datumsspalten ohne java.sql.Date. Die Abfrage liefert mit
+ * {@link #epochTag} die Tage seit dem 1.1.1970 als Zahl, die als int gelesen
+ * wird. Die LocalDate-Werte der Jahre 1900 bis 2199 werden nur einmal erzeugt
+ * und danach wiederverwendet.
+ */
+public final class Tage {
+    private static final int VON = (int) LocalDate.of(1900, 1, 1).toEpochDay();
+    private static final int BIS = (int) LocalDate.of(2200, 1, 1).toEpochDay();
+    private static final LocalDate[] TAGE = new LocalDate[BIS - VON];
+
+    private Tage() {
+    }
+
+    /**
+     * @return SQL-Ausdruck fuer die Tage seit dem 1.1.1970; die Uhrzeit wird
+     * abgeschnitten.
+     */
+    public static String epochTag(String spalte) {
+        return "(trunc(" + spalte + ") - date '1970-01-01')";
+    }
+
+    public static LocalDate von(int epochTag) {
+        if (epochTag < VON || epochTag >= BIS) {
+            return LocalDate.ofEpochDay(epochTag);
+        }
+        // LocalDate ist unveraenderlich, ein doppelt erzeugter Wert schadet nicht
+        LocalDate tag = TAGE[epochTag - VON];
+        if (tag == null) {
+            tag = LocalDate.ofEpochDay(epochTag);
+            TAGE[epochTag - VON] = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * Liest eine mit {@link #epochTag} abgefragte Spalte; null bleibt null.
+     */
+    public static LocalDate lese(ResultSet rs, int spalte) throws SQLException {
+        int epochTag = rs.getInt(spalte);
+        return rs.wasNull() ? null : von(epochTag);
+    }
+}
@@ -0,0 +1,321 @@
+package de.htwberlin.dbtech.utils;
+
+import java.util.Arrays;
+
+/**
+ * Groessenbeschraenkter Cache mit int-Schluesseln, z.B. fuer Kunden nach ID.
+ * <p>
+ * Die Eintraege liegen in einer LRU-Liste. Ist der Cache voll, entscheidet ein
+ * Haeufigkeitsfilter (TinyLFU, Count-Min-Sketch mit periodischer Halbierung),
+ * ob ein neuer Eintrag den am laengsten nicht benutzten verdraengen darf: nur
+ * wenn der neue Schluessel in letzter Zeit haeufiger angefragt wurde. So
+ * verdraengen seltene Zugriffe die wenigen haeufig benutzten Eintraege nicht.
+ * <p>
+ * Optional werden auch nicht existierende Schluessel gemerkt (negatives
+ * Caching), damit wiederholte Anfragen nach unbekannten IDs ohne Abfrage
+ * beantwortet werden koennen. Alle Methoden sind synchronisiert.
+ */
+public class TinyLfuCache<V> {
+    private static final Object ABWESEND = new Object();
+    private static final int LEER = -1;
+
+    private final int kapazitaet;
+    private final boolean negativesCaching;
+
+    // Eintraege, Index ist der Platz des Eintrags
+    private final int[] schluessel;
+    private final Object[] werte;
+    private final int[] vorher;
+    private final int[] nachher;
+    private final int[] freiePlaetze;
+    private int anzahlFrei;
+    private int kopf = LEER;
+    private int ende = LEER;
+
+    // offene Adressierung: Platz + 1, 0 bedeutet leer
+    private final int[] tabelle;
+    private final int maske;
+
+    private final Haeufigkeiten haeufigkeiten;
+
+    private long treffer;
+    private long fehlgriffe;
+    private long verdraengungen;
+    private long abgewiesen;
+
+    public TinyLfuCache(int kapazitaet) {
+        this(kapazitaet, false);
+    }
+
+    public TinyLfuCache(int kapazitaet, boolean negativesCaching) {
+        if (kapazitaet < 1) {
+            throw new IllegalArgumentException("kapazitaet: " + kapazitaet);
+        }
+        this.kapazitaet = kapazitaet;
+        this.negativesCaching = negativesCaching;
+        schluessel = new int[kapazitaet];
+        werte = new Object[kapazitaet];
+        vorher = new int[kapazitaet];
+        nachher = new int[kapazitaet];
+        freiePlaetze = new int[kapazitaet];
+        for (int i = 0; i < kapazitaet; i++) {
+            freiePlaetze[i] = kapazitaet - 1 - i;
+        }
+        anzahlFrei = kapazitaet;
+        int groesse = Integer.highestOneBit(Math.max(2, kapazitaet * 2 - 1)) << 1;
+        tabelle = new int[groesse];
+        maske = groesse - 1;
+        haeufigkeiten = new Haeufigkeiten(kapazitaet);
+    }
+
+    /**
+     * @return den Wert zum Schluessel oder null, wenn er nicht im Cache ist oder
+     * als nicht existierend gemerkt wurde (siehe {@link #istAbwesend}).
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(int key) {
+        haeufigkeiten.zaehle(key);
+        int platz = finde(key);
+        if (platz == LEER) {
+            fehlgriffe++;
+            return null;
+        }
+        treffer++;
+        nachVorn(platz);
+        Object wert = werte[platz];
+        return wert == ABWESEND ? null : (V) wert;
+    }
+
+    /**
+     * @return true, wenn der Schluessel als nicht existierend gemerkt ist.
+     */
+    public synchronized boolean istAbwesend(int key) {
+        int platz = finde(key);
+        return platz != LEER && werte[platz] == ABWESEND;
+    }
+
+    public synchronized void put(int key, V value) {
+        speichere(key, value);
+    }
+
+    /**
+     * Merkt sich, dass es zum Schluessel keinen Datensatz gibt. Ohne negatives
+     * Caching passiert nichts.
+     */
+    public synchronized void putAbwesend(int key) {
+        if (negativesCaching) {
+            speichere(key, ABWESEND);
+        }
+    }
+
+    public synchronized void invalidate(int key) {
+        int platz = finde(key);
+        if (platz != LEER) {
+            entferne(platz);
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(tabelle, 0);
+        Arrays.fill(werte, null);
+        for (int i = 0; i < kapazitaet; i++) {
+            freiePlaetze[i] = kapazitaet - 1 - i;
+        }
+        anzahlFrei = kapazitaet;
+        kopf = LEER;
+        ende = LEER;
+    }
+
+    public synchronized int size() {
+        return kapazitaet - anzahlFrei;
+    }
+
+    public synchronized long getTreffer() {
+        return treffer;
+    }
+
+    public synchronized long getFehlgriffe() {
+        return fehlgriffe;
+    }
+
+    public synchronized double getTrefferquote() {
+        long anfragen = treffer + fehlgriffe;
+        return anfragen == 0 ? 0.0 : (double) treffer / anfragen;
+    }
+
+    /**
+     * @return Anzahl der Eintraege, die fuer haeufiger benutzte Platz machen
+     * mussten.
+     */
+    public synchronized long getVerdraengungen() {
+        return verdraengungen;
+    }
+
+    /**
+     * @return Anzahl der neuen Eintraege, die der Haeufigkeitsfilter nicht
+     * aufgenommen hat.
+     */
+    public synchronized long getAbgewiesen() {
+        return abgewiesen;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TinyLfuCache [size=" + size() + ", treffer=" + treffer + ", fehlgriffe=" + fehlgriffe
+                + ", verdraengungen=" + verdraengungen + ", abgewiesen=" + abgewiesen + "]";
+    }
+
+    private void speichere(int key, Object wert) {
+        haeufigkeiten.zaehle(key);
+        int platz = finde(key);
+        if (platz != LEER) {
+            werte[platz] = wert;
+            nachVorn(platz);
+            return;
+        }
+        if (anzahlFrei == 0) {
+            int opfer = ende;
+            if (haeufigkeiten.schaetze(key) <= haeufigkeiten.schaetze(schluessel[opfer])) {
+                abgewiesen++;
+                return;
+            }
+            entferne(opfer);
+            verdraengungen++;
+        }
+        platz = freiePlaetze[--anzahlFrei];
+        schluessel[platz] = key;
+        werte[platz] = wert;
+        einfuegenVorn(platz);
+        int i = streue(key) & maske;
+        while (tabelle[i] != 0) {
+            i = (i + 1) & maske;
+        }
+        tabelle[i] = platz + 1;
+    }
+
+    private int finde(int key) {
+        int i = streue(key) & maske;
+        while (tabelle[i] != 0) {
+            int platz = tabelle[i] - 1;
+            if (schluessel[platz] == key) {
+                return platz;
+            }
+            i = (i + 1) & maske;
+        }
+        return LEER;
+    }
+
+    private void entferne(int platz) {
+        int i = streue(schluessel[platz]) & maske;
+        while (tabelle[i] != platz + 1) {
+            i = (i + 1) & maske;
+        }
+        // Loeschen mit Rueckwaertsverschiebung, damit keine Luecken in Sondierketten bleiben
+        tabelle[i] = 0;
+        int j = i;
+        while (true) {
+            j = (j + 1) & maske;
+            if (tabelle[j] == 0) {
+                break;
+            }
+            int k = streue(schluessel[tabelle[j] - 1]) & maske;
+            boolean verschieben = i <= j ? (k <= i || k > j) : (k <= i && k > j);
+            if (verschieben) {
+                tabelle[i] = tabelle[j];
+                tabelle[j] = 0;
+                i = j;
+            }
+        }
+        aushaengen(platz);
+        werte[platz] = null;
+        freiePlaetze[anzahlFrei++] = platz;
+    }
+
+    private void nachVorn(int platz) {
+        if (platz != kopf) {
+            aushaengen(platz);
+            einfuegenVorn(platz);
+        }
+    }
+
+    private void einfuegenVorn(int platz) {
+        vorher[platz] = LEER;
+        nachher[platz] = kopf;
+        if (kopf != LEER) {
+            vorher[kopf] = platz;
+        }
+        kopf = platz;
+        if (ende == LEER) {
+            ende = platz;
+        }
+    }
+
+    private void aushaengen(int platz) {
+        if (vorher[platz] != LEER) {
+            nachher[vorher[platz]] = nachher[platz];
+        } else {
+            kopf = nachher[platz];
+        }
+        if (nachher[platz] != LEER) {
+            vorher[nachher[platz]] = vorher[platz];
+        } else {
+            ende = vorher[platz];
+        }
+    }
+
+    private static int streue(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Count-Min-Sketch mit vier Zeilen. Nach einer Stichprobe von zehnmal der
+     * Kapazitaet werden alle Zaehler halbiert, damit alte Zugriffe an Gewicht
+     * verlieren.
+     */
+    private static class Haeufigkeiten {
+        private static final int MAX = 15;
+        private static final int[] SAAT = {0x97CB3127, 0x0B4B82E3, 0x1F3A5E2D, 0x7FEB352D};
+        private final int[][] zaehler;
+        private final int maske;
+        private final int stichprobe;
+        private int gezaehlt;
+
+        Haeufigkeiten(int kapazitaet) {
+            int breite = Integer.highestOneBit(Math.max(16, kapazitaet * 4 - 1)) << 1;
+            zaehler = new int[SAAT.length][breite];
+            maske = breite - 1;
+            stichprobe = kapazitaet * 10;
+        }
+
+        void zaehle(int key) {
+            for (int z = 0; z < SAAT.length; z++) {
+                int i = index(key, z);
+                if (zaehler[z][i] < MAX) {
+                    zaehler[z][i]++;
+                }
+            }
+            if (++gezaehlt >= stichprobe) {
+                for (int[] zeile : zaehler) {
+                    for (int i = 0; i < zeile.length; i++) {
+                        zeile[i] >>>= 1;
+                    }
+                }
+                gezaehlt /= 2;
+            }
+        }
+
+        int schaetze(int key) {
+            int min = MAX;
+            for (int z = 0; z < SAAT.length; z++) {
+                min = Math.min(min, zaehler[z][index(key, z)]);
+            }
+            return min;
+        }
+
+        private int index(int key, int zeile) {
+            int h = (key ^ SAAT[zeile]) * 0x85EBCA6B;
+            return (h ^ (h >>> 15)) & maske;
+        }
+    }
+}
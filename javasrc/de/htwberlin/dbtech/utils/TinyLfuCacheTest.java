@@ -0,0 +1,143 @@
+package de.htwberlin.dbtech.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Prueft TinyLfuCache ohne Datenbank.
+ */
+public class TinyLfuCacheTest {
+
+    @Test
+    public void getUndPut() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(4);
+        Assert.assertNull(cache.get(1));
+        cache.put(1, "eins");
+        cache.put(-7, "minus sieben");
+        Assert.assertEquals("eins", cache.get(1));
+        Assert.assertEquals("minus sieben", cache.get(-7));
+        cache.put(1, "neu");
+        Assert.assertEquals("neu", cache.get(1));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, cache.getTreffer());
+        Assert.assertEquals(1, cache.getFehlgriffe());
+    }
+
+    /**
+     * Ein selten angefragter Schluessel verdraengt keinen haeufig benutzten, ein
+     * haeufiger angefragter verdraengt den am laengsten nicht benutzten.
+     */
+    @Test
+    public void aufnahmeUndAbweisung() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(2);
+        cache.put(1, "eins");
+        cache.put(2, "zwei");
+        for (int i = 0; i < 3; i++) {
+            cache.get(1);
+            cache.get(2);
+        }
+        cache.put(3, "drei");
+        Assert.assertEquals(1, cache.getAbgewiesen());
+        Assert.assertEquals(0, cache.getVerdraengungen());
+        Assert.assertEquals(2, cache.size());
+        for (int i = 0; i < 6; i++) {
+            Assert.assertNull(cache.get(4));
+        }
+        cache.put(4, "vier");
+        Assert.assertEquals(1, cache.getVerdraengungen());
+        Assert.assertEquals("vier", cache.get(4));
+        // 1 war am laengsten nicht benutzt
+        Assert.assertEquals("zwei", cache.get(2));
+        Assert.assertNull(cache.get(1));
+        Assert.assertNull(cache.get(3));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    /**
+     * Viele Schluessel in einer kleinen Tabelle erzwingen lange Sondierketten;
+     * nach jedem Loeschen muessen alle uebrigen Schluessel auffindbar bleiben.
+     */
+    @Test
+    public void loeschenMitRueckwaertsverschiebung() {
+        int kapazitaet = 64;
+        TinyLfuCache<Integer> cache = new TinyLfuCache<>(kapazitaet);
+        Map<Integer, Integer> erwartet = new HashMap<>();
+        Random zufall = new Random(42);
+        for (int schritt = 0; schritt < 20000; schritt++) {
+            int key = zufall.nextInt(200) - 100;
+            if (zufall.nextBoolean() && (erwartet.size() < kapazitaet || erwartet.containsKey(key))) {
+                cache.put(key, schritt);
+                erwartet.put(key, schritt);
+            } else {
+                cache.invalidate(key);
+                erwartet.remove(key);
+            }
+            if (schritt % 97 == 0) {
+                pruefe(cache, erwartet);
+            }
+        }
+        pruefe(cache, erwartet);
+        List<Integer> keys = new ArrayList<>(erwartet.keySet());
+        for (Integer key : keys) {
+            cache.invalidate(key);
+            erwartet.remove(key);
+            pruefe(cache, erwartet);
+        }
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getVerdraengungen());
+        Assert.assertEquals(0, cache.getAbgewiesen());
+    }
+
+    private static void pruefe(TinyLfuCache<Integer> cache, Map<Integer, Integer> erwartet) {
+        Assert.assertEquals(erwartet.size(), cache.size());
+        for (Map.Entry<Integer, Integer> e : erwartet.entrySet()) {
+            Assert.assertEquals("key " + e.getKey(), e.getValue(), cache.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void negativesCaching() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(4, true);
+        cache.putAbwesend(5);
+        Assert.assertTrue(cache.istAbwesend(5));
+        Assert.assertNull(cache.get(5));
+        Assert.assertEquals(1, cache.size());
+        cache.put(5, "fuenf");
+        Assert.assertFalse(cache.istAbwesend(5));
+        Assert.assertEquals("fuenf", cache.get(5));
+        cache.putAbwesend(6);
+        cache.invalidate(6);
+        Assert.assertFalse(cache.istAbwesend(6));
+    }
+
+    @Test
+    public void ohneNegativesCaching() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(4);
+        cache.putAbwesend(5);
+        Assert.assertFalse(cache.istAbwesend(5));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void clear() {
+        TinyLfuCache<String> cache = new TinyLfuCache<>(2);
+        cache.put(1, "eins");
+        cache.put(2, "zwei");
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get(1));
+        cache.put(3, "drei");
+        Assert.assertEquals("drei", cache.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kapazitaetNull() {
+        new TinyLfuCache<String>(0);
+    }
+}
@@ -0,0 +1,78 @@
+package de.htwberlin.dbtech.utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Bildet Zeilen einer Abfrage auf Objekte ab, ohne je Zeile Spalten ueber den
+ * Namen zu suchen. Die Indizes der Spalten werden bei der ersten Zeile einmal
+ * aufgeloest; ein Mapper gehoert daher zu genau einer Abfrage (derselbe
+ * SQL-Text, auch ueber mehrere Statements hinweg).
+ * <p>
+ * Statt fuer jede Zeile ein neues Objekt zu erzeugen, kann ein vom Aufrufer
+ * gehaltenes Objekt wiederverwendet werden (Flyweight). Der Verarbeiter darf es
+ * dann nicht ueber den Aufruf hinaus behalten.
+ */
+public abstract class ZeilenMapper<T> implements QueryStream.RowMapper<T> {
+    private final String[] spalten;
+    private volatile int[] indizes;
+
+    protected ZeilenMapper(String... spalten) {
+        this.spalten = spalten;
+    }
+
+    /**
+     * @return ein leeres Objekt fuer {@link #map}.
+     */
+    protected abstract T neu();
+
+    /**
+     * Uebertraegt die aktuelle Zeile in ziel. indizes[i] ist der Index der i-ten
+     * Spalte aus dem Konstruktor.
+     */
+    protected abstract void fuelle(ResultSet rs, int[] indizes, T ziel) throws SQLException;
+
+    @Override
+    public final T map(ResultSet rs) throws SQLException {
+        return fuelle(rs, neu());
+    }
+
+    /**
+     * Uebertraegt die aktuelle Zeile in ein vorhandenes Objekt.
+     *
+     * @return ziel
+     */
+    public final T fuelle(ResultSet rs, T ziel) throws SQLException {
+        fuelle(rs, indizes(rs), ziel);
+        return ziel;
+    }
+
+    /**
+     * Liest alle restlichen Zeilen in dasselbe Objekt und uebergibt es jeweils
+     * dem Verarbeiter.
+     *
+     * @return die Anzahl der Zeilen.
+     */
+    public final long jedeZeile(ResultSet rs, T flyweight, Consumer<? super T> verarbeiter) throws SQLException {
+        long anzahl = 0;
+        while (rs.next()) {
+            fuelle(rs, flyweight);
+            verarbeiter.accept(flyweight);
+            anzahl++;
+        }
+        return anzahl;
+    }
+
+    private int[] indizes(ResultSet rs) throws SQLException {
+        int[] i = indizes;
+        if (i == null) {
+            i = new int[spalten.length];
+            for (int k = 0; k < spalten.length; k++) {
+                i[k] = rs.findColumn(spalten[k]);
+            }
+            indizes = i;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,156 @@
+package de.htwberlin.dbtech.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchisches Zeitrad (timer wheel): plant Elemente fuer einen Zeitpunkt
+ * ein und liefert sie beim Weiterdrehen, sobald er vorbei ist. Einplanen kostet
+ * unabhaengig von der Anzahl geplanter Elemente konstant viel, Weiterdrehen
+ * nur so viel wie die faelligen Elemente eines Ticks.
+ * <p>
+ * Ebene 0 hat je Tick einen Platz, jede hoehere Ebene fasst so viele Ticks je
+ * Platz zusammen wie die darunter insgesamt. Erreicht die Zeit einen Platz
+ * einer hoeheren Ebene, werden seine Elemente eine Ebene tiefer verteilt.
+ * Zeitpunkte jenseits der obersten Ebene warten in einer Ueberlauf-Liste.
+ * <p>
+ * Ein Element wird im ersten Tick geliefert, der echt nach seinem Zeitpunkt
+ * beginnt, also hoechstens tickMillis zu spaet und nie zu frueh. Nicht
+ * threadsicher; gedacht fuer einen einzelnen Thread, der einplant und dreht.
+ */
+public class ZeitRad<T> {
+    private static final int BITS = 6;
+    private static final int PLAETZE = 1 << BITS;
+    private static final int MASKE = PLAETZE - 1;
+    private static final int EBENEN = 4;
+
+    private final long tickMillis;
+    private final List<List<Eintrag<T>>> plaetze = new ArrayList<>(EBENEN * PLAETZE);
+    private List<Eintrag<T>> ueberlauf = new ArrayList<>();
+    private List<Eintrag<T>> faellig = new ArrayList<>();
+    /**
+     * Der naechste noch nicht gedrehte Tick.
+     */
+    private long tick;
+    private int anzahl = 0;
+
+    /**
+     * @param startMillis ab diesem Zeitpunkt wird gedreht, z.B.
+     *                    System.currentTimeMillis().
+     */
+    public ZeitRad(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.tick = startMillis / tickMillis;
+        for (int i = 0; i < EBENEN * PLAETZE; i++) {
+            plaetze.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Plant das Element fuer den Zeitpunkt ein. Liegt er schon zurueck, wird das
+     * Element beim naechsten {@link #weiter} geliefert.
+     */
+    public void planen(long zeitpunktMillis, T element) {
+        einordnen(new Eintrag<>(zeitpunktMillis / tickMillis + 1, element));
+        anzahl++;
+    }
+
+    /**
+     * Dreht das Rad bis jetzt und liefert alle faelligen Elemente in der
+     * Reihenfolge ihrer Ticks.
+     *
+     * @return die Anzahl gelieferter Elemente.
+     */
+    public int weiter(long jetztMillis, Consumer<? super T> verbraucher) {
+        int geliefert = liefern(verbraucher);
+        long bis = jetztMillis / tickMillis;
+        while (tick <= bis) {
+            verteilen(tick);
+            int platz = (int) (tick & MASKE);
+            List<Eintrag<T>> eintraege = plaetze.get(platz);
+            if (!eintraege.isEmpty()) {
+                plaetze.set(platz, new ArrayList<>());
+                faellig.addAll(eintraege);
+            }
+            tick++;
+            geliefert += liefern(verbraucher);
+        }
+        return geliefert;
+    }
+
+    /**
+     * @return die Anzahl geplanter, noch nicht gelieferter Elemente.
+     */
+    public int getAnzahl() {
+        return anzahl;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private int liefern(Consumer<? super T> verbraucher) {
+        if (faellig.isEmpty()) {
+            return 0;
+        }
+        List<Eintrag<T>> eintraege = faellig;
+        faellig = new ArrayList<>();
+        for (Eintrag<T> e : eintraege) {
+            anzahl--;
+            verbraucher.accept(e.element);
+        }
+        return eintraege.size();
+    }
+
+    /**
+     * Verteilt bei Erreichen eines Platzes einer hoeheren Ebene dessen Elemente
+     * neu, von oben nach unten, damit sie in diesem Tick noch Ebene 0 erreichen.
+     */
+    private void verteilen(long t) {
+        if ((t & ((1L << (BITS * (EBENEN - 1))) - 1)) == 0) {
+            List<Eintrag<T>> eintraege = ueberlauf;
+            ueberlauf = new ArrayList<>();
+            eintraege.forEach(this::einordnen);
+        }
+        for (int ebene = EBENEN - 1; ebene >= 1; ebene--) {
+            if ((t & ((1L << (BITS * ebene)) - 1)) != 0) {
+                continue;
+            }
+            int platz = ebene * PLAETZE + (int) ((t >>> (BITS * ebene)) & MASKE);
+            List<Eintrag<T>> eintraege = plaetze.get(platz);
+            if (!eintraege.isEmpty()) {
+                plaetze.set(platz, new ArrayList<>());
+                eintraege.forEach(this::einordnen);
+            }
+        }
+    }
+
+    private void einordnen(Eintrag<T> e) {
+        long abstand = e.tick - tick;
+        if (abstand < 0) {
+            faellig.add(e);
+            return;
+        }
+        for (int ebene = 0; ebene < EBENEN; ebene++) {
+            if (abstand < 1L << (BITS * (ebene + 1))) {
+                plaetze.get(ebene * PLAETZE + (int) ((e.tick >>> (BITS * ebene)) & MASKE)).add(e);
+                return;
+            }
+        }
+        ueberlauf.add(e);
+    }
+
+    private static class Eintrag<T> {
+        final long tick;
+        final T element;
+
+        Eintrag(long tick, T element) {
+            this.tick = tick;
+            this.element = element;
+        }
+    }
+}
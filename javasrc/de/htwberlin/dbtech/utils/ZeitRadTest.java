@@ -0,0 +1,91 @@
+package de.htwberlin.dbtech.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prueft ZeitRad an den Grenzen der Ebenen und des Ueberlaufs: kein Element
+ * wird zu frueh geliefert, keines mehr als einen Tick zu spaet.
+ */
+public class ZeitRadTest {
+    private static final long TICK = 10;
+
+    /**
+     * Abstaende in Ticks um die Grenzen der Ebenen 0 bis 3.
+     */
+    private static final long[] EBENEN_GRENZEN = {
+            0, 1, 62, 63, 64, 65, 127, 128, 4095, 4096, 4097, 4159, 4160, 262143, 262144, 262145,
+    };
+
+    /**
+     * Start-Ticks direkt vor, auf und nach den Grenzen der Ebenen.
+     */
+    private static final long[] STARTS = {
+            0, 1, 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145,
+    };
+
+    @Test
+    public void ebenenGrenzen() {
+        for (long start : STARTS) {
+            for (long versatz : new long[]{0, 1, TICK - 1}) {
+                pruefe(start * TICK, versatz, EBENEN_GRENZEN);
+            }
+        }
+    }
+
+    /**
+     * Jenseits der obersten Ebene (64^4 Ticks) warten Elemente im Ueberlauf und
+     * werden beim Erreichen eines Platzes der obersten Ebene neu eingeordnet.
+     */
+    @Test
+    public void ueberlauf() {
+        long grenze = 1L << 24;
+        long[] abstaende = {grenze - 1, grenze, grenze + 1, grenze + 262144, 2 * grenze + 5};
+        pruefe(0, 0, abstaende);
+        pruefe(262143 * TICK, 3, abstaende);
+    }
+
+    @Test
+    public void vergangenerZeitpunkt() {
+        ZeitRad<String> rad = new ZeitRad<>(TICK, 1000);
+        rad.planen(500, "alt");
+        List<String> geliefert = new ArrayList<>();
+        Assert.assertEquals(1, rad.weiter(1000, geliefert::add));
+        Assert.assertEquals(List.of("alt"), geliefert);
+        Assert.assertEquals(0, rad.getAnzahl());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tickNull() {
+        new ZeitRad<String>(0, 0);
+    }
+
+    /**
+     * Plant je Abstand ein Element fuer startMillis + abstand Ticks + versatz und
+     * dreht Tick fuer Tick, bis alle geliefert sind.
+     */
+    private static void pruefe(long startMillis, long versatz, long[] abstaende) {
+        ZeitRad<Long> rad = new ZeitRad<>(TICK, startMillis);
+        long ende = startMillis;
+        for (long abstand : abstaende) {
+            long zeitpunkt = startMillis + abstand * TICK + versatz;
+            rad.planen(zeitpunkt, zeitpunkt);
+            ende = Math.max(ende, zeitpunkt);
+        }
+        long[] jetzt = new long[1];
+        int[] geliefert = new int[1];
+        for (jetzt[0] = startMillis; jetzt[0] <= ende + TICK; jetzt[0] += TICK) {
+            rad.weiter(jetzt[0], zeitpunkt -> {
+                String fall = "start " + startMillis + ", zeitpunkt " + zeitpunkt + ", geliefert " + jetzt[0];
+                Assert.assertTrue("zu frueh: " + fall, jetzt[0] > zeitpunkt);
+                Assert.assertTrue("zu spaet: " + fall, jetzt[0] - zeitpunkt <= TICK);
+                geliefert[0]++;
+            });
+        }
+        Assert.assertEquals("start " + startMillis, abstaende.length, geliefert[0]);
+        Assert.assertEquals(0, rad.getAnzahl());
+    }
+}